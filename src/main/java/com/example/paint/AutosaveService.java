@@ -0,0 +1,229 @@
+package com.example.paint;
+
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.application.Platform;
+import javafx.util.Duration;
+
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Автосохранение документа. Через заданный интервал в потоке JavaFX сравниваются версии плиток документа
+ * с версиями, сохраненными в прошлый раз, измененные плитки копируются, а сжатие и запись в
+ * {@link RecoveryFile} выполняются в отдельном потоке. За один раз копируется не больше MAX_TILES_PER_SAVE плиток,
+ * поэтому пауза в потоке JavaFX не зависит от размера документа; остальные плитки уйдут в следующие разы.
+ * Версии плиток считаются сохраненными только после того, как пачка записана на диск: если запись не удалась,
+ * плитки остаются измененными и попадут в следующее автосохранение.
+ */
+public class AutosaveService implements Viewport.DocumentListener {
+    /**
+     * Файл восстановления по умолчанию
+     */
+    public static final Path DEFAULT_RECOVERY_PATH = Paths.get(System.getProperty("user.home"), ".paint",
+            "autosave.recovery");
+
+    /**
+     * Интервал автосохранения по умолчанию
+     */
+    public static final Duration DEFAULT_INTERVAL = Duration.seconds(30);
+
+    /**
+     * Сколько плиток (по 256 КБ) копируется за одно автосохранение
+     */
+    private static final int MAX_TILES_PER_SAVE = 32;
+
+    private final Path recoveryPath;
+    private final Viewport viewport;
+    private final Timeline timeline;
+    private final AtomicBoolean writing = new AtomicBoolean();
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "autosave");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private TiledDocument document;
+    private int[] savedVersions;
+    private RecoveryFile recoveryFile;
+
+    /**
+     * Конструктор с параметрами
+     * @param viewport Окно просмотра, документ которого сохраняется
+     * @param recoveryPath Файл восстановления
+     * @param interval Интервал автосохранения
+     */
+    public AutosaveService(Viewport viewport, Path recoveryPath, Duration interval) {
+        this.viewport = viewport;
+        this.recoveryPath = recoveryPath;
+        this.timeline = new Timeline(new KeyFrame(interval, event -> saveDirtyTiles()));
+        timeline.setCycleCount(Timeline.INDEFINITE);
+    }
+
+    /**
+     * Восстанавливает документ, оставшийся после аварийного завершения
+     * @param recoveryPath Файл восстановления
+     * @return Документ с признаком полноты или null, если восстанавливать нечего
+     */
+    public static RecoveryFile.Recovery recover(Path recoveryPath) {
+        try {
+            return RecoveryFile.recover(recoveryPath);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Начинает автосохранение текущего документа. Прежний файл восстановления при этом заменяется,
+     * поэтому вызывается только после того, как пользователь решил, восстанавливать ли его.
+     */
+    public void start() {
+        documentReplaced(viewport.getDocument());
+        timeline.play();
+    }
+
+    /**
+     * Останавливает автосохранение и удаляет файл восстановления. Вызывается при штатном выходе.
+     */
+    public void stop() {
+        timeline.stop();
+        writer.execute(() -> {
+            try {
+                if (recoveryFile != null) {
+                    recoveryFile.delete();
+                    recoveryFile = null;
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+        writer.shutdown();
+        try {
+            writer.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void changesCommitted(List<TileChange> changes, Object action) {
+        // изменения находятся по версиям плиток при следующем автосохранении
+    }
+
+    /**
+     * Начинает новый файл восстановления для нового документа. Плитки, отличающиеся от фона,
+     * считаются несохраненными и попадут в файл за несколько автосохранений.
+     * @param document Новый документ
+     */
+    @Override
+    public void documentReplaced(TiledDocument document) {
+        this.document = document;
+        savedVersions = new int[document.getTilesX() * document.getTilesY()];
+        for (int ty = 0; ty < document.getTilesY(); ty++) {
+            for (int tx = 0; tx < document.getTilesX(); tx++) {
+                int version = document.getTileVersion(tx, ty);
+                boolean unsaved = document.hasTileData(tx, ty);
+                savedVersions[ty * document.getTilesX() + tx] = unsaved ? version - 1 : version;
+            }
+        }
+        int width = document.getWidth();
+        int height = document.getHeight();
+        int background = document.getBackground();
+        writer.execute(() -> {
+            try {
+                if (recoveryFile != null) {
+                    recoveryFile.close();
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            recoveryFile = null;
+            createRecoveryFile(width, height, background);
+        });
+    }
+
+    /**
+     * Создает файл восстановления в потоке записи. Если это не удалось, файл пробуется создать снова
+     * при следующем автосохранении.
+     */
+    private void createRecoveryFile(int width, int height, int background) {
+        try {
+            Files.createDirectories(recoveryPath.getParent());
+            recoveryFile = new RecoveryFile(recoveryPath, width, height, background);
+        } catch (IOException e) {
+            e.printStackTrace();
+            recoveryFile = null;
+        }
+    }
+
+    /**
+     * Копирует измененные плитки и отдает их на запись. Если предыдущая запись еще не закончилась,
+     * автосохранение пропускается до следующего раза.
+     */
+    private void saveDirtyTiles() {
+        if (document == null || !writing.compareAndSet(false, true)) {
+            return;
+        }
+        int tilesX = document.getTilesX();
+        List<RecoveryFile.Tile> tiles = new ArrayList<>();
+        int[] indexes = new int[MAX_TILES_PER_SAVE];
+        int[] versions = new int[MAX_TILES_PER_SAVE];
+        boolean complete = true;
+        for (int i = 0; i < savedVersions.length; i++) {
+            int version = document.getTileVersion(i % tilesX, i / tilesX);
+            if (version != savedVersions[i]) {
+                if (tiles.size() == MAX_TILES_PER_SAVE) {
+                    complete = false;
+                    break;
+                }
+                int[] pixels = new int[TiledDocument.TILE_SIZE * TiledDocument.TILE_SIZE];
+                document.readTile(i % tilesX, i / tilesX, IntBuffer.wrap(pixels));
+                indexes[tiles.size()] = i;
+                versions[tiles.size()] = version;
+                tiles.add(new RecoveryFile.Tile(i % tilesX, i / tilesX, pixels));
+            }
+        }
+        if (tiles.isEmpty()) {
+            writing.set(false);
+            return;
+        }
+        boolean allSaved = complete;
+        int[] batchVersions = savedVersions;
+        int width = document.getWidth();
+        int height = document.getHeight();
+        int background = document.getBackground();
+        writer.execute(() -> {
+            boolean written = false;
+            try {
+                if (recoveryFile == null) {
+                    createRecoveryFile(width, height, background);
+                }
+                if (recoveryFile != null) {
+                    recoveryFile.appendBatch(tiles, allSaved);
+                    written = true;
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            boolean saved = written;
+            Platform.runLater(() -> {
+                // пока шла запись, документ мог смениться: тогда у него уже свой массив версий
+                if (saved && savedVersions == batchVersions) {
+                    for (int i = 0; i < tiles.size(); i++) {
+                        savedVersions[indexes[i]] = versions[i];
+                    }
+                }
+                writing.set(false);
+            });
+        });
+    }
+}
@@ -0,0 +1,250 @@
+package com.example.paint;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Пакетная обработка файлов без JavaFX: каждый файл декодируется {@link ImageLoader}, проходит цепочку
+ * {@link ImageFilter} и кодируется {@link ImageExporter}. Обработка разделена на стадии:
+ * <ul>
+ *     <li>чтение файла в память и запись результата на диск выполняются в виртуальных потоках, по одному
+ *     на файл; одновременно к диску обращаются не больше ioConcurrency из них;</li>
+ *     <li>декодирование, фильтры и кодирование занимают процессор и выполняются в ForkJoinPool из
+ *     cpuThreads платформенных потоков, в нем же фильтры и сжатие PNG делят строки между потоками.</li>
+ * </ul>
+ * Между стадиями действует обратное давление: файл начинает читаться, только когда в работе меньше
+ * cpuThreads + ioConcurrency файлов. Если не успевает процессор или диск, чтение новых файлов ждет,
+ * а в памяти не копятся прочитанные, но не обработанные файлы.
+ */
+public class BatchProcessor {
+    /**
+     * Сколько файлов одновременно читается или пишется по умолчанию: столько хватает, чтобы процессор не ждал
+     * быстрый диск, и не слишком много, чтобы головки медленного диска не метались между файлами
+     */
+    public static final int DEFAULT_IO_CONCURRENCY = 4;
+
+    /**
+     * Итог пакетной обработки
+     */
+    public static class Result {
+        private final int processed;
+        private final int failed;
+        private final double seconds;
+
+        /**
+         * Конструктор с параметрами
+         * @param processed Сколько файлов обработано
+         * @param failed Сколько файлов не удалось обработать
+         * @param seconds Время обработки в секундах
+         */
+        public Result(int processed, int failed, double seconds) {
+            this.processed = processed;
+            this.failed = failed;
+            this.seconds = seconds;
+        }
+
+        public int getProcessed() {
+            return processed;
+        }
+
+        public int getFailed() {
+            return failed;
+        }
+
+        public double getSeconds() {
+            return seconds;
+        }
+
+        /**
+         * @return Обработанных изображений в секунду
+         */
+        public double getImagesPerSecond() {
+            return seconds > 0 ? processed / seconds : 0;
+        }
+    }
+
+    private final List<ImageFilter> filters;
+    private final ImageExporter exporter;
+    private final ImageExporter.Format format;
+    private final Path outputDirectory;
+    private final int cpuThreads;
+    private final int ioConcurrency;
+
+    /**
+     * Конструктор с параметрами
+     * @param filters Цепочка фильтров, применяемых по порядку; может быть пустой
+     * @param exporter Настройки записи файлов; на время обработки сжатие PNG переводится в пул процессорной стадии
+     * @param format Формат результата или null, чтобы сохранять в формате исходного файла
+     * @param outputDirectory Каталог результатов, создается при необходимости
+     * @param cpuThreads Размер пула процессорной стадии
+     * @param ioConcurrency Сколько файлов одновременно читается или пишется
+     */
+    public BatchProcessor(List<ImageFilter> filters, ImageExporter exporter, ImageExporter.Format format,
+                          Path outputDirectory, int cpuThreads, int ioConcurrency) {
+        if (cpuThreads < 1 || ioConcurrency < 1) {
+            throw new IllegalArgumentException("Thread counts must be positive: cpu " + cpuThreads
+                    + ", io " + ioConcurrency);
+        }
+        this.filters = List.copyOf(filters);
+        this.exporter = exporter;
+        this.format = format;
+        this.outputDirectory = outputDirectory;
+        this.cpuThreads = cpuThreads;
+        this.ioConcurrency = ioConcurrency;
+    }
+
+    /**
+     * Обрабатывает файлы и печатает строку о каждом готовом файле. Ошибка в одном файле не останавливает
+     * остальные, она печатается и учитывается в результате.
+     * @param inputs Исходные файлы
+     * @return Итог обработки
+     * @throws IOException Если не удалось создать каталог результатов
+     * @throws InterruptedException Если поток прерван во время ожидания
+     */
+    public Result process(List<Path> inputs) throws IOException, InterruptedException {
+        Files.createDirectories(outputDirectory);
+        List<Path> outputs = assignOutputs(inputs);
+        Semaphore inFlight = new Semaphore(cpuThreads + ioConcurrency, true);
+        Semaphore ioSlots = new Semaphore(ioConcurrency, true);
+        ForkJoinPool cpuPool = new ForkJoinPool(cpuThreads);
+        exporter.setPool(cpuPool);
+        long start = System.nanoTime();
+        int processed = 0;
+        int failed = 0;
+        try (ExecutorService io = Executors.newVirtualThreadPerTaskExecutor()) {
+            CompletionService<Path> completion = new ExecutorCompletionService<>(io);
+            for (int i = 0; i < inputs.size(); i++) {
+                Path input = inputs.get(i);
+                Path output = outputs.get(i);
+                completion.submit(() -> {
+                    inFlight.acquire();
+                    try {
+                        byte[] data = withIoSlot(ioSlots, () -> Files.readAllBytes(input));
+                        byte[] encoded = cpuPool.submit(() -> transcode(data, input, cpuPool)).get();
+                        withIoSlot(ioSlots, () -> Files.write(output, encoded));
+                        return output;
+                    } catch (ExecutionException | IOException | RuntimeException e) {
+                        throw new IOException(input + ": " + rootCause(e), e);
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            }
+            for (int i = 0; i < inputs.size(); i++) {
+                try {
+                    Path output = completion.take().get();
+                    processed++;
+                    double seconds = (System.nanoTime() - start) / 1e9;
+                    System.out.printf(Locale.ROOT, "[%d/%d] %s (%.2f images/s)%n", processed + failed, inputs.size(),
+                            output, processed / seconds);
+                } catch (ExecutionException e) {
+                    failed++;
+                    System.out.println("[" + (processed + failed) + "/" + inputs.size() + "] Failed "
+                            + e.getCause().getMessage());
+                }
+            }
+        } finally {
+            exporter.setPool(ForkJoinPool.commonPool());
+            cpuPool.shutdownNow();
+        }
+        return new Result(processed, failed, (System.nanoTime() - start) / 1e9);
+    }
+
+    /**
+     * Выполняет операцию с диском, заняв одно из ioConcurrency мест
+     */
+    private static <T> T withIoSlot(Semaphore ioSlots, Callable<T> operation) throws Exception {
+        ioSlots.acquire();
+        try {
+            return operation.call();
+        } finally {
+            ioSlots.release();
+        }
+    }
+
+    /**
+     * Исходная ошибка: ForkJoinPool заворачивает проверяемые исключения задачи в RuntimeException
+     */
+    private static Throwable rootCause(Throwable error) {
+        Throwable cause = error;
+        while (cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause;
+    }
+
+    /**
+     * Процессорная стадия: декодирует прочитанный файл, применяет фильтры и кодирует результат в память
+     */
+    private byte[] transcode(byte[] data, Path input, ForkJoinPool pool) throws IOException {
+        BufferedImage decoded = ImageLoader.read(data, input.toString(), JobProgress.NONE);
+        int width = decoded.getWidth();
+        int height = decoded.getHeight();
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        decoded.getRGB(0, 0, width, height, pixels, 0, width);
+        decoded = null;
+
+        if (!filters.isEmpty()) {
+            int[] source = pixels;
+            int[] target = new int[pixels.length];
+            for (ImageFilter filter : filters) {
+                filter.apply(source, target, width, height, pool, JobProgress.NONE);
+                int[] swap = source;
+                source = target;
+                target = swap;
+            }
+            if (source != pixels) {
+                System.arraycopy(source, 0, pixels, 0, pixels.length);
+            }
+        }
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream(Math.max(1 << 16, data.length));
+        exporter.write(image, formatOf(input), encoded, JobProgress.NONE);
+        return encoded.toByteArray();
+    }
+
+    /**
+     * Имена результатов: имя исходного файла с расширением формата, повторяющиеся имена получают номер
+     */
+    private List<Path> assignOutputs(List<Path> inputs) {
+        List<Path> outputs = new ArrayList<>(inputs.size());
+        Set<String> used = new HashSet<>();
+        for (Path input : inputs) {
+            String fileName = input.getFileName().toString();
+            int lastDotIndex = fileName.lastIndexOf('.');
+            String baseName = lastDotIndex > 0 ? fileName.substring(0, lastDotIndex) : fileName;
+            String extension = "." + formatOf(input).getExtension();
+            String name = baseName + extension;
+            for (int n = 1; !used.add(name); n++) {
+                name = baseName + "-" + n + extension;
+            }
+            outputs.add(outputDirectory.resolve(name));
+        }
+        return outputs;
+    }
+
+    private ImageExporter.Format formatOf(Path input) {
+        if (format != null) {
+            return format;
+        }
+        ImageExporter.Format inputFormat = ImageExporter.Format.fromFileName(input.getFileName().toString());
+        return inputFormat != null ? inputFormat : ImageExporter.Format.PNG;
+    }
+}
@@ -2,13 +2,51 @@ package com.example.paint;
 
 import java.awt.image.BufferedImage;
 import java.awt.image.ColorModel;
+import java.awt.image.DataBufferInt;
 import java.awt.image.WritableRaster;
 import java.awt.Color;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Класс фильтра, который старается убрать с фотографии шумы и старается сглаживать
  */
 public class BilateralFilter {
+    /**
+     * Диаметр окна по умолчанию
+     */
+    public static final int DEFAULT_DIAMETER = 7;
+
+    /**
+     * Сигма по цвету по умолчанию
+     */
+    public static final double DEFAULT_SIGMA_COLOR = 70;
+
+    /**
+     * Сигма по пространству по умолчанию
+     */
+    public static final double DEFAULT_SIGMA_SPACE = 70;
+
+    /**
+     * Окна больше этого диаметра {@link #apply} фильтрует через билатеральную сетку
+     */
+    public static final int MAX_DIRECT_DIAMETER = 9;
+
+    /**
+     * Сколько ячеек может быть в билатеральной сетке; если больше, ячейки укрупняются по пространству
+     */
+    private static final long MAX_GRID_CELLS = 8L * 1024 * 1024;
+
+    /**
+     * Пустые ячейки вокруг сетки, чтобы размытие и трилинейная интерполяция не выходили за ее границы
+     */
+    private static final int GRID_PADDING = 2;
+
+    /**
+     * Максимальный квадрат расстояния между двумя цветами RGB (3 * 255^2)
+     */
+    private static final int MAX_COLOR_DISTANCE_SQUARED = 3 * 255 * 255;
+
     private final BufferedImage inputImage;
     private final int diameter;
     private final double sigmaColor;
@@ -19,20 +57,60 @@ public class BilateralFilter {
      * @param inputImage Изображение, которое передается в конструктор класса
      */
     public BilateralFilter(BufferedImage inputImage) {
+        this(inputImage, DEFAULT_DIAMETER, DEFAULT_SIGMA_COLOR, DEFAULT_SIGMA_SPACE);
+    }
+
+    /**
+     * Конструктор с параметрами
+     * @param inputImage Изображение, которое передается в конструктор класса
+     * @param diameter Диаметр окна в пикселях
+     * @param sigmaColor Сигма веса по разнице цветов
+     * @param sigmaSpace Сигма веса по расстоянию
+     */
+    public BilateralFilter(BufferedImage inputImage, int diameter, double sigmaColor, double sigmaSpace) {
+        if (diameter < 1 || !(sigmaColor > 0) || !(sigmaSpace > 0)) {
+            throw new IllegalArgumentException("Invalid bilateral filter parameters: diameter " + diameter
+                    + ", sigmaColor " + sigmaColor + ", sigmaSpace " + sigmaSpace);
+        }
         this.inputImage = inputImage;
-        this.diameter = 7;
-        this.sigmaColor = 70;
-        this.sigmaSpace = 70;
+        this.diameter = diameter;
+        this.sigmaColor = sigmaColor;
+        this.sigmaSpace = sigmaSpace;
+    }
+
+    /**
+     * Фильтрует изображение подходящим движком: небольшие окна (до MAX_DIRECT_DIAMETER) точно считаются
+     * {@link #applyFilterFast(ForkJoinPool, JobProgress)}, а большие - приближенно через
+     * {@link #applyFilterGrid(ForkJoinPool, JobProgress)}, время которой почти не зависит от размера окна.
+     * @param pool Пул потоков
+     * @param progress Получатель прогресса и признака отмены, всего height строк
+     * @return Измененное изображение
+     */
+    public BufferedImage apply(ForkJoinPool pool, JobProgress progress) {
+        if (diameter <= MAX_DIRECT_DIAMETER) {
+            return applyFilterFast(pool, progress);
+        }
+        return applyFilterGrid(pool, progress);
     }
 
     /**
      * Это метод, который выполняет фильтрацию Bilateral Filter на входном изображении.
-     * Он проходит через каждый пиксель изображения и вычисляет взвешенное среднее значение цветовых компонентов
-     * пикселей в окне около текущего пикселя с использованием формулы Bilateral Filter. Затем он создает
-     * новое изображение (outputImage), в котором каждый пиксель заменяется на результат фильтрации.
+     * Он вычисляет для каждого пикселя взвешенное среднее значение цветовых компонентов пикселей в окне
+     * около него по формуле Bilateral Filter и создает новое изображение с результатом. Строки изображения
+     * обрабатываются параллельно в общем пуле fork/join, результат совпадает с последовательной версией побитово.
      * @return Измененное изображение
      */
     public BufferedImage applyFilter() {
+        return applyFilterParallel(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Последовательная версия {@link #applyFilter()}. Она проходит через каждый пиксель изображения по порядку
+     * и заменяет его в новом изображении (outputImage) на результат фильтрации. Медленная эталонная версия:
+     * в программе не используется, с ней тесты сверяют остальные.
+     * @return Измененное изображение
+     */
+    BufferedImage applyFilterSequential() {
         int width = inputImage.getWidth();
         int height = inputImage.getHeight();
         BufferedImage outputImage = deepCopy(inputImage);
@@ -80,6 +158,419 @@ public class BilateralFilter {
         return outputImage;
     }
 
+    /**
+     * Параллельная версия {@link #applyFilterSequential()}, на которой построен {@link #applyFilter()}.
+     * Изображение делится на горизонтальные полосы (тайлы), которые обрабатываются в переданном пуле fork/join.
+     * Каждая полоса считывает свои строки вместе с "ореолом" из halfDiameter строк сверху и снизу, поэтому тайлы
+     * не зависят друг от друга. Формула и порядок суммирования те же, что и в последовательной версии,
+     * так что результат совпадает с ней побитово.
+     * @param pool Пул потоков, в котором обрабатываются тайлы
+     * @return Измененное изображение
+     */
+    BufferedImage applyFilterParallel(ForkJoinPool pool) {
+        int width = inputImage.getWidth();
+        int height = inputImage.getHeight();
+        BufferedImage outputImage = deepCopy(inputImage);
+
+        int halfDiameter = diameter / 2;
+        if (height - halfDiameter > halfDiameter && width - halfDiameter > halfDiameter) {
+            ParallelRows.run(pool, halfDiameter, height - halfDiameter, JobProgress.NONE,
+                    (fromY, toY) -> filterTile(outputImage, fromY, toY));
+        }
+        return outputImage;
+    }
+
+    /**
+     * Быстрая версия фильтра. Пиксели читаются и записываются напрямую в массив int[] из DataBufferInt,
+     * каналы хранятся в примитивах, а вместо Math.exp используются заранее посчитанные таблицы
+     * пространственных и цветовых весов, поэтому внутренний цикл не создает объектов.
+     * Тайлы обрабатываются параллельно так же, как в {@link #applyFilterParallel(ForkJoinPool)}.
+     * Вес считается как произведение двух табличных экспонент, а не как экспонента суммы,
+     * поэтому отдельные пиксели могут отличаться от {@link #applyFilter()} на единицу из-за округления.
+     * @return Измененное изображение типа TYPE_INT_RGB или TYPE_INT_ARGB
+     */
+    public BufferedImage applyFilterFast() {
+        return applyFilterFast(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Быстрая версия фильтра, выполняемая в переданном пуле
+     * @param pool Пул потоков, в котором обрабатываются тайлы
+     * @return Измененное изображение типа TYPE_INT_RGB или TYPE_INT_ARGB
+     */
+    public BufferedImage applyFilterFast(ForkJoinPool pool) {
+        return applyFilterFast(pool, JobProgress.NONE);
+    }
+
+    /**
+     * Быстрая версия фильтра с отчетом о ходе работы. После каждого тайла в progress передается
+     * число обработанных строк (всего height строк). Если операция отменена, оставшиеся тайлы
+     * не обрабатываются и выбрасывается CancellationException.
+     * @param pool Пул потоков, в котором обрабатываются тайлы
+     * @param progress Получатель прогресса и признака отмены
+     * @return Измененное изображение типа TYPE_INT_RGB или TYPE_INT_ARGB
+     */
+    public BufferedImage applyFilterFast(ForkJoinPool pool, JobProgress progress) {
+        int width = inputImage.getWidth();
+        int height = inputImage.getHeight();
+        BufferedImage source = toIntImage(inputImage);
+        int[] sourcePixels = ((DataBufferInt) source.getRaster().getDataBuffer()).getData();
+
+        BufferedImage outputImage = new BufferedImage(width, height, source.getType());
+        int[] outputPixels = ((DataBufferInt) outputImage.getRaster().getDataBuffer()).getData();
+        System.arraycopy(sourcePixels, 0, outputPixels, 0, width * height);
+
+        int halfDiameter = diameter / 2;
+        int borderRows = height;
+        if (height - halfDiameter > halfDiameter && width - halfDiameter > halfDiameter) {
+            borderRows = 2 * halfDiameter;
+            float[] spaceWeights = createSpaceWeights();
+            float[] colorWeights = createColorWeights();
+            ParallelRows.run(pool, halfDiameter, height - halfDiameter, progress, (fromY, toY) ->
+                    filterTileFast(sourcePixels, outputPixels, width, fromY, toY, spaceWeights, colorWeights));
+        }
+        progress.worked(borderRows);
+        return outputImage;
+    }
+
+    /**
+     * Приближенная версия фильтра на билатеральной сетке (Paris, Durand). Пиксели раскладываются в трехмерную
+     * сетку (x, y, яркость) с шагом в одну сигму по каждой оси, сетка размывается разделимым ядром [1 4 6 4 1] / 16
+     * и затем в каждой точке изображения читается трилинейной интерполяцией. Цена почти не зависит от диаметра
+     * окна и сигм: чем они больше, тем меньше сетка.
+     * <p>
+     * В отличие от точной версии, близость цветов оценивается по яркости, а сигма по цвету делится на sqrt(3),
+     * чтобы для серых пикселей веса совпадали с весами по расстоянию RGB. Окно не обрезает гауссиану резко:
+     * пространственная сигма берется меньшей из sigmaSpace и стандартного отклонения окна диаметра diameter.
+     * Если сетка не помещается в MAX_GRID_CELLS ячеек, ее ячейки укрупняются по пространству.
+     * Прозрачность пикселей сохраняется.
+     * @param pool Пул потоков
+     * @param progress Получатель прогресса и признака отмены, всего height строк
+     * @return Измененное изображение типа TYPE_INT_RGB или TYPE_INT_ARGB
+     */
+    public BufferedImage applyFilterGrid(ForkJoinPool pool, JobProgress progress) {
+        int width = inputImage.getWidth();
+        int height = inputImage.getHeight();
+        BufferedImage source = toIntImage(inputImage);
+        int[] sourcePixels = ((DataBufferInt) source.getRaster().getDataBuffer()).getData();
+        BufferedImage outputImage = new BufferedImage(width, height, source.getType());
+        int[] outputPixels = ((DataBufferInt) outputImage.getRaster().getDataBuffer()).getData();
+        if (diameter < 3) {
+            System.arraycopy(sourcePixels, 0, outputPixels, 0, width * height);
+            progress.worked(height);
+            return outputImage;
+        }
+
+        double rangeCell = sigmaColor / Math.sqrt(3);
+        double spaceCell = Math.max(1, Math.min(sigmaSpace, Math.sqrt((diameter * diameter - 1) / 12.0)));
+        int depth = (int) Math.ceil(255 / rangeCell) + 1 + 2 * GRID_PADDING;
+        long cells = (long) gridSize(width, spaceCell) * gridSize(height, spaceCell) * depth;
+        if (cells > MAX_GRID_CELLS) {
+            spaceCell *= Math.sqrt((double) cells / MAX_GRID_CELLS);
+        }
+        BilateralGrid grid = new BilateralGrid(gridSize(width, spaceCell), gridSize(height, spaceCell), depth,
+                spaceCell, rangeCell);
+
+        ParallelRows.run(pool, 0, grid.height, 0, 1, progress,
+                (fromRow, toRow) -> grid.splat(sourcePixels, width, height, fromRow, toRow));
+        ParallelRows.run(pool, 0, grid.height, 0, 1, progress, grid::blurRows);
+        ParallelRows.run(pool, 0, grid.width, 0, 1, progress, grid::blurColumns);
+        ParallelRows.run(pool, 0, height, progress,
+                (fromY, toY) -> grid.slice(sourcePixels, outputPixels, width, fromY, toY));
+        return outputImage;
+    }
+
+    /**
+     * Количество ячеек сетки вдоль стороны изображения вместе с пустыми краями
+     */
+    private static int gridSize(int pixels, double cell) {
+        return (int) Math.ceil((pixels - 1) / cell) + 1 + 2 * GRID_PADDING;
+    }
+
+    /**
+     * Быстрая фильтрация строк [fromY, toY) на упакованных пикселях. Взвешенные суммы считает
+     * {@link PixelKernels}: на Vector API несколько соседних пикселей строки обрабатываются за одну операцию.
+     * @param source Исходные пиксели в формате 0xAARRGGBB
+     * @param output Пиксели результата
+     * @param width Ширина изображения
+     * @param fromY Первая строка тайла
+     * @param toY Строка, следующая за последней строкой тайла
+     * @param spaceWeights Таблица пространственных весов размером diameter * diameter
+     * @param colorWeights Таблица цветовых весов, индексом служит квадрат разницы цветов
+     */
+    private void filterTileFast(int[] source, int[] output, int width, int fromY, int toY,
+                                float[] spaceWeights, float[] colorWeights) {
+        int halfDiameter = diameter / 2;
+        PixelKernels kernels = PixelKernels.get();
+        for (int y = fromY; y < toY; y++) {
+            kernels.bilateralRow(source, output, width, y, halfDiameter, width - halfDiameter, halfDiameter,
+                    spaceWeights, colorWeights);
+        }
+    }
+
+    /**
+     * Таблица пространственных весов exp(-d^2 / 2 sigmaSpace^2) для всех смещений окна
+     * @return Веса в порядке обхода окна: сначала строки, затем столбцы
+     */
+    private float[] createSpaceWeights() {
+        int halfDiameter = diameter / 2;
+        double twoSigmaSpaceSquared = 2 * sigmaSpace * sigmaSpace;
+        float[] weights = new float[(2 * halfDiameter + 1) * (2 * halfDiameter + 1)];
+        int k = 0;
+        for (int i = -halfDiameter; i <= halfDiameter; i++) {
+            for (int j = -halfDiameter; j <= halfDiameter; j++) {
+                weights[k++] = (float) Math.exp(-(i * i + j * j) / twoSigmaSpaceSquared);
+            }
+        }
+        return weights;
+    }
+
+    /**
+     * Таблица цветовых весов exp(-c / 2 sigmaColor^2) для всех возможных квадратов разницы цветов
+     * @return Веса, индексом служит квадрат разницы цветов
+     */
+    private float[] createColorWeights() {
+        double twoSigmaColorSquared = 2 * sigmaColor * sigmaColor;
+        float[] weights = new float[MAX_COLOR_DISTANCE_SQUARED + 1];
+        for (int c = 0; c <= MAX_COLOR_DISTANCE_SQUARED; c++) {
+            weights[c] = (float) Math.exp(-c / twoSigmaColorSquared);
+        }
+        return weights;
+    }
+
+    /**
+     * Возвращает изображение с упакованными int-пикселями. Если исходное изображение уже хранится
+     * в DataBufferInt без смещений, оно используется как есть, иначе пиксели копируются через getRGB.
+     * @param image Исходное изображение
+     * @return Изображение типа TYPE_INT_RGB или TYPE_INT_ARGB
+     */
+    private static BufferedImage toIntImage(BufferedImage image) {
+        int type = image.getType();
+        int width = image.getWidth();
+        int height = image.getHeight();
+        if ((type == BufferedImage.TYPE_INT_RGB || type == BufferedImage.TYPE_INT_ARGB)
+                && image.getRaster().getParent() == null
+                && ((DataBufferInt) image.getRaster().getDataBuffer()).getData().length == width * height) {
+            return image;
+        }
+        BufferedImage converted = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        int[] pixels = ((DataBufferInt) converted.getRaster().getDataBuffer()).getData();
+        image.getRGB(0, 0, width, height, pixels, 0, width);
+        return converted;
+    }
+
+    /**
+     * Фильтрует строки [fromY, toY) одного тайла. Строки тайла вместе с ореолом считываются
+     * одним вызовом getRGB, результат записывается только во внутренние столбцы, как и в
+     * {@link #applyFilter()}.
+     * @param outputImage Изображение, в которое записывается результат
+     * @param fromY Первая строка тайла
+     * @param toY Строка, следующая за последней строкой тайла
+     */
+    private void filterTile(BufferedImage outputImage, int fromY, int toY) {
+        int width = inputImage.getWidth();
+        int halfDiameter = diameter / 2;
+        double twoSigmaColorSquared = 2 * sigmaColor * sigmaColor;
+        double twoSigmaSpaceSquared = 2 * sigmaSpace * sigmaSpace;
+
+        int haloTop = fromY - halfDiameter;
+        int haloRows = toY - fromY + 2 * halfDiameter;
+        int[] source = inputImage.getRGB(0, haloTop, width, haloRows, null, 0, width);
+        int innerWidth = width - 2 * halfDiameter;
+        int[] result = new int[innerWidth * (toY - fromY)];
+
+        for (int y = fromY; y < toY; y++) {
+            int row = y - haloTop;
+            for (int x = halfDiameter; x < width - halfDiameter; x++) {
+                double weightSum = 0;
+                double redSum = 0;
+                double greenSum = 0;
+                double blueSum = 0;
+
+                Color centerColor = new Color(source[row * width + x]);
+
+                for (int i = -halfDiameter; i <= halfDiameter; i++) {
+                    for (int j = -halfDiameter; j <= halfDiameter; j++) {
+                        int currentX = x + j;
+                        int currentY = y + i;
+                        Color currentColor = new Color(source[(row + i) * width + currentX]);
+
+                        double colorDistanceSquared = getColorDistanceSquared(centerColor, currentColor);
+                        double spaceDistanceSquared = getSpaceDistanceSquared(x, y, currentX, currentY);
+
+                        double weight = Math.exp(-colorDistanceSquared / twoSigmaColorSquared - spaceDistanceSquared / twoSigmaSpaceSquared);
+                        weightSum += weight;
+
+                        redSum += weight * currentColor.getRed();
+                        greenSum += weight * currentColor.getGreen();
+                        blueSum += weight * currentColor.getBlue();
+                    }
+                }
+
+                int red = (int) (redSum / weightSum);
+                int green = (int) (greenSum / weightSum);
+                int blue = (int) (blueSum / weightSum);
+
+                result[(y - fromY) * innerWidth + x - halfDiameter] = new Color(red, green, blue).getRGB();
+            }
+        }
+
+        synchronized (outputImage) {
+            outputImage.setRGB(halfDiameter, fromY, innerWidth, toY - fromY, result, 0, innerWidth);
+        }
+    }
+
+    /**
+     * Билатеральная сетка: для каждой ячейки (x, y, яркость) суммы R, G, B и количество попавших в нее пикселей
+     */
+    private static final class BilateralGrid {
+        private final int width;
+        private final int height;
+        private final int depth;
+        private final double spaceCell;
+        private final double rangeCell;
+        private final float[] cells;
+
+        BilateralGrid(int width, int height, int depth, double spaceCell, double rangeCell) {
+            this.width = width;
+            this.height = height;
+            this.depth = depth;
+            this.spaceCell = spaceCell;
+            this.rangeCell = rangeCell;
+            this.cells = new float[width * height * depth * 4];
+        }
+
+        /**
+         * Раскладывает в ячейки строк сетки [fromRow, toRow) пиксели, ближайшие к этим строкам.
+         * Разные строки сетки получают разные строки изображения, поэтому полосы не пересекаются.
+         */
+        void splat(int[] pixels, int imageWidth, int imageHeight, int fromRow, int toRow) {
+            int firstY = Math.max(0, (int) Math.ceil((fromRow - GRID_PADDING - 0.5) * spaceCell) - 1);
+            int lastY = Math.min(imageHeight, (int) Math.ceil((toRow - GRID_PADDING - 0.5) * spaceCell) + 1);
+            for (int y = firstY; y < lastY; y++) {
+                int gridY = (int) (y / spaceCell + 0.5) + GRID_PADDING;
+                if (gridY < fromRow || gridY >= toRow) {
+                    continue;
+                }
+                for (int x = 0; x < imageWidth; x++) {
+                    int pixel = pixels[y * imageWidth + x];
+                    int red = (pixel >> 16) & 0xFF;
+                    int green = (pixel >> 8) & 0xFF;
+                    int blue = pixel & 0xFF;
+                    int gridX = (int) (x / spaceCell + 0.5) + GRID_PADDING;
+                    int gridZ = (int) (luma(red, green, blue) / rangeCell + 0.5) + GRID_PADDING;
+                    int index = ((gridY * width + gridX) * depth + gridZ) * 4;
+                    cells[index] += red;
+                    cells[index + 1] += green;
+                    cells[index + 2] += blue;
+                    cells[index + 3] += 1;
+                }
+            }
+        }
+
+        /**
+         * Размывает строки сетки [fromRow, toRow) вдоль осей x и яркости
+         */
+        void blurRows(int fromRow, int toRow) {
+            float[] line = new float[(Math.max(width, depth) + 4) * 4];
+            for (int gridY = fromRow; gridY < toRow; gridY++) {
+                int rowBase = gridY * width * depth * 4;
+                for (int gridZ = 0; gridZ < depth; gridZ++) {
+                    blurLine(rowBase + gridZ * 4, depth * 4, width, line);
+                }
+                for (int gridX = 0; gridX < width; gridX++) {
+                    blurLine(rowBase + gridX * depth * 4, 4, depth, line);
+                }
+            }
+        }
+
+        /**
+         * Размывает столбцы сетки [fromColumn, toColumn) вдоль оси y
+         */
+        void blurColumns(int fromColumn, int toColumn) {
+            float[] line = new float[(height + 4) * 4];
+            for (int gridX = fromColumn; gridX < toColumn; gridX++) {
+                for (int gridZ = 0; gridZ < depth; gridZ++) {
+                    blurLine((gridX * depth + gridZ) * 4, width * depth * 4, height, line);
+                }
+            }
+        }
+
+        /**
+         * Размывает ядром [1 4 6 4 1] / 16 линию из length ячеек, начинающуюся с start, с шагом step
+         */
+        private void blurLine(int start, int step, int length, float[] line) {
+            Arrays.fill(line, 0, 8, 0);
+            Arrays.fill(line, (length + 2) * 4, (length + 4) * 4, 0);
+            for (int i = 0; i < length; i++) {
+                System.arraycopy(cells, start + i * step, line, (i + 2) * 4, 4);
+            }
+            for (int i = 0; i < length; i++) {
+                int index = start + i * step;
+                int center = (i + 2) * 4;
+                for (int channel = 0; channel < 4; channel++) {
+                    int c = center + channel;
+                    cells[index + channel] = (line[c - 8] + 4 * line[c - 4] + 6 * line[c] + 4 * line[c + 4]
+                            + line[c + 8]) / 16;
+                }
+            }
+        }
+
+        /**
+         * Читает из размытой сетки строки изображения [fromY, toY) трилинейной интерполяцией
+         */
+        void slice(int[] pixels, int[] output, int imageWidth, int fromY, int toY) {
+            for (int y = fromY; y < toY; y++) {
+                double gridY = y / spaceCell + GRID_PADDING;
+                int y0 = (int) gridY;
+                float fy = (float) (gridY - y0);
+                for (int x = 0; x < imageWidth; x++) {
+                    int pixel = pixels[y * imageWidth + x];
+                    int red = (pixel >> 16) & 0xFF;
+                    int green = (pixel >> 8) & 0xFF;
+                    int blue = pixel & 0xFF;
+                    double gridX = x / spaceCell + GRID_PADDING;
+                    double gridZ = luma(red, green, blue) / rangeCell + GRID_PADDING;
+                    int x0 = (int) gridX;
+                    int z0 = (int) gridZ;
+                    float fx = (float) (gridX - x0);
+                    float fz = (float) (gridZ - z0);
+
+                    float redSum = 0;
+                    float greenSum = 0;
+                    float blueSum = 0;
+                    float weightSum = 0;
+                    for (int corner = 0; corner < 8; corner++) {
+                        int dx = corner & 1;
+                        int dy = (corner >> 1) & 1;
+                        int dz = corner >> 2;
+                        float weight = (dx == 0 ? 1 - fx : fx) * (dy == 0 ? 1 - fy : fy) * (dz == 0 ? 1 - fz : fz);
+                        int index = (((y0 + dy) * width + x0 + dx) * depth + z0 + dz) * 4;
+                        redSum += weight * cells[index];
+                        greenSum += weight * cells[index + 1];
+                        blueSum += weight * cells[index + 2];
+                        weightSum += weight * cells[index + 3];
+                    }
+                    if (weightSum > 0) {
+                        red = clampChannel(redSum / weightSum);
+                        green = clampChannel(greenSum / weightSum);
+                        blue = clampChannel(blueSum / weightSum);
+                    }
+                    output[y * imageWidth + x] = (pixel & 0xFF000000) | (red << 16) | (green << 8) | blue;
+                }
+            }
+        }
+
+        private static int luma(int red, int green, int blue) {
+            return (red * 77 + green * 150 + blue * 29) >> 8;
+        }
+
+        private static int clampChannel(float value) {
+            int rounded = (int) (value + 0.5f);
+            return rounded < 0 ? 0 : Math.min(rounded, 255);
+        }
+    }
+
     /**
      * Это вспомогательный метод, который вычисляет квадрат разницы в цветах между двумя объектами Color.
      * Это используется для вычисления весов при фильтрации.
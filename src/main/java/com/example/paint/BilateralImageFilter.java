@@ -0,0 +1,60 @@
+package com.example.paint;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * {@link BilateralFilter} в виде {@link ImageFilter}, чтобы его можно было ставить в цепочку фильтров
+ * вместе с остальными. Пиксели копируются в изображение TYPE_INT_ARGB и обратно, на фоне самого фильтра
+ * эти копии незаметны. Результат непрозрачный, как и у BilateralFilter.
+ */
+public class BilateralImageFilter implements ImageFilter {
+    private final int diameter;
+    private final double sigmaColor;
+    private final double sigmaSpace;
+
+    /**
+     * Конструктор с параметрами
+     * @param diameter Диаметр окна фильтра
+     * @param sigmaColor Сигма по цвету
+     * @param sigmaSpace Сигма по расстоянию
+     */
+    public BilateralImageFilter(int diameter, double sigmaColor, double sigmaSpace) {
+        if (diameter < 1 || !(sigmaColor > 0) || !(sigmaSpace > 0)) {
+            throw new IllegalArgumentException("Invalid bilateral parameters: diameter " + diameter
+                    + ", sigmaColor " + sigmaColor + ", sigmaSpace " + sigmaSpace);
+        }
+        this.diameter = diameter;
+        this.sigmaColor = sigmaColor;
+        this.sigmaSpace = sigmaSpace;
+    }
+
+    public int getDiameter() {
+        return diameter;
+    }
+
+    @Override
+    public String getName() {
+        return "Bilateral " + diameter;
+    }
+
+    /**
+     * Точный фильтр смотрит на половину окна. Сетка для больших окон размывает ячейки размером около
+     * diameter / 3.5 еще на две ячейки в каждую сторону и интерполирует между ними, поэтому ей нужен запас
+     * во все окно.
+     */
+    @Override
+    public int getHalo() {
+        return diameter <= BilateralFilter.MAX_DIRECT_DIAMETER ? diameter / 2 : diameter;
+    }
+
+    @Override
+    public void apply(int[] source, int[] target, int width, int height, ForkJoinPool pool, JobProgress progress) {
+        BufferedImage input = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        System.arraycopy(source, 0, ((DataBufferInt) input.getRaster().getDataBuffer()).getData(), 0,
+                width * height);
+        BufferedImage output = new BilateralFilter(input, diameter, sigmaColor, sigmaSpace).apply(pool, progress);
+        output.getRGB(0, 0, width, height, target, 0, width);
+    }
+}
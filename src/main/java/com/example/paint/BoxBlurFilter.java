@@ -0,0 +1,53 @@
+package com.example.paint;
+
+/**
+ * Размытие по квадрату со стороной 2 * radius + 1. Сумма окна сдвигается на один пиксель за шаг
+ * (прибавляется входящий пиксель и вычитается уходящий), поэтому цена пикселя не зависит от радиуса.
+ * За краем изображения повторяется крайний пиксель.
+ */
+public class BoxBlurFilter extends SeparableFilter {
+    private final int radius;
+
+    /**
+     * Конструктор с параметрами
+     * @param radius Радиус окна в пикселях
+     */
+    public BoxBlurFilter(int radius) {
+        if (radius < 1) {
+            throw new IllegalArgumentException("Box blur radius must be positive: " + radius);
+        }
+        this.radius = radius;
+    }
+
+    public int getRadius() {
+        return radius;
+    }
+
+    @Override
+    public String getName() {
+        return "Box " + radius;
+    }
+
+    @Override
+    public int getHalo() {
+        return radius;
+    }
+
+    @Override
+    protected void filterLine(float[] line, int length, float[] scratch) {
+        System.arraycopy(line, 0, scratch, 0, length * 4);
+        int last = length - 1;
+        double scale = 1.0 / (2 * radius + 1);
+        for (int channel = 0; channel < 4; channel++) {
+            double sum = 0;
+            for (int k = -radius; k <= radius; k++) {
+                sum += scratch[Math.max(0, Math.min(k, last)) * 4 + channel];
+            }
+            for (int i = 0; i < length; i++) {
+                line[i * 4 + channel] = (float) (sum * scale);
+                sum += scratch[Math.min(i + radius + 1, last) * 4 + channel]
+                        - scratch[Math.max(i - radius, 0) * 4 + channel];
+            }
+        }
+    }
+}
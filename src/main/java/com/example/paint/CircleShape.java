@@ -1,20 +1,24 @@
 package com.example.paint;
 
+import javafx.geometry.Rectangle2D;
+import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.paint.Color;
 
-public class CircleShape {
+public class CircleShape extends DrawableShape {
     private final double centerX;
     private final double centerY;
     private double radius;
-    private final Color color;
-    private final String fillType;
 
     public CircleShape(double centerX, double centerY, double radius, Color color, String fillType) {
+        this(centerX, centerY, radius, color, fillType, 1.0);
+    }
+
+    public CircleShape(double centerX, double centerY, double radius, Color color, String fillType,
+                       double lineWidth) {
+        super(color, fillType, lineWidth, lineWidth);
         this.centerX = centerX;
         this.centerY = centerY;
         this.radius = radius;
-        this.color = color;
-        this.fillType = fillType;
     }
 
     public double getCenterX() {
@@ -29,15 +33,47 @@ public class CircleShape {
         return radius;
     }
 
-    public String getFillType() {
-        return fillType;
-    }
-
     public void setRadius(double radius) {
         this.radius = radius;
     }
 
-    public Color getColor() {
-        return color;
+    @Override
+    public Rectangle2D getBounds() {
+        return paddedBounds(centerX - radius, centerY - radius, centerX + radius, centerY + radius);
+    }
+
+    @Override
+    protected void drawOutline(GraphicsContext graphicsContext) {
+        graphicsContext.strokeOval(centerX - radius, centerY - radius, 2 * radius, 2 * radius);
+    }
+
+    /**
+     * Для каждой линии штриховки концы хорды вычисляются из уравнения окружности,
+     * поэтому работа зависит только от числа линий, а не от размера холста
+     */
+    @Override
+    protected void drawHorizontalHatch(GraphicsContext graphicsContext) {
+        for (double y = Math.ceil((centerY - radius) / HATCH_STEP) * HATCH_STEP; y <= centerY + radius;
+             y += HATCH_STEP) {
+            double halfChord = halfChord(y - centerY);
+            graphicsContext.strokeLine(centerX - halfChord, y, centerX + halfChord, y);
+        }
+    }
+
+    @Override
+    protected void drawVerticalHatch(GraphicsContext graphicsContext) {
+        for (double x = Math.ceil((centerX - radius) / HATCH_STEP) * HATCH_STEP; x <= centerX + radius;
+             x += HATCH_STEP) {
+            double halfChord = halfChord(x - centerX);
+            graphicsContext.strokeLine(x, centerY - halfChord, x, centerY + halfChord);
+        }
+    }
+
+    /**
+     * @param distance Расстояние от центра круга до хорды
+     * @return Половина длины хорды
+     */
+    private double halfChord(double distance) {
+        return Math.sqrt(Math.max(0, radius * radius - distance * distance));
     }
 }
@@ -1,13 +1,21 @@
 package com.example.paint;
 
+import javafx.application.Platform;
 import javafx.fxml.FXML;
 import javafx.scene.canvas.Canvas;
 import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.control.Alert;
+import javafx.scene.control.ButtonType;
+import javafx.scene.control.ChoiceDialog;
 import javafx.scene.control.ColorPicker;
+import javafx.scene.control.Label;
 import javafx.scene.control.Slider;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.layout.Pane;
 import javafx.scene.paint.Color;
 
 import java.io.IOException;
+import java.util.Optional;
 
 
 /**
@@ -20,11 +28,21 @@ public class Controller {
     private ColorPicker colorPick;
     @FXML
     private Canvas canvas;
+    @FXML
+    private Pane canvasPane;
+    @FXML
+    private Label leftStatus;
+    @FXML
+    private Label rightStatus;
     private GraphicsContext graphicsContext;
     MenuController menuController = new MenuController();
     ResizeController resizeController = new ResizeController();
     private Canvas tempCanvas;
     FunctionController functionController;
+    ImageJobExecutor jobExecutor;
+    Viewport viewport;
+    UndoHistory undoHistory = new UndoHistory();
+    AutosaveService autosave;
     private Integer count = 0;
 
     /**
@@ -34,13 +52,58 @@ public class Controller {
     public void initialize() {
         graphicsContext = canvas.getGraphicsContext2D();
         tempCanvas = new Canvas(canvas.getWidth(), canvas.getHeight());
+        // Холст предпросмотра лежит поверх основного и не перехватывает события мыши
+        tempCanvas.widthProperty().bind(canvas.widthProperty());
+        tempCanvas.heightProperty().bind(canvas.heightProperty());
+        tempCanvas.setMouseTransparent(true);
+        canvasPane.getChildren().add(tempCanvas);
         functionController = new FunctionController(tempCanvas);
+        jobExecutor = new ImageJobExecutor(leftStatus, rightStatus);
         if (count == 0) {
             canvas.setWidth(canvas.getWidth());
             graphicsContext.setFill(Color.WHITE);
             graphicsContext.fillRect(0, 0, canvas.getWidth(), canvas.getHeight());
             count++;
         }
+        viewport = new Viewport(canvas, new TiledDocument((int) canvas.getWidth(), (int) canvas.getHeight(),
+                0xFFFFFFFF));
+        try {
+            undoHistory.setJournal(UndoJournal.createTemporary(), UndoHistory.DEFAULT_JOURNAL_BUDGET);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        viewport.addDocumentListener(undoHistory);
+        RecoveryFile.Recovery recovered = AutosaveService.recover(AutosaveService.DEFAULT_RECOVERY_PATH);
+        autosave = new AutosaveService(viewport, AutosaveService.DEFAULT_RECOVERY_PATH,
+                AutosaveService.DEFAULT_INTERVAL);
+        if (recovered != null) {
+            // автосохранение заменяет файл восстановления, поэтому запускается только после ответа пользователя
+            Platform.runLater(() -> {
+                offerRecovery(recovered);
+                startAutosave();
+            });
+        } else {
+            startAutosave();
+        }
+
+        // в уменьшенном виде холст не переносится в документ, поэтому рисование начинается с возврата к 1:1;
+        // точка документа под курсором остается на месте, и инструмент получает то же нажатие
+        canvas.addEventFilter(MouseEvent.MOUSE_PRESSED, e -> {
+            if (viewport.getLevel() > 0) {
+                viewport.setLevel(0, e.getX(), e.getY());
+                jobExecutor.showMessage("Масштаб 1:1 для рисования");
+            }
+        });
+        canvas.addEventHandler(MouseEvent.MOUSE_RELEASED, e -> Platform.runLater(viewport::commit));
+        canvas.setOnScroll(e -> {
+            if (e.isShortcutDown()) {
+                viewport.setLevel(viewport.getLevel() + (e.getDeltaY() < 0 ? 1 : -1), e.getX(), e.getY());
+            } else {
+                viewport.panBy((int) -e.getDeltaX(), (int) -e.getDeltaY());
+            }
+        });
+        canvasPane.widthProperty().addListener((observable, oldValue, newValue) -> resizeCanvas());
+        canvasPane.heightProperty().addListener((observable, oldValue, newValue) -> resizeCanvas());
 
         colorPick.setOnAction(e -> {
             Color selectedColor = colorPick.getValue();
@@ -53,6 +116,50 @@ public class Controller {
             graphicsContext.setLineWidth(newSize);
         });
     }
+    /**
+     * Предлагает открыть документ, восстановленный после аварийного завершения
+     * @param recovered Восстановленный документ
+     */
+    private void offerRecovery(RecoveryFile.Recovery recovered) {
+        Alert alert = new Alert(recovered.isComplete() ? Alert.AlertType.CONFIRMATION : Alert.AlertType.WARNING,
+                "", ButtonType.OK, ButtonType.CANCEL);
+        alert.setTitle("Восстановление");
+        alert.setHeaderText("Программа была закрыта аварийно");
+        alert.setContentText(recovered.isComplete() ? "Восстановить несохраненный документ?"
+                : "Автосохранение не успело записать документ целиком, часть его будет залита фоном. "
+                + "Восстановить то, что сохранилось?");
+        if (alert.showAndWait().filter(button -> button == ButtonType.OK).isPresent()) {
+            viewport.setDocument(recovered.getDocument());
+        } else {
+            recovered.getDocument().close();
+        }
+    }
+
+    /**
+     * Подписывает автосохранение на изменения документа и запускает его
+     */
+    private void startAutosave() {
+        viewport.addDocumentListener(autosave);
+        autosave.start();
+    }
+
+    /**
+     * Останавливает фоновые службы при штатном выходе из приложения
+     */
+    public void shutdown() {
+        autosave.stop();
+    }
+
+    /**
+     * Подгоняет холст под размер области окна, в которой он находится
+     */
+    private void resizeCanvas() {
+        double width = Math.floor(canvasPane.getWidth());
+        double height = Math.floor(canvasPane.getHeight());
+        if (width > 0 && height > 0 && (width != canvas.getWidth() || height != canvas.getHeight())) {
+            viewport.resize(width, height);
+        }
+    }
     @FXML
     public void onClickPencil() {
         functionController.onClickPencil(canvas, graphicsContext, colorPick);
@@ -63,7 +170,9 @@ public class Controller {
     }
     @FXML
     public void onClickClear() {
+        viewport.setLevel(0, 0, 0);
         functionController.onClickClear(canvas, graphicsContext);
+        viewport.commit();
     }
     @FXML
     public void onClickEraser() {
@@ -79,15 +188,23 @@ public class Controller {
     }
     @FXML
     public void onClickResizeImage() {
-        resizeController.onClickResizeImage(canvas, graphicsContext);
+        resizeController.onClickResizeImage(canvas, graphicsContext, viewport, jobExecutor);
     }
     @FXML
     public void NewFile() {
-        menuController.NewFile(canvas);
+        menuController.NewFile(canvas, viewport);
     }
     @FXML
     public void FileSave() {
-        menuController.FileSave(canvas);
+        menuController.FileSave(canvas, viewport, jobExecutor);
+    }
+    @FXML
+    public void OpenProject() {
+        menuController.OpenProject(canvas, viewport);
+    }
+    @FXML
+    public void SaveProject() {
+        menuController.SaveProject(canvas, viewport, jobExecutor);
     }
     @FXML
     public void ApplyExit() {
@@ -95,10 +212,53 @@ public class Controller {
     }
     @FXML
     public void InsertImageOnImage() {
-        menuController.InsertImageOnImage(canvas, graphicsContext);
+        menuController.InsertImageOnImage(canvas, graphicsContext, viewport, jobExecutor);
+    }
+    @FXML
+    public void BilateralFilter() {
+        menuController.BilateralFilter(canvas, viewport, jobExecutor);
+    }
+    @FXML
+    public void GaussianBlur() {
+        askRadius("Размытие по Гауссу", "Сигма, пикселей", 1, 2, 4, 8, 16, 32)
+                .ifPresent(sigma -> menuController.ApplyFilter(viewport, jobExecutor, new GaussianFilter(sigma)));
+    }
+    @FXML
+    public void BoxBlur() {
+        askRadius("Размытие по квадрату", "Радиус, пикселей", 1, 2, 4, 8, 16, 32)
+                .ifPresent(radius -> menuController.ApplyFilter(viewport, jobExecutor, new BoxBlurFilter(radius)));
+    }
+    @FXML
+    public void MedianFilter() {
+        askRadius("Медианный фильтр", "Радиус, пикселей", 1, 2, 3, 5, 8)
+                .ifPresent(radius -> menuController.ApplyFilter(viewport, jobExecutor, new MedianFilter(radius)));
+    }
+
+    /**
+     * Спрашивает размер окна фильтра
+     * @param title Заголовок диалога
+     * @param header Текст над списком
+     * @param choices Варианты; по умолчанию выбран второй из них
+     * @return Выбранное значение или пусто, если диалог отменен
+     */
+    private Optional<Integer> askRadius(String title, String header, Integer... choices) {
+        ChoiceDialog<Integer> dialog = new ChoiceDialog<>(choices[1], choices);
+        dialog.setTitle(title);
+        dialog.setHeaderText(header);
+        return dialog.showAndWait();
+    }
+    @FXML
+    public void Undo() {
+        viewport.commit();
+        undoHistory.undo(viewport);
+    }
+    @FXML
+    public void Redo() {
+        viewport.commit();
+        undoHistory.redo(viewport);
     }
     @FXML
-    public void BilateralFilter() throws IOException {
-        menuController.BilateralFilter(canvas);
+    public void CancelJobs() {
+        jobExecutor.cancelAll();
     }
 }
\ No newline at end of file
@@ -0,0 +1,89 @@
+package com.example.paint;
+
+import javafx.geometry.Rectangle2D;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
+
+/**
+ * Базовый класс фигуры, которая хранится в сцене и умеет сама себя отрисовать
+ */
+public abstract class DrawableShape {
+    /**
+     * Шаг линий штриховки
+     */
+    protected static final double HATCH_STEP = 25.0;
+
+    private final Color color;
+    private final String fillType;
+    private final double lineWidth;
+    private final double hatchWidth;
+
+    /**
+     * Конструктор с параметрами
+     * @param color Цвет контура и штриховки
+     * @param fillType Тип заливки: "Без заливки", "Горизонтальная" или "Вертикальная"
+     * @param lineWidth Толщина контура
+     * @param hatchWidth Толщина линий штриховки
+     */
+    protected DrawableShape(Color color, String fillType, double lineWidth, double hatchWidth) {
+        this.color = color;
+        this.fillType = fillType;
+        this.lineWidth = lineWidth;
+        this.hatchWidth = hatchWidth;
+    }
+
+    public Color getColor() {
+        return color;
+    }
+
+    public String getFillType() {
+        return fillType;
+    }
+
+    public double getLineWidth() {
+        return lineWidth;
+    }
+
+    public double getHatchWidth() {
+        return hatchWidth;
+    }
+
+    /**
+     * @return Прямоугольник, который затрагивает отрисовка фигуры, с учетом толщины линий
+     */
+    public abstract Rectangle2D getBounds();
+
+    /**
+     * Рисует фигуру. Состояние graphicsContext после вызова не меняется.
+     * @param graphicsContext Параметр, отвечающий за отрисовку
+     */
+    public void draw(GraphicsContext graphicsContext) {
+        graphicsContext.save();
+        graphicsContext.setStroke(color);
+        graphicsContext.setLineWidth(lineWidth);
+        drawOutline(graphicsContext);
+        graphicsContext.setLineWidth(hatchWidth);
+        if (fillType.equals("Горизонтальная")) {
+            drawHorizontalHatch(graphicsContext);
+        } else if (fillType.equals("Вертикальная")) {
+            drawVerticalHatch(graphicsContext);
+        }
+        graphicsContext.restore();
+    }
+
+    protected abstract void drawOutline(GraphicsContext graphicsContext);
+
+    protected abstract void drawHorizontalHatch(GraphicsContext graphicsContext);
+
+    protected abstract void drawVerticalHatch(GraphicsContext graphicsContext);
+
+    /**
+     * Строит прямоугольник по крайним точкам геометрии, расширенный на половину самой толстой линии
+     * и на пиксель сглаживания
+     */
+    protected Rectangle2D paddedBounds(double minX, double minY, double maxX, double maxY) {
+        double padding = Math.max(lineWidth, hatchWidth) / 2 + 1;
+        return new Rectangle2D(minX - padding, minY - padding,
+                maxX - minX + 2 * padding, maxY - minY + 2 * padding);
+    }
+}
@@ -0,0 +1,460 @@
+package com.example.paint;
+
+import java.awt.Rectangle;
+import java.util.Arrays;
+import java.util.concurrent.CountedCompleter;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
+
+/**
+ * Заливка области построчным (scanline) алгоритмом на упакованном буфере пикселей 0xAARRGGBB.
+ * За один шаг заливается целый горизонтальный отрезок, а в стек кладутся только начала
+ * отрезков в соседних строках, поэтому стек хранит примитивные индексы, а не объекты.
+ */
+public class FloodFill {
+    /**
+     * Количество пикселей, начиная с которого заливка выполняется параллельно. Параллельная заливка
+     * захватывает каждый пиксель атомарной операцией и в одном потоке примерно вдвое медленнее последовательной,
+     * но холст окна (около миллиона пикселей) на нескольких ядрах она уже заливает быстрее.
+     */
+    public static final int PARALLEL_THRESHOLD = 512 * 1024;
+
+    /**
+     * Количество ядер, начиная с которого параллельная заливка разрешена по умолчанию
+     */
+    private static final int PARALLEL_MIN_PROCESSORS = 4;
+
+    /**
+     * Размер стека задачи, при превышении которого половина стека отдается новой задаче
+     */
+    private static final int SPLIT_STACK_SIZE = 256;
+
+    /**
+     * Способ сравнения цвета пикселя с целевыми цветами
+     */
+    public enum ColorDistance {
+        /**
+         * Точное совпадение цвета
+         */
+        EXACT,
+        /**
+         * Разница каждого канала (включая альфу) не больше допуска
+         */
+        PER_CHANNEL,
+        /**
+         * Взвешенное евклидово расстояние "redmean", приближенно учитывающее восприятие цвета.
+         * Допуск задается в единицах канала: серый сдвиг на tolerance по всем каналам лежит на границе.
+         */
+        PERCEPTUAL
+    }
+
+    private final int[] pixels;
+    private final int width;
+    private final int height;
+    private boolean parallel = Runtime.getRuntime().availableProcessors() >= PARALLEL_MIN_PROCESSORS;
+    private ColorDistance colorDistance = ColorDistance.EXACT;
+    private int tolerance;
+    private int perceptualLimit;
+    private int[] targetColors;
+    /**
+     * Маска пикселей, совпадающих с целевыми цветами: по rowWords слов на строку
+     */
+    private long[] matchMask;
+    private int rowWords;
+    private int minX, minY, maxX, maxY;
+
+    /**
+     * Конструктор с параметрами
+     * @param pixels Пиксели изображения построчно, изменяются на месте
+     * @param width Ширина изображения
+     * @param height Высота изображения
+     */
+    public FloodFill(int[] pixels, int width, int height) {
+        this.pixels = pixels;
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Разрешает или запрещает параллельную заливку. По умолчанию она разрешена, если у процессора не меньше
+     * четырех ядер. Разрешенная заливка включается сама для изображений, в которых не меньше
+     * {@link #PARALLEL_THRESHOLD} пикселей, меньшие изображения всегда заливаются последовательно.
+     * @param parallel Разрешена ли параллельная заливка
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    /**
+     * Задает допуск, с которым цвет пикселя считается совпадающим с целевым.
+     * Сравнение выполняется на упакованных int без создания объектов, строка за строкой через {@link PixelKernels}.
+     * @param colorDistance Способ сравнения цветов
+     * @param tolerance Допуск в единицах канала от 0 до 255, для EXACT не используется
+     */
+    public void setTolerance(ColorDistance colorDistance, int tolerance) {
+        this.colorDistance = colorDistance;
+        this.tolerance = Math.max(0, Math.min(255, tolerance));
+        this.perceptualLimit = 9 * this.tolerance * this.tolerance;
+    }
+
+    /**
+     * Заливает связную область, содержащую точку (x, y) и состоящую из пикселей одного из целевых цветов
+     * @param x Координата начальной точки по X
+     * @param y Координата начальной точки по Y
+     * @param fillColor Цвет заливки 0xAARRGGBB
+     * @param targetColors Цвета, которые считаются частью заливаемой области
+     * @return Количество залитых пикселей
+     */
+    public int fill(int x, int y, int fillColor, int... targetColors) {
+        minX = width;
+        minY = height;
+        maxX = -1;
+        maxY = -1;
+        if (x < 0 || x >= width || y < 0 || y >= height) {
+            return 0;
+        }
+        // угловой пиксель обычно совпадает с цветом фона, каждая строка сравнивается с ним один раз
+        this.targetColors = IntStream.of(targetColors).distinct().toArray();
+        rowWords = (width + 63) >>> 6;
+        matchMask = new long[rowWords * height];
+        try {
+            if (parallel && (long) width * height >= PARALLEL_THRESHOLD) {
+                return fillParallel(x, y, fillColor);
+            }
+            return fillSequential(x, y, fillColor);
+        } finally {
+            matchMask = null;
+        }
+    }
+
+    /**
+     * Последовательная заливка, маска совпадений строится по мере того, как заливка доходит до строк
+     */
+    private int fillSequential(int x, int y, int fillColor) {
+        boolean[] matchedRows = new boolean[height];
+        long[] visited = new long[(width * height + 63) >>> 6];
+        IntStack stack = new IntStack();
+        stack.push(y * width + x);
+        int filled = 0;
+
+        while (!stack.isEmpty()) {
+            int index = stack.pop();
+            if (isVisited(visited, index)) {
+                continue;
+            }
+            int row = index / width;
+            int bitBase = matchedRow(matchedRows, row);
+            if (!isMatched(bitBase + index)) {
+                continue;
+            }
+            int rowStart = row * width;
+            int left = index;
+            while (left > rowStart && !isVisited(visited, left - 1) && isMatched(bitBase + left - 1)) {
+                left--;
+            }
+            int right = index;
+            while (right < rowStart + width - 1 && !isVisited(visited, right + 1) && isMatched(bitBase + right + 1)) {
+                right++;
+            }
+
+            for (int i = left; i <= right; i++) {
+                pixels[i] = fillColor;
+                visited[i >>> 6] |= 1L << i;
+            }
+            filled += right - left + 1;
+            minX = Math.min(minX, left - rowStart);
+            maxX = Math.max(maxX, right - rowStart);
+            minY = Math.min(minY, row);
+            maxY = Math.max(maxY, row);
+
+            if (row > 0) {
+                pushSpans(stack, visited, matchedRow(matchedRows, row - 1), left - width, right - width);
+            }
+            if (row < height - 1) {
+                pushSpans(stack, visited, matchedRow(matchedRows, row + 1), left + width, right + width);
+            }
+        }
+        return filled;
+    }
+
+    /**
+     * @return Прямоугольник, охватывающий пиксели, залитые последним вызовом fill, или пустой прямоугольник
+     */
+    public Rectangle getFilledBounds() {
+        if (maxX < minX) {
+            return new Rectangle();
+        }
+        return new Rectangle(minX, minY, maxX - minX + 1, maxY - minY + 1);
+    }
+
+    /**
+     * Кладет в стек начало каждого отрезка подходящих и еще не залитых пикселей в диапазоне [from, to]
+     * одной строки, bitBase - смещение битов этой строки в маске совпадений
+     */
+    private void pushSpans(IntStack stack, long[] visited, int bitBase, int from, int to) {
+        boolean inSpan = false;
+        for (int i = from; i <= to; i++) {
+            boolean fillable = !isVisited(visited, i) && isMatched(bitBase + i);
+            if (fillable && !inSpan) {
+                stack.push(i);
+            }
+            inSpan = fillable;
+        }
+    }
+
+    /**
+     * Параллельная заливка. Задачи fork/join растят область одновременно, каждый пиксель сначала
+     * захватывается атомарной установкой бита в общем битсете без блокировок, и только захвативший
+     * поток закрашивает его. Когда стек задачи разрастается, половина его отдается новой задаче.
+     * Маска совпадений, как и в последовательной заливке, строится только для строк, до которых дошла заливка.
+     */
+    private int fillParallel(int x, int y, int fillColor) {
+        ParallelFill fill = new ParallelFill(fillColor);
+        ForkJoinPool.commonPool().invoke(new SpanTask(null, fill, new int[]{y * width + x}, 1));
+        minX = fill.minX.intValue();
+        minY = fill.minY.intValue();
+        maxX = fill.maxX.intValue();
+        maxY = fill.maxY.intValue();
+        return fill.filled.intValue();
+    }
+
+    /**
+     * Атомарно отмечает пиксель как посещенный
+     * @return true, если пиксель был свободен и теперь принадлежит вызывающему потоку
+     */
+    private static boolean claim(AtomicLongArray visited, int index) {
+        int word = index >>> 6;
+        long bit = 1L << index;
+        long old;
+        do {
+            old = visited.get(word);
+            if ((old & bit) != 0) {
+                return false;
+            }
+        } while (!visited.compareAndSet(word, old, old | bit));
+        return true;
+    }
+
+    /**
+     * Общее состояние одной параллельной заливки. Статистика пополняется один раз на задачу,
+     * а не на пиксель, поэтому счетчики почти не конкурируют.
+     */
+    private class ParallelFill {
+        private final AtomicLongArray visited = new AtomicLongArray((width * height + 63) >>> 6);
+        private final AtomicIntegerArray matchedRows = new AtomicIntegerArray(height);
+        private final int fillColor;
+        private final LongAdder filled = new LongAdder();
+        private final LongAccumulator minX = new LongAccumulator(Math::min, width);
+        private final LongAccumulator minY = new LongAccumulator(Math::min, height);
+        private final LongAccumulator maxX = new LongAccumulator(Math::max, -1);
+        private final LongAccumulator maxY = new LongAccumulator(Math::max, -1);
+
+        ParallelFill(int fillColor) {
+            this.fillColor = fillColor;
+        }
+
+        /**
+         * Сравнивает строку с целевыми цветами, если это еще не сделано, и возвращает смещение ее битов в маске,
+         * как {@link FloodFill#matchedRow}. Строка сравнивается во временный массив и копируется
+         * в маску целиком до того, как строка отмечается готовой, поэтому блокировка не нужна.
+         * <p>
+         * Маски разных потоков могут различаться. Поток, увидевший строку неготовой, может сравнивать ее,
+         * пока другой поток уже закрашивает ее пиксели, и затем скопировать поверх верной маски свою,
+         * в которой закрашенные пиксели могут быть отмечены неверно. Это безопасно только потому, что закрашивается
+         * лишь пиксель, уже захваченный в {@link #visited}: такие пиксели больше никто не проверяет,
+         * а незакрашенные пиксели строки сохраняют исходный цвет, и их биты во всех копиях маски одинаковы.
+         */
+        int matchedRow(int row) {
+            if (matchedRows.get(row) == 0) {
+                long[] rowMask = new long[rowWords];
+                matchRow(row, rowMask, 0);
+                System.arraycopy(rowMask, 0, matchMask, row * rowWords, rowWords);
+                matchedRows.set(row, 1);
+            }
+            return bitBase(row);
+        }
+    }
+
+    /**
+     * Задача параллельной заливки. Дочерние задачи не ожидаются явно: CountedCompleter
+     * завершает корень, когда завершатся все порожденные задачи, поэтому глубина стека не растет.
+     */
+    @SuppressWarnings("serial")
+    private class SpanTask extends CountedCompleter<Void> {
+        private final ParallelFill fill;
+        private final int[] seeds;
+        private final int seedCount;
+
+        SpanTask(SpanTask parent, ParallelFill fill, int[] seeds, int seedCount) {
+            super(parent);
+            this.fill = fill;
+            this.seeds = seeds;
+            this.seedCount = seedCount;
+        }
+
+        @Override
+        public void compute() {
+            IntStack stack = new IntStack();
+            for (int i = 0; i < seedCount; i++) {
+                stack.push(seeds[i]);
+            }
+            int filled = 0;
+            int taskMinX = width, taskMinY = height, taskMaxX = -1, taskMaxY = -1;
+
+            while (!stack.isEmpty()) {
+                if (stack.size > SPLIT_STACK_SIZE) {
+                    int half = stack.size / 2;
+                    addToPendingCount(1);
+                    new SpanTask(this, fill, Arrays.copyOfRange(stack.items, stack.size - half, stack.size), half)
+                            .fork();
+                    stack.size -= half;
+                }
+
+                int index = stack.pop();
+                int row = index / width;
+                int bitBase = fill.matchedRow(row);
+                if (!isMatched(bitBase + index) || !claim(fill.visited, index)) {
+                    continue;
+                }
+                int rowStart = row * width;
+                int left = index;
+                while (left > rowStart && isMatched(bitBase + left - 1) && claim(fill.visited, left - 1)) {
+                    left--;
+                }
+                int right = index;
+                while (right < rowStart + width - 1 && isMatched(bitBase + right + 1)
+                        && claim(fill.visited, right + 1)) {
+                    right++;
+                }
+
+                Arrays.fill(pixels, left, right + 1, fill.fillColor);
+                filled += right - left + 1;
+                taskMinX = Math.min(taskMinX, left - rowStart);
+                taskMaxX = Math.max(taskMaxX, right - rowStart);
+                taskMinY = Math.min(taskMinY, row);
+                taskMaxY = Math.max(taskMaxY, row);
+
+                if (row > 0) {
+                    pushSpans(stack, fill.matchedRow(row - 1), left - width, right - width);
+                }
+                if (row < height - 1) {
+                    pushSpans(stack, fill.matchedRow(row + 1), left + width, right + width);
+                }
+            }
+
+            if (filled > 0) {
+                fill.filled.add(filled);
+                fill.minX.accumulate(taskMinX);
+                fill.minY.accumulate(taskMinY);
+                fill.maxX.accumulate(taskMaxX);
+                fill.maxY.accumulate(taskMaxY);
+            }
+            tryComplete();
+        }
+
+        private void pushSpans(IntStack stack, int bitBase, int from, int to) {
+            boolean inSpan = false;
+            for (int i = from; i <= to; i++) {
+                boolean fillable = (fill.visited.get(i >>> 6) & (1L << i)) == 0
+                        && isMatched(bitBase + i);
+                if (fillable && !inSpan) {
+                    stack.push(i);
+                }
+                inSpan = fillable;
+            }
+        }
+    }
+
+    private static boolean isVisited(long[] visited, int index) {
+        return (visited[index >>> 6] & (1L << index)) != 0;
+    }
+
+    /**
+     * Сравнивает строку с целевыми цветами целиком при первом обращении к ней
+     * @return Смещение битов строки в маске совпадений: пикселю с индексом index соответствует бит bitBase + index
+     */
+    private int matchedRow(boolean[] matchedRows, int row) {
+        if (!matchedRows[row]) {
+            matchRow(row, matchMask, row * rowWords * 64);
+            matchedRows[row] = true;
+        }
+        return bitBase(row);
+    }
+
+    private int bitBase(int row) {
+        return row * rowWords * 64 - row * width;
+    }
+
+    /**
+     * Совпадает ли с одним из целевых цветов пиксель, которому соответствует бит bit маски совпадений
+     */
+    private boolean isMatched(int bit) {
+        return (matchMask[bit >>> 6] & (1L << bit)) != 0;
+    }
+
+    /**
+     * Отмечает в маске пиксели строки, подходящие хотя бы к одному целевому цвету
+     * @param row Номер строки
+     * @param mask Маска, в которую записываются биты строки
+     * @param bitOffset Номер бита маски для первого пикселя строки
+     */
+    private void matchRow(int row, long[] mask, int bitOffset) {
+        int limit = colorDistance == ColorDistance.PERCEPTUAL ? perceptualLimit : tolerance;
+        PixelKernels.get().matchColors(pixels, row * width, width, targetColors, colorDistance, limit, mask,
+                bitOffset);
+    }
+
+    /**
+     * @return Наибольшая по модулю разница каналов двух цветов 0xAARRGGBB
+     */
+    static int channelDistance(int c1, int c2) {
+        int da = Math.abs((c1 >>> 24) - (c2 >>> 24));
+        int dr = Math.abs(((c1 >> 16) & 0xFF) - ((c2 >> 16) & 0xFF));
+        int dg = Math.abs(((c1 >> 8) & 0xFF) - ((c2 >> 8) & 0xFF));
+        int db = Math.abs((c1 & 0xFF) - (c2 & 0xFF));
+        return Math.max(Math.max(da, dr), Math.max(dg, db));
+    }
+
+    /**
+     * Квадрат расстояния "redmean": веса красного и синего зависят от средней яркости красного.
+     * Разница альфы учитывается с весом 3, как и остальные каналы в среднем.
+     * @return Квадрат расстояния, для серого сдвига на d по всем каналам равен примерно 9 * d^2
+     */
+    static int perceptualDistanceSquared(int c1, int c2) {
+        int r1 = (c1 >> 16) & 0xFF;
+        int r2 = (c2 >> 16) & 0xFF;
+        int redMean = (r1 + r2) >> 1;
+        int da = (c1 >>> 24) - (c2 >>> 24);
+        int dr = r1 - r2;
+        int dg = ((c1 >> 8) & 0xFF) - ((c2 >> 8) & 0xFF);
+        int db = (c1 & 0xFF) - (c2 & 0xFF);
+        return (((512 + redMean) * dr * dr) >> 8) + 4 * dg * dg + (((767 - redMean) * db * db) >> 8) + 3 * da * da;
+    }
+
+    /**
+     * Растущий стек примитивных int
+     */
+    private static class IntStack {
+        private int[] items = new int[256];
+        private int size;
+
+        void push(int value) {
+            if (size == items.length) {
+                items = Arrays.copyOf(items, size * 2);
+            }
+            items[size++] = value;
+        }
+
+        int pop() {
+            return items[--size];
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.paint;
+
+/**
+ * Размытие по Гауссу рекурсивным (IIR) фильтром третьего порядка Янга и ван Влита. Каждая линия проходится
+ * вперед и назад, на пиксель уходит одинаковое число операций при любой сигме.
+ * Края продолжаются крайним пикселем: фильтр начинает с установившегося значения для него.
+ */
+public class GaussianFilter extends SeparableFilter {
+    private final double sigma;
+    private final float gain;
+    private final float a1;
+    private final float a2;
+    private final float a3;
+
+    /**
+     * Конструктор с параметрами
+     * @param sigma Сигма в пикселях, не меньше 0.5
+     */
+    public GaussianFilter(double sigma) {
+        if (!(sigma >= 0.5)) {
+            throw new IllegalArgumentException("Gaussian sigma must be at least 0.5: " + sigma);
+        }
+        this.sigma = sigma;
+        double q = sigma >= 2.5 ? 0.98711 * sigma - 0.96330 : 3.97156 - 4.14554 * Math.sqrt(1 - 0.26891 * sigma);
+        double b0 = 1.57825 + 2.44413 * q + 1.4281 * q * q + 0.422205 * q * q * q;
+        double b1 = 2.44413 * q + 2.85619 * q * q + 1.26661 * q * q * q;
+        double b2 = -(1.4281 * q * q + 1.26661 * q * q * q);
+        double b3 = 0.422205 * q * q * q;
+        this.a1 = (float) (b1 / b0);
+        this.a2 = (float) (b2 / b0);
+        this.a3 = (float) (b3 / b0);
+        this.gain = 1 - (a1 + a2 + a3);
+    }
+
+    public double getSigma() {
+        return sigma;
+    }
+
+    @Override
+    public String getName() {
+        return "Gaussian " + sigma;
+    }
+
+    /**
+     * Отклик рекурсивного фильтра затухает медленнее настоящего гауссиана: дальше 7 сигм остается
+     * меньше 1e-4 его веса, то есть меньше 0.03 уровня канала
+     */
+    @Override
+    public int getHalo() {
+        return (int) Math.ceil(7 * sigma);
+    }
+
+    @Override
+    protected void filterLine(float[] line, int length, float[] scratch) {
+        int last = (length - 1) * 4;
+        for (int channel = 0; channel < 4; channel++) {
+            float w1 = line[channel];
+            float w2 = w1;
+            float w3 = w1;
+            for (int i = channel; i <= last + channel; i += 4) {
+                float w = gain * line[i] + a1 * w1 + a2 * w2 + a3 * w3;
+                line[i] = w;
+                w3 = w2;
+                w2 = w1;
+                w1 = w;
+            }
+            w1 = line[last + channel];
+            w2 = w1;
+            w3 = w1;
+            for (int i = last + channel; i >= channel; i -= 4) {
+                float w = gain * line[i] + a1 * w1 + a2 * w2 + a3 * w3;
+                line[i] = w;
+                w3 = w2;
+                w2 = w1;
+                w1 = w;
+            }
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package com.example.paint;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Экспорт документа в растровые форматы с настройками сжатия. PNG сжимается параллельно
+ * {@link ParallelPngEncoder}, остальные форматы записываются через ImageWriter с явными параметрами.
+ * Класс не обращается к JavaFX и может работать в фоновом потоке.
+ */
+public class ImageExporter {
+    /**
+     * Поддерживаемые форматы
+     */
+    public enum Format {
+        PNG("png", "png"),
+        JPEG("jpeg", "jpg", "jpeg"),
+        BMP("bmp", "bmp"),
+        GIF("gif", "gif"),
+        TIFF("tiff", "tif", "tiff");
+
+        private final String writerName;
+        private final String[] extensions;
+
+        Format(String writerName, String... extensions) {
+            this.writerName = writerName;
+            this.extensions = extensions;
+        }
+
+        public String getExtension() {
+            return extensions[0];
+        }
+
+        /**
+         * Определяет формат по расширению имени файла
+         * @param fileName Имя файла
+         * @return Формат или null, если расширение не поддерживается
+         */
+        public static Format fromFileName(String fileName) {
+            int lastDotIndex = fileName.lastIndexOf('.');
+            if (lastDotIndex == -1) {
+                return null;
+            }
+            String extension = fileName.substring(lastDotIndex + 1).toLowerCase(Locale.ROOT);
+            for (Format format : values()) {
+                for (String candidate : format.extensions) {
+                    if (candidate.equals(extension)) {
+                        return format;
+                    }
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Уровень сжатия PNG по умолчанию, как у zlib
+     */
+    public static final int DEFAULT_PNG_COMPRESSION = 6;
+
+    /**
+     * Качество JPEG по умолчанию
+     */
+    public static final float DEFAULT_JPEG_QUALITY = 0.9f;
+
+    /**
+     * Сжатие TIFF по умолчанию
+     */
+    public static final String DEFAULT_TIFF_COMPRESSION = "LZW";
+
+    private int pngCompressionLevel = DEFAULT_PNG_COMPRESSION;
+    private float jpegQuality = DEFAULT_JPEG_QUALITY;
+    private String tiffCompression = DEFAULT_TIFF_COMPRESSION;
+    private ForkJoinPool pool = ForkJoinPool.commonPool();
+
+    public int getPngCompressionLevel() {
+        return pngCompressionLevel;
+    }
+
+    /**
+     * @param pngCompressionLevel Уровень сжатия PNG от 0 (без сжатия) до 9 (наилучшее)
+     */
+    public void setPngCompressionLevel(int pngCompressionLevel) {
+        if (pngCompressionLevel < 0 || pngCompressionLevel > 9) {
+            throw new IllegalArgumentException("PNG compression level must be within 0..9: " + pngCompressionLevel);
+        }
+        this.pngCompressionLevel = pngCompressionLevel;
+    }
+
+    public float getJpegQuality() {
+        return jpegQuality;
+    }
+
+    /**
+     * @param jpegQuality Качество JPEG от 0 до 1
+     */
+    public void setJpegQuality(float jpegQuality) {
+        if (jpegQuality < 0 || jpegQuality > 1) {
+            throw new IllegalArgumentException("JPEG quality must be within 0..1: " + jpegQuality);
+        }
+        this.jpegQuality = jpegQuality;
+    }
+
+    public String getTiffCompression() {
+        return tiffCompression;
+    }
+
+    /**
+     * @param tiffCompression Тип сжатия TIFF, как его называет ImageWriter: "LZW", "Deflate", "PackBits" и т.д.,
+     *                        или null, чтобы не сжимать
+     */
+    public void setTiffCompression(String tiffCompression) {
+        this.tiffCompression = tiffCompression;
+    }
+
+    /**
+     * @param pool Пул потоков для параллельного сжатия PNG
+     */
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Записывает изображение в файл
+     * @param image Изображение
+     * @param format Формат
+     * @param file Файл
+     * @param progress Получатель хода работы в строках изображения
+     * @throws IOException Если файл не удалось записать
+     */
+    public void write(BufferedImage image, Format format, File file, JobProgress progress) throws IOException {
+        if (format == Format.PNG) {
+            new ParallelPngEncoder(pngCompressionLevel, pool).write(image, file, progress);
+            return;
+        }
+        BufferedImage output = prepare(image, format, progress);
+        Files.deleteIfExists(file.toPath());
+        try (ImageOutputStream stream = ImageIO.createImageOutputStream(file)) {
+            if (stream == null) {
+                throw new IOException("Cannot create file " + file);
+            }
+            write(output, format, stream);
+        }
+        progress.worked(image.getHeight());
+    }
+
+    /**
+     * Кодирует изображение в поток. Поток не закрывается, поэтому изображение можно закодировать в память
+     * и записать на диск отдельно.
+     * @param image Изображение
+     * @param format Формат
+     * @param output Поток, в который пишется файл
+     * @param progress Получатель хода работы в строках изображения
+     * @throws IOException Если поток не удалось записать
+     */
+    public void write(BufferedImage image, Format format, OutputStream output, JobProgress progress)
+            throws IOException {
+        if (format == Format.PNG) {
+            new ParallelPngEncoder(pngCompressionLevel, pool).write(image, output, progress);
+            return;
+        }
+        BufferedImage prepared = prepare(image, format, progress);
+        try (ImageOutputStream stream = new MemoryCacheImageOutputStream(output)) {
+            write(prepared, format, stream);
+        }
+        progress.worked(image.getHeight());
+    }
+
+    /**
+     * Убирает прозрачность для форматов, которые ее не хранят, и проверяет отмену
+     */
+    private static BufferedImage prepare(BufferedImage image, Format format, JobProgress progress) {
+        BufferedImage output = image;
+        if ((format == Format.JPEG || format == Format.BMP) && image.getColorModel().hasAlpha()) {
+            output = flatten(image);
+        }
+        if (progress.isCancelled()) {
+            throw new CancellationException();
+        }
+        return output;
+    }
+
+    /**
+     * Записывает изображение через ImageWriter с параметрами сжатия формата
+     */
+    private void write(BufferedImage image, Format format, ImageOutputStream stream) throws IOException {
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(format.writerName);
+        if (!writers.hasNext()) {
+            throw new IOException("No image writer for format " + format);
+        }
+        ImageWriter writer = writers.next();
+        try {
+            writer.setOutput(stream);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            if (format == Format.JPEG) {
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionQuality(jpegQuality);
+            } else if (format == Format.TIFF && tiffCompression != null) {
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionType(tiffCompression);
+            } else if (format == Format.TIFF) {
+                param.setCompressionMode(ImageWriteParam.MODE_DISABLED);
+            }
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    /**
+     * Накладывает изображение на белый фон: JPEG и BMP не хранят прозрачность,
+     * а без этого прозрачные области стали бы черными
+     */
+    private static BufferedImage flatten(BufferedImage image) {
+        BufferedImage rgb = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = rgb.createGraphics();
+        graphics.setColor(Color.WHITE);
+        graphics.fillRect(0, 0, image.getWidth(), image.getHeight());
+        graphics.drawImage(image, 0, 0, null);
+        graphics.dispose();
+        return rgb;
+    }
+}
@@ -0,0 +1,32 @@
+package com.example.paint;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Фильтр изображения над упакованными пикселями 0xAARRGGBB. Реализации не обращаются к JavaFX,
+ * обрабатывают строки параллельно через {@link ParallelRows}, а за краем изображения повторяют крайние пиксели.
+ */
+public interface ImageFilter {
+    /**
+     * @return Название фильтра для меню и журнала
+     */
+    String getName();
+
+    /**
+     * @return Сколько пикселей за краем области влияет на результат внутри нее. Полоса, прочитанная вместе
+     * с таким запасом строк над и под ней, фильтруется так же, как в составе всего изображения; для фильтров
+     * с бесконечным откликом - расстояние, дальше которого вклад пикселя пренебрежимо мал.
+     */
+    int getHalo();
+
+    /**
+     * Фильтрует изображение
+     * @param source Исходные пиксели, построчно без промежутков; не изменяются
+     * @param target Массив результата того же размера, не совпадающий с source
+     * @param width Ширина изображения
+     * @param height Высота изображения
+     * @param pool Пул потоков
+     * @param progress Получатель прогресса и признака отмены, всего height единиц работы
+     */
+    void apply(int[] source, int[] target, int width, int height, ForkJoinPool pool, JobProgress progress);
+}
@@ -0,0 +1,133 @@
+package com.example.paint;
+
+import javafx.concurrent.Task;
+import javafx.scene.control.Label;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Исполнитель фоновых операций над изображениями. Операции выполняются по очереди в отдельном
+ * потоке, их ход показывается в строке состояния, а в поток JavaFX передается только готовый результат.
+ */
+public class ImageJobExecutor {
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "image-jobs");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final List<ImageTask<?>> activeTasks = new ArrayList<>();
+    private final Label leftStatus;
+    private final Label rightStatus;
+
+    /**
+     * Операция, выполняемая в фоновом потоке
+     * @param <T> Тип результата
+     */
+    public interface Job<T> {
+        T run(JobProgress progress) throws Exception;
+    }
+
+    /**
+     * Конструктор с параметрами
+     * @param leftStatus Метка строки состояния, в которую выводится название операции
+     * @param rightStatus Метка строки состояния, в которую выводится процент выполнения
+     */
+    public ImageJobExecutor(Label leftStatus, Label rightStatus) {
+        this.leftStatus = leftStatus;
+        this.rightStatus = rightStatus;
+    }
+
+    /**
+     * Ставит операцию в очередь. Метод вызывается из потока JavaFX, onDone также вызывается в нем.
+     * @param title Название операции для строки состояния
+     * @param totalWork Общее количество единиц работы, о которых операция будет сообщать через JobProgress
+     * @param job Операция
+     * @param onDone Действие с результатом, выполняемое в потоке JavaFX
+     * @param <T> Тип результата
+     */
+    public <T> void submit(String title, long totalWork, Job<T> job, Consumer<T> onDone) {
+        ImageTask<T> task = new ImageTask<>(title, totalWork, job);
+        activeTasks.add(task);
+        task.setOnRunning(e -> showStatus(title, "0%"));
+        task.progressProperty().addListener((observable, oldValue, newValue) -> {
+            if (task.isRunning() && newValue.doubleValue() >= 0) {
+                rightStatus.setText(Math.round(newValue.doubleValue() * 100) + "%");
+            }
+        });
+        task.setOnSucceeded(e -> {
+            activeTasks.remove(task);
+            showStatus(title + ": готово", "");
+            onDone.accept(task.getValue());
+        });
+        task.setOnCancelled(e -> {
+            activeTasks.remove(task);
+            showStatus(title + ": отменено", "");
+        });
+        task.setOnFailed(e -> {
+            activeTasks.remove(task);
+            task.getException().printStackTrace();
+            showStatus(title + ": ошибка", "");
+        });
+        executor.submit(task);
+    }
+
+    /**
+     * Отменяет выполняемую и все ожидающие операции
+     */
+    public void cancelAll() {
+        for (ImageTask<?> task : new ArrayList<>(activeTasks)) {
+            task.cancel();
+        }
+    }
+
+    /**
+     * @return Есть ли незавершенные операции
+     */
+    public boolean isBusy() {
+        return !activeTasks.isEmpty();
+    }
+
+    /**
+     * Выводит сообщение в строку состояния. Вызывается из потока JavaFX.
+     * @param message Сообщение
+     */
+    public void showMessage(String message) {
+        showStatus(message, "");
+    }
+
+    private void showStatus(String left, String right) {
+        leftStatus.setText(left);
+        rightStatus.setText(right);
+    }
+
+    /**
+     * Задача JavaFX, которая передает операции себя в качестве JobProgress
+     * @param <T> Тип результата
+     */
+    private static class ImageTask<T> extends Task<T> implements JobProgress {
+        private final AtomicLong done = new AtomicLong();
+        private final long totalWork;
+        private final Job<T> job;
+
+        ImageTask(String title, long totalWork, Job<T> job) {
+            this.totalWork = totalWork;
+            this.job = job;
+            updateTitle(title);
+        }
+
+        @Override
+        protected T call() throws Exception {
+            return job.run(this);
+        }
+
+        @Override
+        public void worked(long units) {
+            updateProgress(Math.min(done.addAndGet(units), totalWork), totalWork);
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package com.example.paint;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.event.IIOReadProgressListener;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import java.awt.Dimension;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Загрузчик изображений через ImageReader. В отличие от ImageIO.read декодирует только нужный прямоугольник
+ * файла и сразу в нужном разрешении: лишние строки и столбцы пропускаются декодером, поэтому большая фотография,
+ * вставляемая в небольшой холст, не разворачивается в памяти целиком.
+ */
+public class ImageLoader {
+    private ImageLoader() {
+    }
+
+    /**
+     * Читает размер изображения из заголовка файла, не декодируя пиксели
+     * @param file Файл изображения
+     * @return Размер изображения
+     * @throws IOException Если формат не поддерживается или файл не читается
+     */
+    public static Dimension readSize(File file) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(file)) {
+            ImageReader reader = createReader(input, file);
+            try {
+                return new Dimension(reader.getWidth(0), reader.getHeight(0));
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Декодирует изображение целиком в исходном разрешении
+     * @param file Файл изображения
+     * @param progress Получатель хода работы, через него же декодирование можно прервать
+     * @return Изображение
+     * @throws IOException Если формат не поддерживается или файл не читается
+     */
+    public static BufferedImage read(File file, JobProgress progress) throws IOException {
+        return read(file, null, Integer.MAX_VALUE, Integer.MAX_VALUE, progress);
+    }
+
+    /**
+     * Декодирует прямоугольник изображения, прореживая его так, чтобы результат поместился в заданный размер.
+     * Прореживание выполняется целым шагом, поэтому результат может быть меньше заданного размера,
+     * но никогда не больше его.
+     * @param file Файл изображения
+     * @param region Прямоугольник в пикселях файла или null, чтобы читать изображение целиком
+     * @param maxWidth Наибольшая ширина результата
+     * @param maxHeight Наибольшая высота результата
+     * @param progress Получатель хода работы в процентах (100 единиц), через него же декодирование можно прервать
+     * @return Изображение
+     * @throws IOException Если формат не поддерживается или файл не читается
+     */
+    public static BufferedImage read(File file, Rectangle region, int maxWidth, int maxHeight,
+                                     JobProgress progress) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(file)) {
+            return read(input, file, region, maxWidth, maxHeight, progress);
+        }
+    }
+
+    /**
+     * Декодирует изображение целиком из уже прочитанного в память файла. Файл не открывается повторно,
+     * поэтому чтение с диска и декодирование можно выполнять в разных потоках.
+     * @param data Содержимое файла
+     * @param name Имя файла для сообщений об ошибках
+     * @param progress Получатель хода работы в процентах (100 единиц), через него же декодирование можно прервать
+     * @return Изображение
+     * @throws IOException Если формат не поддерживается или данные повреждены
+     */
+    public static BufferedImage read(byte[] data, String name, JobProgress progress) throws IOException {
+        try (ImageInputStream input = new MemoryCacheImageInputStream(new ByteArrayInputStream(data))) {
+            return read(input, name, null, Integer.MAX_VALUE, Integer.MAX_VALUE, progress);
+        }
+    }
+
+    private static BufferedImage read(ImageInputStream input, Object name, Rectangle region, int maxWidth,
+                                      int maxHeight, JobProgress progress) throws IOException {
+        ImageReader reader = createReader(input, name);
+        try {
+            Rectangle source = new Rectangle(0, 0, reader.getWidth(0), reader.getHeight(0));
+            if (region != null) {
+                source = source.intersection(region);
+                if (source.isEmpty()) {
+                    throw new IllegalArgumentException("Region " + region + " is outside the image");
+                }
+            }
+            int step = Math.max(subsampling(source.width, maxWidth), subsampling(source.height, maxHeight));
+
+            ImageReadParam param = reader.getDefaultReadParam();
+            param.setSourceRegion(source);
+            param.setSourceSubsampling(step, step, 0, 0);
+            ImageTypeSpecifier intType = findIntType(reader);
+            if (intType != null) {
+                param.setDestinationType(intType);
+            }
+            reader.addIIOReadProgressListener(new ProgressBridge(progress));
+            BufferedImage image = reader.read(0, param);
+            if (progress.isCancelled()) {
+                throw new CancellationException();
+            }
+            return image;
+        } finally {
+            reader.dispose();
+        }
+    }
+
+    private static ImageReader createReader(ImageInputStream input, Object name) throws IOException {
+        if (input == null) {
+            throw new IOException("Cannot open image file: " + name);
+        }
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+        if (!readers.hasNext()) {
+            throw new IOException("Unsupported image format: " + name);
+        }
+        ImageReader reader = readers.next();
+        reader.setInput(input, true, true);
+        return reader;
+    }
+
+    private static int subsampling(int size, int maxSize) {
+        return Math.max(1, (size + maxSize - 1) / Math.max(1, maxSize));
+    }
+
+    /**
+     * Ищет среди типов, в которые умеет декодировать читатель, тип с пикселями int,
+     * чтобы дальнейшая обработка не копировала изображение еще раз
+     */
+    private static ImageTypeSpecifier findIntType(ImageReader reader) throws IOException {
+        Iterator<ImageTypeSpecifier> types = reader.getImageTypes(0);
+        while (types.hasNext()) {
+            ImageTypeSpecifier type = types.next();
+            int bufferedType = type.getBufferedImageType();
+            if (bufferedType == BufferedImage.TYPE_INT_ARGB || bufferedType == BufferedImage.TYPE_INT_RGB) {
+                return type;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Передает ход декодирования в JobProgress и прерывает декодирование при отмене
+     */
+    private static final class ProgressBridge implements IIOReadProgressListener {
+        private final JobProgress progress;
+        private int reported;
+
+        ProgressBridge(JobProgress progress) {
+            this.progress = progress;
+        }
+
+        @Override
+        public void imageProgress(ImageReader source, float percentageDone) {
+            int percent = Math.min(100, (int) percentageDone);
+            if (percent > reported) {
+                progress.worked(percent - reported);
+                reported = percent;
+            }
+            if (progress.isCancelled()) {
+                source.abort();
+            }
+        }
+
+        @Override
+        public void imageComplete(ImageReader source) {
+            if (reported < 100) {
+                progress.worked(100 - reported);
+                reported = 100;
+            }
+        }
+
+        @Override
+        public void sequenceStarted(ImageReader source, int minIndex) {
+        }
+
+        @Override
+        public void sequenceComplete(ImageReader source) {
+        }
+
+        @Override
+        public void imageStarted(ImageReader source, int imageIndex) {
+        }
+
+        @Override
+        public void thumbnailStarted(ImageReader source, int imageIndex, int thumbnailIndex) {
+        }
+
+        @Override
+        public void thumbnailProgress(ImageReader source, float percentageDone) {
+        }
+
+        @Override
+        public void thumbnailComplete(ImageReader source) {
+        }
+
+        @Override
+        public void readAborted(ImageReader source) {
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.example.paint;
+
+/**
+ * Интерфейс, через который долгая операция над изображением сообщает о своем ходе
+ * и узнает, не отменил ли ее пользователь. Не зависит от JavaFX.
+ */
+public interface JobProgress {
+    /**
+     * Пустая реализация для случаев, когда прогресс никому не нужен
+     */
+    JobProgress NONE = new JobProgress() {
+        @Override
+        public void worked(long units) {
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+    };
+
+    /**
+     * Сообщает, что выполнена еще часть работы
+     * @param units Количество выполненных единиц работы (например, строк изображения)
+     */
+    void worked(long units);
+
+    /**
+     * @return Была ли операция отменена
+     */
+    boolean isCancelled();
+}
@@ -0,0 +1,111 @@
+package com.example.paint;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Медианный фильтр с квадратным окном стороной 2 * radius + 1, каждый канал A, R, G, B отдельно.
+ * Используется алгоритм Хуанга: окно сдвигается вдоль строки, в гистограммы каналов добавляется входящий
+ * столбец и удаляется уходящий, а медиана подстраивается от прежнего значения по счетчику пикселей меньше нее.
+ * Шаг стоит O(radius) вместо сортировки всего окна. За краем изображения повторяется крайний пиксель.
+ */
+public class MedianFilter implements ImageFilter {
+    private final int radius;
+
+    /**
+     * Конструктор с параметрами
+     * @param radius Радиус окна в пикселях
+     */
+    public MedianFilter(int radius) {
+        if (radius < 1) {
+            throw new IllegalArgumentException("Median radius must be positive: " + radius);
+        }
+        this.radius = radius;
+    }
+
+    public int getRadius() {
+        return radius;
+    }
+
+    @Override
+    public String getName() {
+        return "Median " + radius;
+    }
+
+    @Override
+    public int getHalo() {
+        return radius;
+    }
+
+    @Override
+    public void apply(int[] source, int[] target, int width, int height, ForkJoinPool pool, JobProgress progress) {
+        int half = (2 * radius + 1) * (2 * radius + 1) / 2;
+        ParallelRows.run(pool, 0, height, progress, (from, to) -> {
+            int[] histogram = new int[4 * 256];
+            int[] median = new int[4];
+            int[] lessThanMedian = new int[4];
+            int[] rows = new int[2 * radius + 1];
+            for (int y = from; y < to; y++) {
+                for (int k = 0; k < rows.length; k++) {
+                    rows[k] = Math.max(0, Math.min(y - radius + k, height - 1)) * width;
+                }
+                Arrays.fill(histogram, 0);
+                Arrays.fill(median, 0);
+                Arrays.fill(lessThanMedian, 0);
+                for (int dx = -radius; dx <= radius; dx++) {
+                    addColumn(source, rows, Math.max(0, Math.min(dx, width - 1)), histogram, median,
+                            lessThanMedian, 1);
+                }
+                for (int x = 0; x < width; x++) {
+                    int pixel = 0;
+                    for (int channel = 0; channel < 4; channel++) {
+                        pixel |= findMedian(histogram, channel, median, lessThanMedian, half) << (24 - channel * 8);
+                    }
+                    target[y * width + x] = pixel;
+                    if (x + 1 < width) {
+                        addColumn(source, rows, Math.max(x - radius, 0), histogram, median, lessThanMedian, -1);
+                        addColumn(source, rows, Math.min(x + radius + 1, width - 1), histogram, median,
+                                lessThanMedian, 1);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Добавляет (sign = 1) или удаляет (sign = -1) столбец окна в гистограммах
+     */
+    private static void addColumn(int[] source, int[] rows, int x, int[] histogram, int[] median,
+                                  int[] lessThanMedian, int sign) {
+        for (int row : rows) {
+            int pixel = source[row + x];
+            for (int channel = 0; channel < 4; channel++) {
+                int value = (pixel >>> (24 - channel * 8)) & 0xFF;
+                histogram[channel * 256 + value] += sign;
+                if (value < median[channel]) {
+                    lessThanMedian[channel] += sign;
+                }
+            }
+        }
+    }
+
+    /**
+     * Сдвигает медиану канала, пока меньше нее не окажется не больше half пикселей, а вместе с ней - больше half
+     */
+    private static int findMedian(int[] histogram, int channel, int[] median, int[] lessThanMedian, int half) {
+        int base = channel * 256;
+        int m = median[channel];
+        int less = lessThanMedian[channel];
+        while (less > half) {
+            m--;
+            less -= histogram[base + m];
+        }
+        while (less + histogram[base + m] <= half) {
+            less += histogram[base + m];
+            m++;
+        }
+        median[channel] = m;
+        lessThanMedian[channel] = less;
+        return m;
+    }
+}
@@ -1,129 +1,272 @@
 package com.example.paint;
 
-import javafx.embed.swing.SwingFXUtils;
-import javafx.scene.SnapshotParameters;
+import javafx.application.Platform;
 import javafx.scene.canvas.Canvas;
 import javafx.scene.canvas.GraphicsContext;
-import javafx.scene.image.WritableImage;
+import javafx.scene.control.ChoiceDialog;
+import javafx.scene.image.PixelFormat;
 import javafx.scene.paint.Color;
 import javafx.stage.FileChooser;
-import javax.imageio.ImageIO;
+import java.awt.Dimension;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.FutureTask;
 
 /**
  * Контроллер, отвечающий за отработку событий, связанных с работой файлов
  */
 public class MenuController {
-    private String currentFileFormat;
+    private final ImageExporter exporter = new ImageExporter();
 
     /**
      * Функция, создающая новую сцену
      * @param canvas Сцена, на которой рисуются объекты
+     * @param viewport Окно просмотра, которому передается новый пустой документ размером с холст
      */
-    public void NewFile(Canvas canvas) {
+    public void NewFile(Canvas canvas, Viewport viewport) {
         GraphicsContext graphicsContext = canvas.getGraphicsContext2D();
-        graphicsContext.clearRect(0, 0, canvas.getWidth(), canvas.getHeight());
+        viewport.setDocument(new TiledDocument((int) canvas.getWidth(), (int) canvas.getHeight(), 0));
         graphicsContext.setFill(Color.WHITESMOKE);
-        currentFileFormat = null;
     }
 
     /**
-     * Функция, отвечающая за сохранение файла в выбранном формате
+     * Функция, отвечающая за сохранение файла в формате, соответствующем расширению его имени.
+     * Сохраняется весь документ, а не только видимая на холсте часть. Документ копируется в потоке JavaFX,
+     * а сжатие и запись файла выполняются в фоне.
      * @param canvas Сцена, на которой рисуются объекты
+     * @param viewport Окно просмотра документа
+     * @param jobExecutor Исполнитель фоновых операций
      */
-    public void FileSave(Canvas canvas) {
+    public void FileSave(Canvas canvas, Viewport viewport, ImageJobExecutor jobExecutor) {
         FileChooser fileChooser = new FileChooser();
         fileChooser.setTitle("Save Image File");
         fileChooser.getExtensionFilters().addAll(
                 new FileChooser.ExtensionFilter("PNG Files", "*.png"),
                 new FileChooser.ExtensionFilter("BMP Files", "*.bmp"),
                 new FileChooser.ExtensionFilter("GIF Files", "*.gif"),
-                new FileChooser.ExtensionFilter("JPEG Files", "*.jpeg"),
-                new FileChooser.ExtensionFilter("TIFF Files", "*.tiff"));
+                new FileChooser.ExtensionFilter("JPEG Files", "*.jpeg", "*.jpg"),
+                new FileChooser.ExtensionFilter("TIFF Files", "*.tiff", "*.tif"));
         File saveFile = fileChooser.showSaveDialog(canvas.getScene().getWindow());
 
         if (saveFile != null) {
-            WritableImage writableImage = canvas.snapshot(new SnapshotParameters(), null);
-            try {
-                String format = currentFileFormat != null ? currentFileFormat : "png";
-                ImageIO.write(SwingFXUtils.fromFXImage(writableImage, null), format, saveFile);
-                currentFileFormat = format;
-            } catch (IOException e) {
-                e.printStackTrace();
-                System.out.println("Error saving the image.");
+            ImageExporter.Format format = ImageExporter.Format.fromFileName(saveFile.getName());
+            if (format == null) {
+                FileChooser.ExtensionFilter filter = fileChooser.getSelectedExtensionFilter();
+                String extension = filter != null ? filter.getExtensions().get(0).substring(2) : "png";
+                saveFile = new File(saveFile.getPath() + "." + extension);
+                format = ImageExporter.Format.fromFileName(saveFile.getName());
             }
+            if (!askExportOptions(format)) {
+                System.out.println("Image file save cancelled.");
+                return;
+            }
+            viewport.commit();
+            BufferedImage image = viewport.getDocument().toImage();
+            File file = saveFile;
+            ImageExporter.Format fileFormat = format;
+            jobExecutor.submit("Сохранение " + file.getName(), image.getHeight(), progress -> {
+                exporter.write(image, fileFormat, file, progress);
+                return file;
+            }, savedFile -> System.out.println("Image saved to " + savedFile));
         } else {
             System.out.println("Image file save cancelled.");
         }
     }
 
     /**
-     * Функция выхода из приложения
+     * Спрашивает параметры сжатия для форматов, у которых они есть, и запоминает выбор до следующего сохранения
+     * @param format Формат файла
+     * @return false, если пользователь отказался от сохранения
      */
-    public void ApplyExit() {
-        System.exit(0);
+    private boolean askExportOptions(ImageExporter.Format format) {
+        if (format == ImageExporter.Format.PNG) {
+            ChoiceDialog<Integer> dialog = new ChoiceDialog<>(exporter.getPngCompressionLevel(),
+                    0, 1, 2, 3, 4, 5, 6, 7, 8, 9);
+            dialog.setTitle("Сохранение PNG");
+            dialog.setHeaderText("Уровень сжатия: 0 - быстрее, 9 - меньше файл");
+            Optional<Integer> level = dialog.showAndWait();
+            level.ifPresent(exporter::setPngCompressionLevel);
+            return level.isPresent();
+        }
+        if (format == ImageExporter.Format.JPEG) {
+            ChoiceDialog<Integer> dialog = new ChoiceDialog<>(Math.round(exporter.getJpegQuality() * 100),
+                    50, 60, 70, 75, 80, 85, 90, 95, 100);
+            dialog.setTitle("Сохранение JPEG");
+            dialog.setHeaderText("Качество, %");
+            Optional<Integer> quality = dialog.showAndWait();
+            quality.ifPresent(value -> exporter.setJpegQuality(value / 100f));
+            return quality.isPresent();
+        }
+        if (format == ImageExporter.Format.TIFF) {
+            String none = "Без сжатия";
+            String current = exporter.getTiffCompression() != null ? exporter.getTiffCompression() : none;
+            ChoiceDialog<String> dialog = new ChoiceDialog<>(current, "LZW", "Deflate", "PackBits", none);
+            dialog.setTitle("Сохранение TIFF");
+            dialog.setHeaderText("Сжатие");
+            Optional<String> compression = dialog.showAndWait();
+            compression.ifPresent(value -> exporter.setTiffCompression(none.equals(value) ? null : value));
+            return compression.isPresent();
+        }
+        return true;
     }
 
     /**
-     * Функция, возвращающая расширение файла
-     * @param filename Параметр, хранящий в себе имя и расширение файла
-     * @return Расширение
+     * Функция, сохраняющая документ в файл проекта без потери разрешения. Плитки, залитые цветом фона,
+     * не записываются. Плитки читаются и пишутся в фоне; если во время записи документ правили, сохраняется
+     * смесь старых и новых плиток, и об этом выводится сообщение.
+     * @param canvas Сцена, на которой рисуются объекты
+     * @param viewport Окно просмотра документа
+     * @param jobExecutor Исполнитель фоновых операций
      */
-    private String getFileExtension(String filename) {
-        int lastDotIndex = filename.lastIndexOf(".");
-        if (lastDotIndex != -1) {
-            return filename.substring(lastDotIndex + 1).toLowerCase();
+    public void SaveProject(Canvas canvas, Viewport viewport, ImageJobExecutor jobExecutor) {
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle("Save Project");
+        fileChooser.getExtensionFilters().add(
+                new FileChooser.ExtensionFilter("Paint Projects", "*." + ProjectFile.EXTENSION));
+        File projectFile = fileChooser.showSaveDialog(canvas.getScene().getWindow());
+        if (projectFile != null) {
+            if (!projectFile.getName().endsWith("." + ProjectFile.EXTENSION)) {
+                projectFile = new File(projectFile.getPath() + "." + ProjectFile.EXTENSION);
+            }
+            viewport.commit();
+            TiledDocument document = viewport.getDocument();
+            int[] versions = tileVersions(document);
+            File file = projectFile;
+            jobExecutor.submit("Сохранение " + file.getName(), document.getTilesY(), progress -> {
+                ProjectFile.write(document, file.toPath(), progress);
+                return file;
+            }, savedFile -> {
+                if (!Arrays.equals(versions, tileVersions(document))) {
+                    jobExecutor.showMessage(savedFile.getName()
+                            + ": документ изменялся во время сохранения, сохраните проект еще раз");
+                }
+                System.out.println("Project saved to " + savedFile);
+            });
+        } else {
+            System.out.println("Project save cancelled.");
         }
-        return "png";
     }
 
     /**
-     * Функция, используюшая дополнительный холст для увеличения изображения на основном
+     * Функция, открывающая файл проекта. Пиксели читаются из файла только для тех плиток,
+     * которые попадают в окно просмотра.
+     * @param canvas Сцена, на которой рисуются объекты
+     * @param viewport Окно просмотра, которому передается открытый документ
+     */
+    public void OpenProject(Canvas canvas, Viewport viewport) {
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle("Open Project");
+        fileChooser.getExtensionFilters().add(
+                new FileChooser.ExtensionFilter("Paint Projects", "*." + ProjectFile.EXTENSION));
+        File projectFile = fileChooser.showOpenDialog(canvas.getScene().getWindow());
+        if (projectFile != null) {
+            try {
+                viewport.setDocument(ProjectFile.open(projectFile.toPath()));
+            } catch (IOException e) {
+                e.printStackTrace();
+                System.out.println("Error opening the project.");
+            }
+        } else {
+            System.out.println("Project file selection cancelled.");
+        }
+    }
+
+    /**
+     * Функция выхода из приложения
+     */
+    public void ApplyExit() {
+        Platform.exit();
+    }
+
+    /**
+     * Функция, используюшая дополнительный холст для увеличения изображения на основном.
+     * Изображение декодируется в фоновом потоке сразу в разрешении, не большем области вывода,
+     * и масштабируется точно до размера вставки. На потоке JavaFX оно накладывается с учетом прозрачности
+     * на пиксели документа через {@link PixelKernels#blendOver} и выводится на холст одним вызовом setPixels.
      * @param canvas Канвас, на котором происходят изменения
      * @param graphicsContext Обработчик событий канваса
+     * @param viewport Окно просмотра, в документ которого переносится результат
+     * @param jobExecutor Исполнитель фоновых операций
      */
-    public void InsertImageOnImage(Canvas canvas, GraphicsContext graphicsContext) {
+    public void InsertImageOnImage(Canvas canvas, GraphicsContext graphicsContext, Viewport viewport,
+                                   ImageJobExecutor jobExecutor) {
         FileChooser fileChooser = new FileChooser();
         fileChooser.setTitle("Select Image File");
         fileChooser.getExtensionFilters().addAll(
                 new FileChooser.ExtensionFilter("Image Files", "*.bmp", "*.png", "*.jpg", "*.gif"));
         File selectedFile = fileChooser.showOpenDialog(canvas.getScene().getWindow());
         if (selectedFile != null) {
-            try {
-                BufferedImage overlayImage = ImageIO.read(selectedFile);
-                double canvasWidth = canvas.getWidth();
-                double canvasHeight = canvas.getHeight();
-                double imageWidth = overlayImage.getWidth();
-                double imageHeight = overlayImage.getHeight();
-                double scaledWidth = Math.min(canvasWidth, imageWidth);
-                double scaledHeight = Math.min(canvasHeight, imageHeight);
-                double x = (canvasWidth - scaledWidth) / 2;
-                double y = (canvasHeight - scaledHeight) / 2;
-                Canvas transparentCanvas = new Canvas(canvasWidth, canvasHeight);
-                GraphicsContext transparentContext = transparentCanvas.getGraphicsContext2D();
-                transparentContext.drawImage(canvas.snapshot(null, null),
-                        0, 0, canvasWidth, canvasHeight);
-                transparentContext.drawImage(SwingFXUtils.toFXImage(overlayImage, null),
-                        x, y, scaledWidth, scaledHeight);
-                graphicsContext.drawImage(transparentCanvas.snapshot(null, null),
-                        0, 0, canvasWidth, canvasHeight);
-            } catch (IOException e) {
-                e.printStackTrace();
-                System.out.println("Error loading the image.");
-            }
+            double canvasWidth = canvas.getWidth();
+            double canvasHeight = canvas.getHeight();
+            int[] target = new int[4];
+            jobExecutor.submit("Вставка " + selectedFile.getName(), 100, progress -> {
+                Dimension size = ImageLoader.readSize(selectedFile);
+                double scaledWidth = Math.min(canvasWidth, size.width);
+                double scaledHeight = Math.min(canvasHeight, size.height);
+                target[2] = Math.max(1, (int) Math.round(scaledWidth));
+                target[3] = Math.max(1, (int) Math.round(scaledHeight));
+                target[0] = (int) ((canvasWidth - target[2]) / 2);
+                target[1] = (int) ((canvasHeight - target[3]) / 2);
+                BufferedImage overlayImage = ImageLoader.read(selectedFile, null,
+                        (int) Math.ceil(scaledWidth), (int) Math.ceil(scaledHeight), progress);
+                int width = overlayImage.getWidth();
+                int height = overlayImage.getHeight();
+                int[] pixels = overlayImage.getRGB(0, 0, width, height, null, 0, width);
+                if (width == target[2] && height == target[3]) {
+                    return pixels;
+                }
+                return new Resampler(Resampler.Kernel.BICUBIC, ForkJoinPool.commonPool())
+                        .resample(pixels, width, height, 0, 0, width, height, target[2], target[3]);
+            }, overlay -> {
+                if (viewport.getLevel() > 0) {
+                    jobExecutor.showMessage("Вставка работает только в масштабе 1:1");
+                    return;
+                }
+                viewport.commit();
+                TiledDocument document = viewport.getDocument();
+                int x = target[0];
+                int y = target[1];
+                int width = Math.min(target[2], document.getWidth() - viewport.getOriginX() - x);
+                int height = Math.min(target[3], document.getHeight() - viewport.getOriginY() - y);
+                if (width <= 0 || height <= 0) {
+                    return;
+                }
+                int[] background = new int[width * height];
+                document.readRegion(viewport.getOriginX() + x, viewport.getOriginY() + y, width, height,
+                        background, 0, width);
+                PixelKernels kernels = PixelKernels.get();
+                for (int row = 0; row < height; row++) {
+                    kernels.blendOver(overlay, row * target[2], background, row * width, width);
+                }
+                graphicsContext.getPixelWriter().setPixels(x, y, width, height, PixelFormat.getIntArgbInstance(),
+                        background, 0, width);
+                viewport.commit();
+            });
         } else {
             System.out.println("Image file selection cancelled.");
         }
     }
 
     /**
-     * Функция, отвечающая за выбор фотки, отправки на обработку и показ
+     * Функция, отвечающая за выбор фотки, отправки на обработку и показ.
+     * Диаметр окна выбирается в диалоге, большие окна фильтруются через билатеральную сетку.
+     * Декодирование и два прохода фильтра выполняются в фоновом потоке, ход работы
+     * показывается в строке состояния, операцию можно отменить. Результат становится новым документом
+     * в исходном разрешении, на холсте видна его часть, остальное доступно прокруткой.
      * @param canvas Канвас, на котором изменяется и показывается фото
-     * @throws IOException
+     * @param viewport Окно просмотра, которому передается результат
+     * @param jobExecutor Исполнитель фоновых операций
      */
-    public void BilateralFilter(Canvas canvas) throws IOException {
+    public void BilateralFilter(Canvas canvas, Viewport viewport, ImageJobExecutor jobExecutor) {
         FileChooser fileChooser = new FileChooser();
         fileChooser.setTitle("Select Image File");
         fileChooser.getExtensionFilters().addAll(
@@ -131,19 +274,209 @@ public class MenuController {
         );
         File selectedFile = fileChooser.showOpenDialog(canvas.getScene().getWindow());
         if (selectedFile != null) {
-            BufferedImage inputImage = ImageIO.read(selectedFile);
-            BilateralFilter filter = new BilateralFilter(inputImage);
-            BufferedImage filteredImage = filter.applyFilter();
-            filter = new BilateralFilter(filteredImage);
-            filteredImage = filter.applyFilter();
-            GraphicsContext graphicsContext = canvas.getGraphicsContext2D();
-            double canvasWidth = canvas.getWidth();
-            double canvasHeight = canvas.getHeight();
-            graphicsContext.clearRect(0, 0, canvasWidth, canvasHeight);
-            graphicsContext.drawImage(SwingFXUtils.toFXImage(filteredImage, null),
-                    0, 0, canvasWidth, canvasHeight);
+            ChoiceDialog<Integer> dialog = new ChoiceDialog<>(BilateralFilter.DEFAULT_DIAMETER, 7, 15, 31, 63);
+            dialog.setTitle("Билатеральный фильтр");
+            dialog.setHeaderText("Диаметр окна: чем больше, тем сильнее сглаживание");
+            Optional<Integer> diameter = dialog.showAndWait();
+            if (diameter.isEmpty()) {
+                return;
+            }
+            jobExecutor.submit("BilateralFilter " + selectedFile.getName(), 1000, progress -> {
+                BufferedImage inputImage = ImageLoader.read(selectedFile, progress);
+                long height = inputImage.getHeight();
+                JobProgress passProgress = new JobProgress() {
+                    private long rows;
+
+                    @Override
+                    public synchronized void worked(long units) {
+                        long before = rows * 450 / height;
+                        rows += units;
+                        progress.worked(rows * 450 / height - before);
+                    }
+
+                    @Override
+                    public boolean isCancelled() {
+                        return progress.isCancelled();
+                    }
+                };
+                BilateralFilter filter = new BilateralFilter(inputImage, diameter.get(),
+                        BilateralFilter.DEFAULT_SIGMA_COLOR, BilateralFilter.DEFAULT_SIGMA_SPACE);
+                BufferedImage filteredImage = filter.apply(ForkJoinPool.commonPool(), passProgress);
+                filter = new BilateralFilter(filteredImage, diameter.get(),
+                        BilateralFilter.DEFAULT_SIGMA_COLOR, BilateralFilter.DEFAULT_SIGMA_SPACE);
+                filteredImage = filter.apply(ForkJoinPool.commonPool(), passProgress);
+                return TiledDocument.fromImage(filteredImage);
+            }, viewport::setDocument);
         } else {
             System.out.println("Image file selection cancelled.");
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Функция, применяющая фильтр к текущему документу. Изменения холста сначала переносятся в документ,
+     * и запоминаются версии его плиток. Фильтр работает в фоне полосами высотой в плитку: каждая полоса
+     * читается из документа вместе с {@link ImageFilter#getHalo()} строками над и под ней, а готовая полоса
+     * сразу записывается в документ в потоке JavaFX. Следующая полоса фильтруется только после этого, так что
+     * и в куче, и в очереди JavaFX лежит не больше одной полосы, а шаг отмены получает изменения по мере работы.
+     * Все полосы составляют один шаг отмены, если пользователь не рисовал между ними. Плитки, которые
+     * пользователь успел изменить, пока работал фильтр (сами или в пределах запаса фильтра), не перезаписываются,
+     * чтобы нарисованное не потерялось. Если операцию отменить, уже записанные полосы остаются в документе
+     * и отменяются тем же шагом.
+     * @param viewport Окно просмотра, документ которого фильтруется
+     * @param jobExecutor Исполнитель фоновых операций
+     * @param filter Фильтр
+     */
+    public void ApplyFilter(Viewport viewport, ImageJobExecutor jobExecutor, ImageFilter filter) {
+        viewport.commit();
+        TiledDocument document = viewport.getDocument();
+        int[] versions = tileVersions(document);
+        int reach = (filter.getHalo() + TiledDocument.TILE_SIZE - 1) / TiledDocument.TILE_SIZE;
+        int[] kept = new int[1];
+        BandWriter writer = changes -> {
+            if (viewport.getDocument() != document) {
+                return false;
+            }
+            viewport.commit();
+            List<TileChange> unchanged = new ArrayList<>(changes.size());
+            for (TileChange change : changes) {
+                if (!editedNear(document, versions, change.getX() / TiledDocument.TILE_SIZE,
+                        change.getY() / TiledDocument.TILE_SIZE, reach)) {
+                    unchanged.add(change);
+                }
+            }
+            viewport.applyChanges(unchanged, filter);
+            kept[0] += changes.size() - unchanged.size();
+            return true;
+        };
+        jobExecutor.submit(filter.getName(), document.getHeight(),
+                progress -> filterBands(document, filter, progress, writer), written -> {
+                    if (!written) {
+                        jobExecutor.showMessage(filter.getName() + ": документ был заменен, остаток не записан");
+                    } else if (kept[0] > 0) {
+                        jobExecutor.showMessage(filter.getName() + ": " + kept[0]
+                                + " плиток изменено во время фильтрации и оставлено как есть");
+                    }
+                });
+    }
+
+    /**
+     * Получатель готовых полос фильтра. Вызывается в потоке JavaFX.
+     */
+    private interface BandWriter {
+        /**
+         * @param changes Изменения плиток полосы; до изменения - исходные пиксели
+         * @return Можно ли продолжать: false, если документ уже заменен
+         */
+        boolean write(List<TileChange> changes);
+    }
+
+    /**
+     * Фильтрует документ полосами высотой в плитку. Выполняется в фоновом потоке и читает плитки через
+     * {@link TiledDocument#readTile}, не загружая их в документ, как и {@link MipmapPyramid}. Если поток JavaFX
+     * в это время пишет в документ, прочитанные пиксели могут оказаться смесью старых и новых, но такие плитки
+     * потом отбрасываются по версиям. Каждая полоса передается в writer, и работа ждет, пока он ее запишет.
+     * Строки над полосой к этому времени уже отфильтрованы, поэтому они берутся не из документа, а из исходных
+     * пикселей предыдущей полосы.
+     * @return Записаны ли все полосы: false, если writer отказался от очередной полосы
+     */
+    private static boolean filterBands(TiledDocument document, ImageFilter filter, JobProgress progress,
+                                       BandWriter writer) throws InterruptedException, ExecutionException {
+        int tileSize = TiledDocument.TILE_SIZE;
+        int width = document.getWidth();
+        int height = document.getHeight();
+        int halo = filter.getHalo();
+        int[] tile = new int[tileSize * tileSize];
+        JobProgress bandProgress = new JobProgress() {
+            @Override
+            public void worked(long units) {
+            }
+
+            @Override
+            public boolean isCancelled() {
+                return progress.isCancelled();
+            }
+        };
+        int[] previous = null;
+        int previousTop = 0;
+        for (int ty = 0; ty < document.getTilesY(); ty++) {
+            int bandTop = ty * tileSize;
+            int bandRows = Math.min(tileSize, height - bandTop);
+            int top = Math.max(0, bandTop - halo);
+            int rows = Math.min(height, bandTop + bandRows + halo) - top;
+            int[] source = new int[width * rows];
+            if (bandTop > top) {
+                System.arraycopy(previous, (top - previousTop) * width, source, 0, (bandTop - top) * width);
+            }
+            for (int sy = ty; sy <= (top + rows - 1) / tileSize; sy++) {
+                int rowFrom = sy * tileSize;
+                int rowTo = Math.min(top + rows, (sy + 1) * tileSize);
+                for (int tx = 0; tx < document.getTilesX(); tx++) {
+                    document.readTile(tx, sy, IntBuffer.wrap(tile));
+                    int tileWidth = Math.min(tileSize, width - tx * tileSize);
+                    for (int row = rowFrom; row < rowTo; row++) {
+                        System.arraycopy(tile, (row - sy * tileSize) * tileSize, source,
+                                (row - top) * width + tx * tileSize, tileWidth);
+                    }
+                }
+            }
+            int[] target = new int[source.length];
+            filter.apply(source, target, width, rows, ForkJoinPool.commonPool(), bandProgress);
+            List<TileChange> changes = new ArrayList<>();
+            for (int tx = 0; tx < document.getTilesX(); tx++) {
+                int x = tx * tileSize;
+                int tileWidth = Math.min(tileSize, width - x);
+                int[] before = new int[tileWidth * bandRows];
+                int[] after = new int[tileWidth * bandRows];
+                for (int row = 0; row < bandRows; row++) {
+                    int offset = (bandTop - top + row) * width + x;
+                    System.arraycopy(source, offset, before, row * tileWidth, tileWidth);
+                    System.arraycopy(target, offset, after, row * tileWidth, tileWidth);
+                }
+                if (!Arrays.equals(before, after)) {
+                    changes.add(new TileChange(x, bandTop, tileWidth, bandRows, before, after));
+                }
+            }
+            if (progress.isCancelled()) {
+                throw new CancellationException();
+            }
+            if (!changes.isEmpty()) {
+                FutureTask<Boolean> write = new FutureTask<>(() -> writer.write(changes));
+                Platform.runLater(write);
+                if (!write.get()) {
+                    return false;
+                }
+            }
+            previous = source;
+            previousTop = top;
+            progress.worked(bandRows);
+        }
+        return true;
+    }
+
+    /**
+     * @return Версии всех плиток документа построчно, чтобы потом узнать, какие из них правили
+     */
+    private static int[] tileVersions(TiledDocument document) {
+        int[] versions = new int[document.getTilesX() * document.getTilesY()];
+        for (int ty = 0; ty < document.getTilesY(); ty++) {
+            for (int tx = 0; tx < document.getTilesX(); tx++) {
+                versions[ty * document.getTilesX() + tx] = document.getTileVersion(tx, ty);
+            }
+        }
+        return versions;
+    }
+
+    /**
+     * Изменилась ли с момента снятия версий плитка или одна из ее соседей на расстоянии reach плиток
+     */
+    private static boolean editedNear(TiledDocument document, int[] versions, int tileX, int tileY, int reach) {
+        for (int ty = Math.max(0, tileY - reach); ty <= Math.min(document.getTilesY() - 1, tileY + reach); ty++) {
+            for (int tx = Math.max(0, tileX - reach); tx <= Math.min(document.getTilesX() - 1, tileX + reach); tx++) {
+                if (document.getTileVersion(tx, ty) != versions[ty * document.getTilesX() + tx]) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,368 @@
+package com.example.paint;
+
+import java.io.Closeable;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.function.IntBinaryOperator;
+
+/**
+ * Пирамида уменьшенных копий (mipmap) документа. Уровень 0 - сам документ, каждый следующий уровень вдвое меньше
+ * предыдущего по обеим сторонам. Уровни нарезаны на плитки того же размера, что и в документе, и строятся лениво:
+ * плитка уровня L получается усреднением четырех плиток уровня L - 1 (в предумноженной альфе). Построение идет
+ * в фоновом потоке, готовые плитки хранятся в LRU-кэше с ограничением по памяти.
+ * <p>
+ * Каждая плитка кэша помнит сумму версий плиток документа, которые она покрывает. Версии только растут,
+ * поэтому плитка устарела ровно тогда, когда сумма изменилась, и правка документа перестраивает только
+ * плитки над измененным местом. Версии снимаются в потоке JavaFX до того, как фоновый поток начнет читать
+ * пиксели, поэтому правка во время построения лишь приведет к еще одному перестроению.
+ */
+public class MipmapPyramid implements Closeable {
+    /**
+     * Ограничение памяти кэша по умолчанию
+     */
+    public static final long DEFAULT_MEMORY_BUDGET = 256L * 1024 * 1024;
+
+    private static final int TILE_SIZE = TiledDocument.TILE_SIZE;
+    private static final int TILE_PIXELS = TILE_SIZE * TILE_SIZE;
+    private static final long TILE_BYTES = (long) TILE_PIXELS * Integer.BYTES;
+
+    private final TiledDocument document;
+    private final long memoryBudget;
+    private final Executor builder;
+    private final Runnable tileReady;
+    private final int levelCount;
+    private final LinkedHashMap<Long, CachedTile> cache = new LinkedHashMap<>(64, 0.75f, true);
+    private final Set<Long> pending = new HashSet<>();
+    private long usedBytes;
+    private volatile boolean closed;
+
+    /**
+     * Конструктор с параметрами
+     * @param document Документ
+     * @param memoryBudget Сколько байт могут занимать плитки в кэше
+     * @param builder Исполнитель, в котором строятся плитки
+     * @param tileReady Вызывается в потоке построения, когда готова очередная плитка
+     */
+    public MipmapPyramid(TiledDocument document, long memoryBudget, Executor builder, Runnable tileReady) {
+        this.document = document;
+        this.memoryBudget = memoryBudget;
+        this.builder = builder;
+        this.tileReady = tileReady;
+        int level = 0;
+        while (levelSize(document.getWidth(), level) > TILE_SIZE
+                || levelSize(document.getHeight(), level) > TILE_SIZE) {
+            level++;
+        }
+        this.levelCount = level + 1;
+    }
+
+    /**
+     * @return Количество уровней вместе с уровнем 0; на последнем весь документ помещается в одну плитку
+     */
+    public int getLevelCount() {
+        return levelCount;
+    }
+
+    public int getLevelWidth(int level) {
+        return levelSize(document.getWidth(), level);
+    }
+
+    public int getLevelHeight(int level) {
+        return levelSize(document.getHeight(), level);
+    }
+
+    /**
+     * @return Сторона уровня level для стороны документа size, с округлением вверх
+     */
+    private static int levelSize(int size, int level) {
+        return (int) (((long) size + (1L << level) - 1) >> level);
+    }
+
+    /**
+     * @return Сколько байт сейчас занимают плитки в кэше
+     */
+    public long getUsedBytes() {
+        synchronized (cache) {
+            return usedBytes;
+        }
+    }
+
+    /**
+     * Копирует прямоугольник уровня в массив, не дожидаясь построения. Вместо еще не построенных плиток
+     * берутся их устаревшие копии или фон документа, а сами плитки ставятся в очередь на построение.
+     * Вызывается в потоке JavaFX.
+     * @param level Уровень
+     * @param x Левая граница прямоугольника в пикселях уровня
+     * @param y Верхняя граница прямоугольника
+     * @param w Ширина прямоугольника
+     * @param h Высота прямоугольника
+     * @param dst Массив назначения
+     * @param offset Индекс в dst, куда попадает левый верхний пиксель
+     * @param stride Длина строки в dst
+     * @return true, если все плитки прямоугольника были готовы
+     */
+    public boolean readRegion(int level, int x, int y, int w, int h, int[] dst, int offset, int stride) {
+        return readRegion(level, x, y, w, h, dst, offset, stride, false);
+    }
+
+    /**
+     * Копирует прямоугольник уровня в массив, достраивая недостающие плитки в текущем потоке.
+     * Вызывается в потоке JavaFX.
+     * @param level Уровень
+     * @param x Левая граница прямоугольника в пикселях уровня
+     * @param y Верхняя граница прямоугольника
+     * @param w Ширина прямоугольника
+     * @param h Высота прямоугольника
+     * @param dst Массив назначения
+     * @param offset Индекс в dst, куда попадает левый верхний пиксель
+     * @param stride Длина строки в dst
+     */
+    public void readRegionAndWait(int level, int x, int y, int w, int h, int[] dst, int offset, int stride) {
+        readRegion(level, x, y, w, h, dst, offset, stride, true);
+    }
+
+    /**
+     * Очищает кэш и прекращает построение. Плитки, которые уже строятся, будут выброшены.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        synchronized (cache) {
+            cache.clear();
+            usedBytes = 0;
+        }
+    }
+
+    private boolean readRegion(int level, int x, int y, int w, int h, int[] dst, int offset, int stride,
+                               boolean wait) {
+        if (level == 0) {
+            document.readRegion(x, y, w, h, dst, offset, stride);
+            return true;
+        }
+        if (level < 0 || level >= levelCount || x < 0 || y < 0 || w < 0 || h < 0
+                || x + w > getLevelWidth(level) || y + h > getLevelHeight(level)) {
+            throw new IndexOutOfBoundsException("Region " + x + "," + y + " " + w + "x" + h
+                    + " is outside mipmap level " + level);
+        }
+        if (w == 0 || h == 0) {
+            return true;
+        }
+        boolean complete = true;
+        for (int ty = y / TILE_SIZE; ty <= (y + h - 1) / TILE_SIZE; ty++) {
+            int rowFrom = Math.max(y, ty * TILE_SIZE);
+            int rowTo = Math.min(y + h, (ty + 1) * TILE_SIZE);
+            for (int tx = x / TILE_SIZE; tx <= (x + w - 1) / TILE_SIZE; tx++) {
+                int colFrom = Math.max(x, tx * TILE_SIZE);
+                int colTo = Math.min(x + w, (tx + 1) * TILE_SIZE);
+                long stamp = stamp(document::getTileVersion, level, tx, ty);
+                CachedTile tile = tile(level, tx, ty, stamp, wait);
+                if (tile == null || tile.stamp != stamp) {
+                    complete = false;
+                }
+                int[] pixels = tile != null ? tile.pixels : null;
+                for (int row = rowFrom; row < rowTo; row++) {
+                    int dstIndex = offset + (row - y) * stride + colFrom - x;
+                    if (pixels == null) {
+                        Arrays.fill(dst, dstIndex, dstIndex + colTo - colFrom, document.getBackground());
+                    } else {
+                        System.arraycopy(pixels, (row - ty * TILE_SIZE) * TILE_SIZE + colFrom - tx * TILE_SIZE,
+                                dst, dstIndex, colTo - colFrom);
+                    }
+                }
+            }
+        }
+        return complete;
+    }
+
+    /**
+     * Возвращает плитку уровня. Устаревшая или отсутствующая плитка либо строится сразу,
+     * либо ставится в очередь, и тогда возвращается ее устаревшая копия или null.
+     */
+    private CachedTile tile(int level, int tileX, int tileY, long stamp, boolean wait) {
+        CachedTile cached = cached(key(level, tileX, tileY));
+        if (cached != null && cached.stamp == stamp) {
+            return cached;
+        }
+        IntBinaryOperator versions = snapshotVersions(level, tileX, tileY);
+        if (wait) {
+            return new CachedTile(stamp, build(level, tileX, tileY, versions));
+        }
+        schedule(level, tileX, tileY, versions);
+        return cached;
+    }
+
+    private void schedule(int level, int tileX, int tileY, IntBinaryOperator versions) {
+        long key = key(level, tileX, tileY);
+        synchronized (pending) {
+            if (!pending.add(key)) {
+                return;
+            }
+        }
+        builder.execute(() -> {
+            try {
+                if (!closed) {
+                    build(level, tileX, tileY, versions);
+                }
+            } catch (RuntimeException e) {
+                // после закрытия документа его источник плиток уже недоступен
+                if (!closed) {
+                    e.printStackTrace();
+                }
+            } finally {
+                synchronized (pending) {
+                    pending.remove(key);
+                }
+            }
+            if (!closed) {
+                tileReady.run();
+            }
+        });
+    }
+
+    /**
+     * Строит плитку уровня из четырех плиток предыдущего уровня, строя при необходимости и их
+     */
+    private int[] build(int level, int tileX, int tileY, IntBinaryOperator versions) {
+        long stamp = stamp(versions, level, tileX, tileY);
+        long key = key(level, tileX, tileY);
+        CachedTile cached = cached(key);
+        if (cached != null && cached.stamp == stamp) {
+            return cached.pixels;
+        }
+        int[] pixels = new int[TILE_PIXELS];
+        int childWidth = getLevelWidth(level - 1);
+        int childHeight = getLevelHeight(level - 1);
+        for (int quarterY = 0; quarterY < 2; quarterY++) {
+            for (int quarterX = 0; quarterX < 2; quarterX++) {
+                int childX = tileX * 2 + quarterX;
+                int childY = tileY * 2 + quarterY;
+                if (childX * TILE_SIZE >= childWidth || childY * TILE_SIZE >= childHeight) {
+                    continue;
+                }
+                int[] child;
+                if (level == 1) {
+                    child = new int[TILE_PIXELS];
+                    document.readTile(childX, childY, IntBuffer.wrap(child));
+                } else {
+                    child = build(level - 1, childX, childY, versions);
+                }
+                downsample(child, Math.min(TILE_SIZE, childWidth - childX * TILE_SIZE),
+                        Math.min(TILE_SIZE, childHeight - childY * TILE_SIZE), pixels,
+                        quarterY * TILE_SIZE / 2 * TILE_SIZE + quarterX * TILE_SIZE / 2);
+            }
+        }
+        if (!closed) {
+            put(key, new CachedTile(stamp, pixels));
+        }
+        return pixels;
+    }
+
+    /**
+     * Уменьшает плитку вдвое, усредняя блоки 2x2 с учетом альфы; пиксели за границей уровня не учитываются
+     */
+    private static void downsample(int[] child, int validWidth, int validHeight, int[] dst, int offset) {
+        for (int y = 0; y < (validHeight + 1) / 2; y++) {
+            for (int x = 0; x < (validWidth + 1) / 2; x++) {
+                int alpha = 0;
+                int red = 0;
+                int green = 0;
+                int blue = 0;
+                int count = 0;
+                for (int row = y * 2; row < Math.min(y * 2 + 2, validHeight); row++) {
+                    for (int col = x * 2; col < Math.min(x * 2 + 2, validWidth); col++) {
+                        int argb = child[row * TILE_SIZE + col];
+                        int a = argb >>> 24;
+                        alpha += a;
+                        red += ((argb >> 16) & 0xFF) * a;
+                        green += ((argb >> 8) & 0xFF) * a;
+                        blue += (argb & 0xFF) * a;
+                        count++;
+                    }
+                }
+                int index = offset + y * TILE_SIZE + x;
+                if (alpha == 0) {
+                    dst[index] = 0;
+                } else {
+                    int half = alpha / 2;
+                    dst[index] = ((alpha + count / 2) / count) << 24 | ((red + half) / alpha) << 16
+                            | ((green + half) / alpha) << 8 | (blue + half) / alpha;
+                }
+            }
+        }
+    }
+
+    /**
+     * Сумма версий плиток документа под плиткой уровня
+     */
+    private long stamp(IntBinaryOperator versions, int level, int tileX, int tileY) {
+        int span = 1 << level;
+        long stamp = 0;
+        for (int ty = tileY * span; ty < Math.min(document.getTilesY(), (tileY + 1) * span); ty++) {
+            for (int tx = tileX * span; tx < Math.min(document.getTilesX(), (tileX + 1) * span); tx++) {
+                stamp += versions.applyAsInt(tx, ty);
+            }
+        }
+        return stamp;
+    }
+
+    /**
+     * Копирует версии плиток документа под плиткой уровня, чтобы фоновый поток не читал их во время записи
+     */
+    private IntBinaryOperator snapshotVersions(int level, int tileX, int tileY) {
+        int span = 1 << level;
+        int left = tileX * span;
+        int top = tileY * span;
+        int width = Math.min(document.getTilesX(), left + span) - left;
+        int height = Math.min(document.getTilesY(), top + span) - top;
+        int[] versions = new int[width * height];
+        for (int ty = 0; ty < height; ty++) {
+            for (int tx = 0; tx < width; tx++) {
+                versions[ty * width + tx] = document.getTileVersion(left + tx, top + ty);
+            }
+        }
+        return (tx, ty) -> versions[(ty - top) * width + tx - left];
+    }
+
+    private CachedTile cached(long key) {
+        synchronized (cache) {
+            return cache.get(key);
+        }
+    }
+
+    private void put(long key, CachedTile tile) {
+        synchronized (cache) {
+            if (cache.put(key, tile) == null) {
+                usedBytes += TILE_BYTES;
+            }
+            Iterator<Map.Entry<Long, CachedTile>> eldest = cache.entrySet().iterator();
+            while (usedBytes > memoryBudget && cache.size() > 1) {
+                eldest.next();
+                eldest.remove();
+                usedBytes -= TILE_BYTES;
+            }
+        }
+    }
+
+    private static long key(int level, int tileX, int tileY) {
+        return ((long) level << 56) | ((long) tileY << 28) | tileX;
+    }
+
+    /**
+     * Плитка уровня и сумма версий плиток документа, из которых она построена
+     */
+    private static final class CachedTile {
+        private final long stamp;
+        private final int[] pixels;
+
+        CachedTile(long stamp, int[] pixels) {
+            this.stamp = stamp;
+            this.pixels = pixels;
+        }
+    }
+}
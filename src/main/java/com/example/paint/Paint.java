@@ -9,6 +9,8 @@ import java.io.IOException;
 import java.util.Objects;
 
 public class Paint extends Application {
+    private Controller controller;
+
     /**
      * Метод, обрабатывающий логику создания сцены
      *
@@ -17,14 +19,26 @@ public class Paint extends Application {
      */
     @Override
     public void start(Stage stage) throws IOException {
-        Parent root = FXMLLoader.load(Objects.requireNonNull(getClass().getResource("paint.fxml")));
+        FXMLLoader loader = new FXMLLoader(Objects.requireNonNull(getClass().getResource("paint.fxml")));
+        Parent root = loader.load();
+        controller = loader.getController();
         Scene scene = new Scene(root);
         stage.setTitle("Paint");
         stage.setScene(scene);
-        stage.setResizable(false);
+        stage.setResizable(true);
         stage.show();
     }
 
+    /**
+     * Метод, вызываемый при штатном завершении программы
+     */
+    @Override
+    public void stop() {
+        if (controller != null) {
+            controller.shutdown();
+        }
+    }
+
     /**
      * Метод, запускающий всю программу
      */
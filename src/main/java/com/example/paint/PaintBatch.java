@@ -0,0 +1,200 @@
+package com.example.paint;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Точка входа для пакетной обработки без интерфейса. Не загружает JavaFX, поэтому работает на сервере
+ * без дисплея; фильтры и запись выполняет {@link BatchProcessor}. Пример запуска:
+ * <pre>
+ * java -cp ... com.example.paint.PaintBatch -f bilateral:7,bilateral:7 -t png -o out "scans/**.jpg"
+ * </pre>
+ */
+public class PaintBatch {
+    private static final String USAGE = String.join(System.lineSeparator(),
+            "Usage: PaintBatch [options] <glob>...",
+            "  -f, --filter <chain>   comma-separated filters applied in order:",
+            "                         bilateral:<diameter>, gaussian:<sigma>, box:<radius>, median:<radius>",
+            "  -t, --format <format>  png, jpeg, bmp, gif or tiff (default: format of the input file)",
+            "  -o, --output <dir>     output directory (default: batch-output)",
+            "  -w, --workers <n>      CPU threads for decode, filters and encode (default: number of CPUs)",
+            "  -i, --io <n>           files read or written at the same time (default: "
+                    + BatchProcessor.DEFAULT_IO_CONCURRENCY + "; more for SSD/NVMe, fewer for a single HDD)",
+            "  -q, --quality <0..1>   JPEG quality (default: " + ImageExporter.DEFAULT_JPEG_QUALITY + ")",
+            "Globs use java.nio syntax: * and ? within a directory, ** across directories.");
+
+    private PaintBatch() {
+    }
+
+    /**
+     * Метод, запускающий пакетную обработку
+     * @param args Параметры командной строки, см. USAGE
+     */
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        List<ImageFilter> filters = new ArrayList<>();
+        ImageExporter exporter = new ImageExporter();
+        ImageExporter.Format format = null;
+        Path outputDirectory = Paths.get("batch-output");
+        int workers = Runtime.getRuntime().availableProcessors();
+        int ioConcurrency = BatchProcessor.DEFAULT_IO_CONCURRENCY;
+        List<String> globs = new ArrayList<>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                switch (arg) {
+                    case "-f", "--filter" -> filters.addAll(parseFilters(value(args, ++i, arg)));
+                    case "-t", "--format" -> {
+                        String name = value(args, ++i, arg);
+                        format = ImageExporter.Format.fromFileName("." + name);
+                        if (format == null) {
+                            throw new IllegalArgumentException("Unknown format: " + name);
+                        }
+                    }
+                    case "-o", "--output" -> outputDirectory = Paths.get(value(args, ++i, arg));
+                    case "-w", "--workers" -> workers = Integer.parseInt(value(args, ++i, arg));
+                    case "-i", "--io" -> ioConcurrency = Integer.parseInt(value(args, ++i, arg));
+                    case "-q", "--quality" -> exporter.setJpegQuality(Float.parseFloat(value(args, ++i, arg)));
+                    case "-h", "--help" -> {
+                        System.out.println(USAGE);
+                        return;
+                    }
+                    default -> {
+                        if (arg.startsWith("-")) {
+                            throw new IllegalArgumentException("Unknown option: " + arg);
+                        }
+                        globs.add(arg);
+                    }
+                }
+            }
+            if (globs.isEmpty()) {
+                throw new IllegalArgumentException("No input files given");
+            }
+            if (workers < 1 || ioConcurrency < 1) {
+                throw new IllegalArgumentException("Thread counts must be positive");
+            }
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            System.out.println(USAGE);
+            System.exit(2);
+            return;
+        }
+
+        try {
+            List<Path> inputs = expandGlobs(globs);
+            if (inputs.isEmpty()) {
+                System.out.println("No files match " + globs);
+                System.exit(1);
+                return;
+            }
+            System.out.println("Processing " + inputs.size() + " files with " + workers + " CPU threads, "
+                    + ioConcurrency + " I/O slots, filters "
+                    + filters.stream().map(ImageFilter::getName).toList() + ", pixel kernels "
+                    + PixelKernels.get().getName());
+            BatchProcessor.Result result = new BatchProcessor(filters, exporter, format, outputDirectory, workers,
+                    ioConcurrency).process(inputs);
+            System.out.printf(Locale.ROOT, "Processed %d images in %.1f s: %.2f images/s, %d failed%n",
+                    result.getProcessed(), result.getSeconds(), result.getImagesPerSecond(), result.getFailed());
+            System.exit(result.getFailed() == 0 ? 0 : 1);
+        } catch (IOException | InterruptedException e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    private static String value(String[] args, int index, String option) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + option);
+        }
+        return args[index];
+    }
+
+    /**
+     * Разбирает цепочку фильтров вида "bilateral:7,gaussian:2"
+     * @param chain Фильтры через запятую, параметр фильтра после двоеточия
+     * @return Фильтры в порядке применения
+     */
+    static List<ImageFilter> parseFilters(String chain) {
+        List<ImageFilter> filters = new ArrayList<>();
+        for (String item : chain.split(",")) {
+            String[] parts = item.trim().split(":", 2);
+            String name = parts[0].toLowerCase(Locale.ROOT);
+            if (parts.length < 2) {
+                throw new IllegalArgumentException("Filter " + name + " needs a parameter, e.g. " + name + ":3");
+            }
+            try {
+                filters.add(switch (name) {
+                    case "bilateral" -> new BilateralImageFilter(Integer.parseInt(parts[1]),
+                            BilateralFilter.DEFAULT_SIGMA_COLOR, BilateralFilter.DEFAULT_SIGMA_SPACE);
+                    case "gaussian" -> new GaussianFilter(Double.parseDouble(parts[1]));
+                    case "box" -> new BoxBlurFilter(Integer.parseInt(parts[1]));
+                    case "median" -> new MedianFilter(Integer.parseInt(parts[1]));
+                    default -> throw new IllegalArgumentException("Unknown filter: " + name);
+                });
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Bad parameter for " + name + ": " + parts[1]);
+            }
+        }
+        return filters;
+    }
+
+    /**
+     * Находит файлы по шаблонам. Обход начинается с самого длинного начала шаблона без символов шаблона,
+     * поэтому "scans/2024/*.png" не просматривает ничего, кроме каталога scans/2024.
+     * @param globs Шаблоны путей или просто пути к файлам
+     * @return Найденные файлы без повторов, в порядке шаблонов и в алфавитном порядке внутри шаблона
+     * @throws IOException Если каталог не читается
+     */
+    static List<Path> expandGlobs(List<String> globs) throws IOException {
+        Set<Path> files = new LinkedHashSet<>();
+        for (String glob : globs) {
+            Path base = Paths.get("");
+            Path pattern = Paths.get(glob);
+            int wildcard = 0;
+            while (wildcard < pattern.getNameCount() && !isWildcard(pattern.getName(wildcard).toString())) {
+                wildcard++;
+            }
+            if (wildcard == pattern.getNameCount()) {
+                if (Files.isRegularFile(pattern)) {
+                    files.add(pattern);
+                }
+                continue;
+            }
+            if (wildcard > 0) {
+                base = pattern.subpath(0, wildcard);
+            }
+            if (pattern.getRoot() != null) {
+                base = pattern.getRoot().resolve(base);
+            }
+            int depth = glob.contains("**") ? Integer.MAX_VALUE : pattern.getNameCount() - wildcard;
+            PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+            boolean currentDirectory = base.toString().isEmpty();
+            Path start = currentDirectory ? Paths.get(".") : base;
+            if (!Files.isDirectory(start)) {
+                continue;
+            }
+            try (Stream<Path> walk = Files.walk(start, depth)) {
+                walk.filter(Files::isRegularFile)
+                        .filter(path -> matcher.matches(currentDirectory ? start.relativize(path) : path))
+                        .sorted()
+                        .forEach(files::add);
+            }
+        }
+        return new ArrayList<>(files);
+    }
+
+    private static boolean isWildcard(String name) {
+        return name.indexOf('*') >= 0 || name.indexOf('?') >= 0 || name.indexOf('[') >= 0
+                || name.indexOf('{') >= 0;
+    }
+}
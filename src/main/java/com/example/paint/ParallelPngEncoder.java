@@ -0,0 +1,378 @@
+package com.example.paint;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Кодировщик PNG, сжимающий изображение параллельно. Строки делятся на полосы, каждая полоса фильтруется
+ * и сжимается Deflate в своем потоке независимо от остальных, а затем полосы склеиваются в один поток zlib:
+ * все полосы, кроме последней, завершаются SYNC_FLUSH и поэтому заканчиваются на границе байта, словарем
+ * полосы служат последние 32 КБ предыдущей, а контрольные суммы Adler-32 полос объединяются арифметически.
+ * Результат - обычный PNG, который читает любой декодер.
+ */
+public class ParallelPngEncoder {
+    /**
+     * Сколько строк изображения сжимается одной задачей
+     */
+    private static final int ROWS_PER_CHUNK = 128;
+
+    /**
+     * Размер окна Deflate, столько байт предыдущей полосы передается следующей как словарь
+     */
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+
+    private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    private static final int ADLER_BASE = 65521;
+
+    private final int compressionLevel;
+    private final ForkJoinPool pool;
+
+    /**
+     * Конструктор с параметрами
+     * @param compressionLevel Уровень сжатия Deflate от 0 до 9
+     * @param pool Пул потоков, в котором сжимаются полосы
+     */
+    public ParallelPngEncoder(int compressionLevel, ForkJoinPool pool) {
+        if (compressionLevel < Deflater.NO_COMPRESSION || compressionLevel > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("PNG compression level must be within 0..9: " + compressionLevel);
+        }
+        this.compressionLevel = compressionLevel;
+        this.pool = pool;
+    }
+
+    /**
+     * Записывает изображение в файл PNG. Непрозрачные изображения записываются как RGB, остальные как RGBA.
+     * @param image Изображение
+     * @param file Файл
+     * @param progress Получатель хода работы в строках изображения
+     * @throws IOException Если файл не удалось записать
+     */
+    public void write(BufferedImage image, File file, JobProgress progress) throws IOException {
+        try (OutputStream output = new BufferedOutputStream(new FileOutputStream(file), 1 << 16)) {
+            write(image, output, progress);
+        }
+    }
+
+    /**
+     * Записывает изображение в поток в формате PNG
+     * @param image Изображение
+     * @param output Поток
+     * @param progress Получатель хода работы в строках изображения
+     * @throws IOException Если поток не удалось записать
+     */
+    public void write(BufferedImage image, OutputStream output, JobProgress progress) throws IOException {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        PixelRows rows = new PixelRows(image);
+        boolean opaque = rows.isOpaque();
+        int bytesPerPixel = opaque ? 3 : 4;
+
+        DataOutputStream data = new DataOutputStream(output);
+        data.write(SIGNATURE);
+        byte[] header = new byte[13];
+        writeInt(header, 0, width);
+        writeInt(header, 4, height);
+        header[8] = 8;
+        header[9] = (byte) (opaque ? 2 : 6);
+        writeChunk(data, "IHDR", header, header.length);
+
+        List<ForkJoinTask<Chunk>> tasks = new ArrayList<>();
+        for (int fromY = 0; fromY < height; fromY += ROWS_PER_CHUNK) {
+            int toY = Math.min(height, fromY + ROWS_PER_CHUNK);
+            boolean last = toY == height;
+            int chunkFromY = fromY;
+            tasks.add(pool.submit(() -> compressChunk(rows, bytesPerPixel, chunkFromY, toY, last, progress)));
+        }
+
+        byte[] zlibHeader = {0x78, (byte) 0x9C};
+        writeChunk(data, "IDAT", zlibHeader, zlibHeader.length);
+        long adler = 1;
+        try {
+            for (ForkJoinTask<Chunk> task : tasks) {
+                Chunk chunk = task.join();
+                writeChunk(data, "IDAT", chunk.compressed, chunk.compressedLength);
+                adler = combineAdler(adler, chunk.adler, chunk.rawLength);
+            }
+        } catch (CancellationException e) {
+            for (ForkJoinTask<Chunk> task : tasks) {
+                task.cancel(false);
+            }
+            throw e;
+        }
+        byte[] trailer = new byte[4];
+        writeInt(trailer, 0, (int) adler);
+        writeChunk(data, "IDAT", trailer, trailer.length);
+        writeChunk(data, "IEND", new byte[0], 0);
+        data.flush();
+    }
+
+    /**
+     * Фильтрует и сжимает строки [fromY, toY)
+     */
+    private Chunk compressChunk(PixelRows rows, int bytesPerPixel, int fromY, int toY, boolean last,
+                                JobProgress progress) {
+        if (progress.isCancelled()) {
+            throw new CancellationException();
+        }
+        int rowBytes = rows.width * bytesPerPixel;
+        byte[] previous = new byte[rowBytes];
+        byte[] current = new byte[rowBytes];
+        if (fromY > 0) {
+            rows.read(fromY - 1, previous, bytesPerPixel);
+        }
+        byte[] raw = new byte[(toY - fromY) * (rowBytes + 1)];
+        byte[] candidate = new byte[rowBytes];
+        for (int y = fromY; y < toY; y++) {
+            rows.read(y, current, bytesPerPixel);
+            int offset = (y - fromY) * (rowBytes + 1);
+            raw[offset] = (byte) chooseFilter(current, previous, bytesPerPixel, raw, offset + 1, candidate);
+            byte[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+
+        Deflater deflater = new Deflater(compressionLevel, true);
+        if (fromY > 0) {
+            byte[] dictionary = dictionaryBefore(rows, bytesPerPixel, fromY);
+            deflater.setDictionary(dictionary);
+        }
+        deflater.setInput(raw);
+        if (last) {
+            deflater.finish();
+        }
+        byte[] buffer = new byte[Math.max(1024, raw.length / 2)];
+        int length = 0;
+        while (true) {
+            if (length == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            int written = deflater.deflate(buffer, length, buffer.length - length,
+                    last ? Deflater.NO_FLUSH : Deflater.SYNC_FLUSH);
+            length += written;
+            if (last ? deflater.finished() : length < buffer.length && deflater.needsInput()) {
+                break;
+            }
+        }
+        deflater.end();
+
+        Adler32 adler = new Adler32();
+        adler.update(raw);
+        progress.worked(toY - fromY);
+        return new Chunk(buffer, length, adler.getValue(), raw.length);
+    }
+
+    /**
+     * Последние байты отфильтрованного потока перед строкой fromY. Полоса перед fromY фильтруется заново,
+     * чтобы полосы оставались независимыми задачами.
+     */
+    private static byte[] dictionaryBefore(PixelRows rows, int bytesPerPixel, int fromY) {
+        int rowBytes = rows.width * bytesPerPixel;
+        int rowCount = Math.min(fromY, DICTIONARY_SIZE / (rowBytes + 1) + 1);
+        int firstRow = fromY - rowCount;
+        byte[] previous = new byte[rowBytes];
+        byte[] current = new byte[rowBytes];
+        byte[] candidate = new byte[rowBytes];
+        if (firstRow > 0) {
+            rows.read(firstRow - 1, previous, bytesPerPixel);
+        }
+        byte[] raw = new byte[rowCount * (rowBytes + 1)];
+        for (int y = firstRow; y < fromY; y++) {
+            rows.read(y, current, bytesPerPixel);
+            int offset = (y - firstRow) * (rowBytes + 1);
+            raw[offset] = (byte) chooseFilter(current, previous, bytesPerPixel, raw, offset + 1, candidate);
+            byte[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        int size = Math.min(DICTIONARY_SIZE, raw.length);
+        return Arrays.copyOfRange(raw, raw.length - size, raw.length);
+    }
+
+    /**
+     * Выбирает фильтр строки по эвристике наименьшей суммы модулей и записывает отфильтрованную строку в out
+     * @return Номер фильтра PNG
+     */
+    private static int chooseFilter(byte[] row, byte[] previous, int bpp, byte[] out, int offset,
+                                    byte[] candidate) {
+        int bestFilter = 0;
+        long bestSum = Long.MAX_VALUE;
+        for (int filter = 0; filter <= 4; filter++) {
+            long sum = 0;
+            for (int i = 0; i < row.length; i++) {
+                int a = i >= bpp ? row[i - bpp] & 0xFF : 0;
+                int b = previous[i] & 0xFF;
+                int c = i >= bpp ? previous[i - bpp] & 0xFF : 0;
+                int x = row[i] & 0xFF;
+                int predicted = switch (filter) {
+                    case 1 -> a;
+                    case 2 -> b;
+                    case 3 -> (a + b) >> 1;
+                    case 4 -> paeth(a, b, c);
+                    default -> 0;
+                };
+                byte value = (byte) (x - predicted);
+                candidate[i] = value;
+                sum += Math.abs(value);
+                if (sum >= bestSum) {
+                    break;
+                }
+            }
+            if (sum < bestSum) {
+                bestSum = sum;
+                bestFilter = filter;
+                System.arraycopy(candidate, 0, out, offset, row.length);
+            }
+        }
+        return bestFilter;
+    }
+
+    private static int paeth(int a, int b, int c) {
+        int p = a + b - c;
+        int pa = Math.abs(p - a);
+        int pb = Math.abs(p - b);
+        int pc = Math.abs(p - c);
+        if (pa <= pb && pa <= pc) {
+            return a;
+        }
+        return pb <= pc ? b : c;
+    }
+
+    /**
+     * Контрольная сумма Adler-32 склейки двух последовательностей по их суммам (как adler32_combine в zlib)
+     * @param adler1 Сумма первой последовательности
+     * @param adler2 Сумма второй последовательности
+     * @param length2 Длина второй последовательности
+     */
+    static long combineAdler(long adler1, long adler2, long length2) {
+        long remainder = length2 % ADLER_BASE;
+        long sum1 = adler1 & 0xFFFF;
+        long sum2 = (remainder * sum1) % ADLER_BASE;
+        sum1 += (adler2 & 0xFFFF) + ADLER_BASE - 1;
+        sum2 += ((adler1 >> 16) & 0xFFFF) + ((adler2 >> 16) & 0xFFFF) + ADLER_BASE - remainder;
+        if (sum1 >= ADLER_BASE) {
+            sum1 -= ADLER_BASE;
+        }
+        if (sum1 >= ADLER_BASE) {
+            sum1 -= ADLER_BASE;
+        }
+        if (sum2 >= 2L * ADLER_BASE) {
+            sum2 -= 2L * ADLER_BASE;
+        }
+        if (sum2 >= ADLER_BASE) {
+            sum2 -= ADLER_BASE;
+        }
+        return sum1 | (sum2 << 16);
+    }
+
+    private static void writeChunk(DataOutputStream data, String type, byte[] bytes, int length)
+            throws IOException {
+        byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(bytes, 0, length);
+        data.writeInt(length);
+        data.write(typeBytes);
+        data.write(bytes, 0, length);
+        data.writeInt((int) crc.getValue());
+    }
+
+    private static void writeInt(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+    }
+
+    private static final class Chunk {
+        private final byte[] compressed;
+        private final int compressedLength;
+        private final long adler;
+        private final long rawLength;
+
+        Chunk(byte[] compressed, int compressedLength, long adler, long rawLength) {
+            this.compressed = compressed;
+            this.compressedLength = compressedLength;
+            this.adler = adler;
+            this.rawLength = rawLength;
+        }
+    }
+
+    /**
+     * Построчный доступ к пикселям изображения. Изображения с int-пикселями читаются прямо из DataBufferInt.
+     */
+    private static final class PixelRows {
+        private final BufferedImage image;
+        private final int width;
+        private final int[] data;
+        private final boolean forceOpaque;
+
+        PixelRows(BufferedImage image) {
+            this.image = image;
+            this.width = image.getWidth();
+            int type = image.getType();
+            if ((type == BufferedImage.TYPE_INT_ARGB || type == BufferedImage.TYPE_INT_RGB)
+                    && image.getRaster().getParent() == null
+                    && ((DataBufferInt) image.getRaster().getDataBuffer()).getData().length
+                    == width * image.getHeight()) {
+                data = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+            } else {
+                data = null;
+            }
+            forceOpaque = !image.getColorModel().hasAlpha();
+        }
+
+        boolean isOpaque() {
+            if (forceOpaque) {
+                return true;
+            }
+            int[] row = new int[width];
+            for (int y = 0; y < image.getHeight(); y++) {
+                int[] pixels = pixels(y, row);
+                int offset = data != null ? y * width : 0;
+                for (int x = 0; x < width; x++) {
+                    if (pixels[offset + x] >>> 24 != 0xFF) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        void read(int y, byte[] out, int bytesPerPixel) {
+            int[] pixels = pixels(y, new int[data != null ? 0 : width]);
+            int offset = data != null ? y * width : 0;
+            for (int x = 0, i = 0; x < width; x++, i += bytesPerPixel) {
+                int argb = pixels[offset + x];
+                out[i] = (byte) (argb >> 16);
+                out[i + 1] = (byte) (argb >> 8);
+                out[i + 2] = (byte) argb;
+                if (bytesPerPixel == 4) {
+                    out[i + 3] = (byte) (argb >>> 24);
+                }
+            }
+        }
+
+        private int[] pixels(int y, int[] row) {
+            if (data != null) {
+                return data;
+            }
+            return image.getRGB(0, y, width, 1, row, 0, width);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.example.paint;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Параллельная обработка диапазона строк (или столбцов) полосами в пуле fork/join. Диапазон делится пополам,
+ * пока полоса не станет не выше заданной, поэтому свободные потоки забирают работу у занятых.
+ * Перед каждой полосой проверяется отмена, после нее в прогресс передается ее доля единиц работы.
+ */
+public final class ParallelRows {
+    /**
+     * Минимальная высота полосы по умолчанию
+     */
+    public static final int MIN_ROWS = 16;
+
+    /**
+     * Обработчик полосы строк [from, to)
+     */
+    public interface Band {
+        void process(int from, int to);
+    }
+
+    private ParallelRows() {
+    }
+
+    /**
+     * Обрабатывает строки [from, to), сообщая в прогресс по единице на строку
+     * @param pool Пул потоков
+     * @param from Первая строка
+     * @param to Строка, следующая за последней
+     * @param progress Получатель прогресса и признака отмены
+     * @param band Обработчик полосы
+     */
+    public static void run(ForkJoinPool pool, int from, int to, JobProgress progress, Band band) {
+        run(pool, from, to, to - from, MIN_ROWS, progress, band);
+    }
+
+    /**
+     * Обрабатывает строки [from, to). Полосы делятся так, чтобы на каждый поток пула приходилось около
+     * четырех полос, но не ниже minRows строк.
+     * @param pool Пул потоков
+     * @param from Первая строка
+     * @param to Строка, следующая за последней
+     * @param units Сколько всего единиц работы передать в прогресс за весь диапазон
+     * @param minRows Минимальная высота полосы
+     * @param progress Получатель прогресса и признака отмены
+     * @param band Обработчик полосы
+     * @throws CancellationException Если операция отменена
+     */
+    public static void run(ForkJoinPool pool, int from, int to, long units, int minRows, JobProgress progress,
+                           Band band) {
+        if (to <= from) {
+            progress.worked(units);
+            return;
+        }
+        int bandRows = Math.max(minRows, (to - from) / (pool.getParallelism() * 4));
+        pool.invoke(new BandTask(band, progress, from, to, bandRows, from, to - from, units));
+    }
+
+    /**
+     * Задача fork/join, которая делит диапазон строк пополам, пока он не станет меньше высоты полосы
+     */
+    @SuppressWarnings("serial")
+    private static final class BandTask extends RecursiveAction {
+        private final Band band;
+        private final JobProgress progress;
+        private final int from;
+        private final int to;
+        private final int bandRows;
+        private final int origin;
+        private final int count;
+        private final long units;
+
+        BandTask(Band band, JobProgress progress, int from, int to, int bandRows, int origin, int count,
+                 long units) {
+            this.band = band;
+            this.progress = progress;
+            this.from = from;
+            this.to = to;
+            this.bandRows = bandRows;
+            this.origin = origin;
+            this.count = count;
+            this.units = units;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= bandRows) {
+                if (progress.isCancelled()) {
+                    throw new CancellationException();
+                }
+                band.process(from, to);
+                // доли полос считаются от границ, поэтому в сумме дают ровно units
+                progress.worked(share(to) - share(from));
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new BandTask(band, progress, from, middle, bandRows, origin, count, units),
+                    new BandTask(band, progress, middle, to, bandRows, origin, count, units));
+        }
+
+        private long share(int row) {
+            return units * (row - origin) / count;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.paint;
+
+/**
+ * Горячие попиксельные циклы: наложение с альфой, сравнение цветов при заливке и взвешенные суммы
+ * билатерального фильтра. Реализация выбирается один раз при загрузке класса: векторная
+ * ({@link VectorKernels}, модуль jdk.incubator.vector), если модуль подключен ключом
+ * --add-modules jdk.incubator.vector и процессор дает хотя бы четыре полосы, иначе скалярная
+ * ({@link ScalarKernels}). Системное свойство paint.noVector принудительно включает скалярную версию.
+ * Обе реализации дают одинаковый результат до бита.
+ */
+public abstract class PixelKernels {
+    private static final PixelKernels INSTANCE = select();
+
+    /**
+     * @return Реализация, выбранная при запуске
+     */
+    public static PixelKernels get() {
+        return INSTANCE;
+    }
+
+    private static PixelKernels select() {
+        if (Boolean.getBoolean("paint.noVector")
+                || ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return new ScalarKernels();
+        }
+        try {
+            PixelKernels kernels = (PixelKernels) Class.forName("com.example.paint.VectorKernels")
+                    .getDeclaredConstructor().newInstance();
+            if (kernels.getLanes() >= 4) {
+                return kernels;
+            }
+        } catch (ReflectiveOperationException | LinkageError e) {
+            e.printStackTrace();
+        }
+        return new ScalarKernels();
+    }
+
+    /**
+     * @return Название реализации для журнала
+     */
+    public abstract String getName();
+
+    /**
+     * @return Сколько пикселей обрабатывается за одну операцию
+     */
+    public abstract int getLanes();
+
+    /**
+     * Накладывает пиксели source поверх target (source-over). Оба массива без предумножения альфы,
+     * результат записывается в target.
+     * @param source Накладываемые пиксели 0xAARRGGBB
+     * @param sourceOffset Индекс первого пикселя в source
+     * @param target Пиксели фона 0xAARRGGBB, изменяются на месте
+     * @param targetOffset Индекс первого пикселя в target
+     * @param length Количество пикселей
+     */
+    public abstract void blendOver(int[] source, int sourceOffset, int[] target, int targetOffset, int length);
+
+    /**
+     * Отмечает пиксели, цвет которых совпадает хотя бы с одним из целевых цветов с заданным допуском. Бит i маски
+     * (считая от bitOffset, младшие биты слова первыми) устанавливается для пикселя pixels[offset + i],
+     * остальные биты не изменяются.
+     * @param pixels Пиксели 0xAARRGGBB
+     * @param offset Индекс первого пикселя
+     * @param length Количество пикселей
+     * @param targetColors Целевые цвета
+     * @param distance Способ сравнения цветов
+     * @param limit Допуск: для PER_CHANNEL наибольшая разница канала, для PERCEPTUAL квадрат расстояния
+     * @param mask Битовая маска результата
+     * @param bitOffset Номер бита маски для первого пикселя
+     */
+    public abstract void matchColors(int[] pixels, int offset, int length, int[] targetColors,
+                                     FloodFill.ColorDistance distance, int limit, long[] mask, int bitOffset);
+
+    /**
+     * Билатеральный фильтр для пикселей [fromX, toX) строки y. Окно должно целиком лежать внутри изображения.
+     * Вес соседа равен spaceWeights[k] * colorWeights[dr^2 + dg^2 + db^2], суммы копятся во float,
+     * каналы результата округляются, результат непрозрачный.
+     * @param source Исходные пиксели 0xAARRGGBB
+     * @param output Пиксели результата
+     * @param width Ширина изображения
+     * @param y Номер строки
+     * @param fromX Первый пиксель
+     * @param toX Пиксель, следующий за последним
+     * @param halfDiameter Половина диаметра окна
+     * @param spaceWeights Пространственные веса в порядке обхода окна
+     * @param colorWeights Цветовые веса, индексом служит квадрат разницы цветов
+     */
+    public abstract void bilateralRow(int[] source, int[] output, int width, int y, int fromX, int toX,
+                                      int halfDiameter, float[] spaceWeights, float[] colorWeights);
+}
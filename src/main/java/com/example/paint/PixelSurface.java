@@ -0,0 +1,63 @@
+package com.example.paint;
+
+/**
+ * Буфер пикселей 0xAARRGGBB с предумноженной альфой, построчно без промежутков. Заливка переиспользует
+ * один буфер между щелчками, чтобы не выделять массив размером с холст при каждом нажатии.
+ * <p>
+ * Общего представления одного массива для JavaFX и AWT здесь нет: PixelBuffer в JavaFX принимает только
+ * предумноженные форматы, а документ, файлы проекта и восстановления и экспорт хранят пиксели без предумножения.
+ * Перевод в предумноженный вид и обратно - такой же проход по всем пикселям, что и копирование, и к тому же
+ * теряет цвет полупрозрачных пикселей. Вместо этого экспорт и вставка работают с пикселями документа напрямую:
+ * {@link TiledDocument#toImage()} читает плитки сразу в DataBufferInt изображения, а
+ * {@link TiledDocument#fromImage} берет пиксели из него без getRGB.
+ */
+public class PixelSurface {
+    private final int width;
+    private final int height;
+    private final int[] pixels;
+
+    /**
+     * Создает прозрачный буфер
+     * @param width Ширина
+     * @param height Высота
+     */
+    public PixelSurface(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.pixels = new int[width * height];
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return Массив пикселей 0xAARRGGBB с предумноженной альфой, построчно без промежутков
+     */
+    public int[] getPixels() {
+        return pixels;
+    }
+
+    /**
+     * Предумножает цвет на его альфу
+     * @param argb Цвет 0xAARRGGBB
+     * @return Цвет 0xAARRGGBB с предумноженной альфой
+     */
+    public static int premultiply(int argb) {
+        int alpha = argb >>> 24;
+        if (alpha == 0xFF) {
+            return argb;
+        }
+        if (alpha == 0) {
+            return 0;
+        }
+        int red = ((argb >> 16) & 0xFF) * alpha / 255;
+        int green = ((argb >> 8) & 0xFF) * alpha / 255;
+        int blue = (argb & 0xFF) * alpha / 255;
+        return (alpha << 24) | (red << 16) | (green << 8) | blue;
+    }
+}
@@ -0,0 +1,267 @@
+package com.example.paint;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Собственный формат проекта. Файл состоит из заголовка, плиток слоев и таблицы слоев с индексом плиток:
+ * <pre>
+ * 0   "PAINTPRJ"                  сигнатура
+ * 8   int version                 версия формата
+ * 12  int width, int height       размер документа
+ * 20  int tileSize                сторона плитки
+ * 24  int layerCount              количество слоев
+ * 28  long layerTableOffset       где лежит таблица слоев
+ * 36  ...                         зарезервировано до HEADER_SIZE
+ * плитки                          TILE_SIZE * TILE_SIZE пикселей 0xAARRGGBB, little-endian, выровнены по 4 КБ
+ * таблица слоев                   для каждого слоя: int nameLength, имя UTF-8, int background, float opacity,
+ *                                 byte visible, long tileIndexOffset
+ * индекс плиток слоя              tilesX * tilesY значений long: смещение плитки или 0 для плитки-фона
+ * </pre>
+ * Все числа, кроме пикселей, хранятся в порядке big-endian. При открытии читаются только заголовок
+ * и таблица слоев, индекс и плитки отображаются в память через FileChannel.map и читаются по мере того,
+ * как документ обращается к плиткам, поэтому время открытия не зависит от размера документа.
+ * В редакторе пока один слой, он записывается как слой "Background".
+ */
+public class ProjectFile {
+    /**
+     * Расширение файлов проекта
+     */
+    public static final String EXTENSION = "paint";
+
+    private static final byte[] MAGIC = "PAINTPRJ".getBytes(StandardCharsets.US_ASCII);
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int TILE_ALIGNMENT = 4096;
+    private static final int TILE_BYTES = TiledDocument.TILE_SIZE * TiledDocument.TILE_SIZE * Integer.BYTES;
+
+    private ProjectFile() {
+    }
+
+    /**
+     * Записывает документ в файл проекта. Файл сначала пишется рядом под временным именем и только потом
+     * заменяет старый, поэтому документ, открытый из того же файла, можно сохранять поверх него.
+     * @param document Документ
+     * @param path Путь к файлу
+     * @throws IOException Если файл не удалось записать
+     */
+    public static void write(TiledDocument document, Path path) throws IOException {
+        write(document, path, JobProgress.NONE);
+    }
+
+    /**
+     * Записывает документ в файл проекта, сообщая о ходе работы по строкам плиток. Плитки читаются через
+     * {@link TiledDocument#readTile}, поэтому метод можно вызывать в фоновом потоке, как и построение
+     * {@link MipmapPyramid}. Если документ закрыт, пока шла запись, старый файл не заменяется: незагруженные
+     * плитки закрытого документа читаются как фон.
+     * @param document Документ
+     * @param path Путь к файлу
+     * @param progress Получатель хода работы, по единице на строку плиток
+     * @throws IOException Если файл не удалось записать
+     */
+    public static void write(TiledDocument document, Path path, JobProgress progress) throws IOException {
+        Path absolute = path.toAbsolutePath();
+        Path temporary = Files.createTempFile(absolute.getParent(), absolute.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                writeTo(document, channel, progress);
+                channel.force(true);
+            }
+            if (document.isClosed()) {
+                throw new IOException("Document was closed while saving: " + path);
+            }
+            Files.move(temporary, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Открывает файл проекта. Пиксели не читаются: документ загружает плитки из файла при первом обращении к ним.
+     * Файл остается открытым, пока документ не будет закрыт.
+     * @param path Путь к файлу
+     * @return Документ
+     * @throws IOException Если файл не читается или не является файлом проекта
+     */
+    public static TiledDocument open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            readFully(channel, header, 0);
+            header.flip();
+            byte[] magic = new byte[MAGIC.length];
+            header.get(magic);
+            if (!Arrays.equals(magic, MAGIC)) {
+                throw new IOException("Not a project file: " + path);
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported project file version " + version + ": " + path);
+            }
+            int width = header.getInt();
+            int height = header.getInt();
+            int tileSize = header.getInt();
+            int layerCount = header.getInt();
+            long layerTableOffset = header.getLong();
+            if (tileSize != TiledDocument.TILE_SIZE || layerCount < 1) {
+                throw new IOException("Unsupported project layout: tile " + tileSize + ", " + layerCount
+                        + " layers: " + path);
+            }
+
+            ByteBuffer layer = ByteBuffer.allocate(4);
+            readFully(channel, layer, layerTableOffset);
+            int nameLength = layer.flip().getInt();
+            layer = ByteBuffer.allocate(nameLength + 4 + 4 + 1 + 8);
+            readFully(channel, layer, layerTableOffset + 4);
+            layer.flip();
+            layer.position(nameLength);
+            int background = layer.getInt();
+            layer.getFloat();
+            layer.get();
+            long tileIndexOffset = layer.getLong();
+
+            int tilesX = (width + TiledDocument.TILE_SIZE - 1) / TiledDocument.TILE_SIZE;
+            int tilesY = (height + TiledDocument.TILE_SIZE - 1) / TiledDocument.TILE_SIZE;
+            MappedByteBuffer index = channel.map(FileChannel.MapMode.READ_ONLY, tileIndexOffset,
+                    (long) tilesX * tilesY * Long.BYTES);
+            return new TiledDocument(width, height, background, new MappedTileSource(channel, index, tilesX));
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Пишет плитки, отличающиеся от фона, затем таблицу слоев, индекс и в последнюю очередь заголовок
+     */
+    private static void writeTo(TiledDocument document, FileChannel channel, JobProgress progress)
+            throws IOException {
+        int tilesX = document.getTilesX();
+        int tilesY = document.getTilesY();
+        long[] offsets = new long[tilesX * tilesY];
+        ByteBuffer tileBytes = ByteBuffer.allocateDirect(TILE_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        IntBuffer tilePixels = tileBytes.asIntBuffer();
+        long position = align(HEADER_SIZE);
+        for (int ty = 0; ty < tilesY; ty++) {
+            for (int tx = 0; tx < tilesX; tx++) {
+                if (!document.hasTileData(tx, ty)) {
+                    continue;
+                }
+                document.readTile(tx, ty, tilePixels);
+                if (isBackground(tilePixels, document.getBackground())) {
+                    continue;
+                }
+                tileBytes.clear();
+                writeFully(channel, tileBytes, position);
+                offsets[ty * tilesX + tx] = position;
+                position = align(position + TILE_BYTES);
+            }
+            if (progress.isCancelled()) {
+                throw new CancellationException();
+            }
+            progress.worked(1);
+        }
+
+        byte[] name = "Background".getBytes(StandardCharsets.UTF_8);
+        long layerTableOffset = position;
+        long tileIndexOffset = layerTableOffset + 4 + name.length + 4 + 4 + 1 + 8;
+        ByteBuffer layerTable = ByteBuffer.allocate((int) (tileIndexOffset - layerTableOffset));
+        layerTable.putInt(name.length).put(name).putInt(document.getBackground()).putFloat(1f).put((byte) 1)
+                .putLong(tileIndexOffset);
+        writeFully(channel, layerTable.flip(), layerTableOffset);
+        ByteBuffer index = ByteBuffer.allocate(offsets.length * Long.BYTES);
+        index.asLongBuffer().put(offsets);
+        writeFully(channel, index, tileIndexOffset);
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.put(MAGIC).putInt(VERSION).putInt(document.getWidth()).putInt(document.getHeight())
+                .putInt(TiledDocument.TILE_SIZE).putInt(1).putLong(layerTableOffset);
+        header.clear();
+        writeFully(channel, header, 0);
+    }
+
+    /**
+     * @return Залита ли плитка целиком цветом фона: такая плитка не записывается, а читается как фон
+     */
+    private static boolean isBackground(IntBuffer pixels, int background) {
+        for (int i = 0; i < TILE_BYTES / Integer.BYTES; i++) {
+            if (pixels.get(i) != background) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long align(long position) {
+        return (position + TILE_ALIGNMENT - 1) / TILE_ALIGNMENT * TILE_ALIGNMENT;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of project file");
+            }
+            position += read;
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    /**
+     * Источник плиток из отображенного в память файла проекта
+     */
+    private static final class MappedTileSource implements TiledDocument.TileSource {
+        private final FileChannel channel;
+        private final MappedByteBuffer index;
+        private final int tilesX;
+
+        MappedTileSource(FileChannel channel, MappedByteBuffer index, int tilesX) {
+            this.channel = channel;
+            this.index = index;
+            this.tilesX = tilesX;
+        }
+
+        @Override
+        public boolean hasTile(int tileX, int tileY) {
+            return offset(tileX, tileY) != 0;
+        }
+
+        @Override
+        public void readTile(int tileX, int tileY, IntBuffer dst) {
+            try {
+                IntBuffer tile = channel.map(FileChannel.MapMode.READ_ONLY, offset(tileX, tileY), TILE_BYTES)
+                        .order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+                dst.put(0, tile, 0, TiledDocument.TILE_SIZE * TiledDocument.TILE_SIZE);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+
+        private long offset(int tileX, int tileY) {
+            return index.getLong((tileY * tilesX + tileX) * Long.BYTES);
+        }
+    }
+}
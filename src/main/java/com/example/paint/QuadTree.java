@@ -0,0 +1,247 @@
+package com.example.paint;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * "Рыхлое" дерево квадрантов над прямоугольными границами объектов. Границы каждого узла расширены
+ * на половину его стороны, поэтому объект, пересекающий линию деления, все равно опускается в потомка
+ * по своему центру и не скапливается в верхних узлах. Поиск по прямоугольнику и по точке обходит только
+ * узлы, пересекающие запрос, что в среднем дает O(log n). Корень расширяется сам, если объект выходит за его пределы.
+ * @param <T> Тип объектов, сравниваются по ссылке
+ */
+public class QuadTree<T> {
+    /**
+     * Количество объектов в листе, после которого он делится на четыре части
+     */
+    private static final int NODE_CAPACITY = 8;
+
+    /**
+     * Сторона узла, меньше которой узлы не делятся
+     */
+    private static final double MIN_NODE_SIZE = 1.0;
+
+    private final Map<T, Entry<T>> entries = new IdentityHashMap<>();
+    private Node<T> root;
+
+    /**
+     * Добавляет объект. Если объект уже есть в дереве, его границы обновляются.
+     * @param item Объект
+     * @param minX Левая граница
+     * @param minY Верхняя граница
+     * @param maxX Правая граница
+     * @param maxY Нижняя граница
+     */
+    public void insert(T item, double minX, double minY, double maxX, double maxY) {
+        remove(item);
+        Entry<T> entry = new Entry<>(item, minX, minY, maxX, maxY);
+        entries.put(item, entry);
+        if (root == null) {
+            double size = Math.max(Math.max(maxX - minX, maxY - minY), MIN_NODE_SIZE) * 2;
+            root = new Node<>(minX, minY, size);
+        }
+        while (!root.contains(entry)) {
+            growRoot(entry);
+        }
+        insert(root, entry);
+    }
+
+    /**
+     * Удаляет объект за O(1): запись знает свое место в списке узла, и на это место переносится
+     * последняя запись списка
+     * @param item Объект
+     * @return Был ли объект в дереве
+     */
+    public boolean remove(T item) {
+        Entry<T> entry = entries.remove(item);
+        if (entry == null) {
+            return false;
+        }
+        List<Entry<T>> items = entry.node.items;
+        Entry<T> last = items.remove(items.size() - 1);
+        if (last != entry) {
+            items.set(entry.slot, last);
+            last.slot = entry.slot;
+        }
+        return true;
+    }
+
+    /**
+     * Передает в consumer все объекты, границы которых пересекают прямоугольник
+     */
+    public void query(double minX, double minY, double maxX, double maxY, Consumer<T> consumer) {
+        if (root == null) {
+            return;
+        }
+        Deque<Node<T>> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            Node<T> node = stack.pop();
+            for (Entry<T> entry : node.items) {
+                if (entry.minX <= maxX && entry.maxX >= minX && entry.minY <= maxY && entry.maxY >= minY) {
+                    consumer.accept(entry.item);
+                }
+            }
+            if (node.children != null) {
+                for (Node<T> child : node.children) {
+                    if (child.intersects(minX, minY, maxX, maxY)) {
+                        stack.push(child);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return Все объекты, границы которых содержат точку
+     */
+    public List<T> queryPoint(double x, double y) {
+        List<T> result = new ArrayList<>();
+        query(x, y, x, y, result::add);
+        return result;
+    }
+
+    /**
+     * @return Количество объектов в дереве
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Удаляет все объекты
+     */
+    public void clear() {
+        entries.clear();
+        root = null;
+    }
+
+    private void insert(Node<T> node, Entry<T> entry) {
+        while (node.children != null) {
+            Node<T> child = node.childContaining(entry);
+            if (child == null) {
+                break;
+            }
+            node = child;
+        }
+        node.add(entry);
+        if (node.children == null && node.items.size() > NODE_CAPACITY && node.size / 2 >= MIN_NODE_SIZE) {
+            split(node);
+        }
+    }
+
+    private void split(Node<T> node) {
+        node.createChildren();
+        List<Entry<T>> items = node.items;
+        node.items = new ArrayList<>();
+        for (Entry<T> entry : items) {
+            Node<T> child = node.childContaining(entry);
+            (child != null ? child : node).add(entry);
+        }
+    }
+
+    /**
+     * Удваивает корень в сторону объекта, старый корень становится одним из квадрантов нового
+     */
+    private void growRoot(Entry<T> entry) {
+        Node<T> oldRoot = root;
+        double size = oldRoot.size;
+        boolean growLeft = entry.minX < oldRoot.minX;
+        boolean growUp = entry.minY < oldRoot.minY;
+        double minX = growLeft ? oldRoot.minX - size : oldRoot.minX;
+        double minY = growUp ? oldRoot.minY - size : oldRoot.minY;
+        Node<T> newRoot = new Node<>(minX, minY, size * 2);
+        newRoot.createChildren();
+        int index = (growLeft ? 1 : 0) + (growUp ? 2 : 0);
+        newRoot.children[index] = oldRoot;
+        root = newRoot;
+    }
+
+    private static final class Entry<T> {
+        private final T item;
+        private final double minX, minY, maxX, maxY;
+        private Node<T> node;
+        /**
+         * Индекс записи в списке items узла node
+         */
+        private int slot;
+
+        Entry(T item, double minX, double minY, double maxX, double maxY) {
+            this.item = item;
+            this.minX = minX;
+            this.minY = minY;
+            this.maxX = maxX;
+            this.maxY = maxY;
+        }
+    }
+
+    /**
+     * Квадратный узел дерева. Дети нумеруются так: 0 - левый верхний, 1 - правый верхний,
+     * 2 - левый нижний, 3 - правый нижний.
+     */
+    private static final class Node<T> {
+        private final double minX, minY, size;
+        private List<Entry<T>> items = new ArrayList<>();
+        private Node<T>[] children;
+
+        Node(double minX, double minY, double size) {
+            this.minX = minX;
+            this.minY = minY;
+            this.size = size;
+        }
+
+        void add(Entry<T> entry) {
+            entry.node = this;
+            entry.slot = items.size();
+            items.add(entry);
+        }
+
+        void createChildren() {
+            double half = size / 2;
+            @SuppressWarnings("unchecked")
+            Node<T>[] quadrants = (Node<T>[]) new Node<?>[]{
+                    new Node<T>(minX, minY, half),
+                    new Node<T>(minX + half, minY, half),
+                    new Node<T>(minX, minY + half, half),
+                    new Node<T>(minX + half, minY + half, half)
+            };
+            children = quadrants;
+        }
+
+        boolean contains(Entry<T> entry) {
+            return entry.minX >= minX && entry.maxX <= minX + size
+                    && entry.minY >= minY && entry.maxY <= minY + size;
+        }
+
+        /**
+         * Проверяет пересечение запроса с расширенными границами узла
+         */
+        boolean intersects(double queryMinX, double queryMinY, double queryMaxX, double queryMaxY) {
+            double slack = size / 2;
+            return minX - slack <= queryMaxX && minX + size + slack >= queryMinX
+                    && minY - slack <= queryMaxY && minY + size + slack >= queryMinY;
+        }
+
+        /**
+         * Выбирает потомка по центру объекта и проверяет, что объект помещается в его расширенные границы
+         */
+        Node<T> childContaining(Entry<T> entry) {
+            double half = size / 2;
+            double centerX = (entry.minX + entry.maxX) / 2;
+            double centerY = (entry.minY + entry.maxY) / 2;
+            int index = (centerX >= minX + half ? 1 : 0) + (centerY >= minY + half ? 2 : 0);
+            Node<T> child = children[index];
+            double slack = child.size / 2;
+            if (entry.minX >= child.minX - slack && entry.maxX <= child.minX + child.size + slack
+                    && entry.minY >= child.minY - slack && entry.maxY <= child.minY + child.size + slack) {
+                return child;
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,376 @@
+package com.example.paint;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Файл восстановления для автосохранения. Плитки только дописываются в конец пачками:
+ * <pre>
+ * заголовок   "PAINTREC", int version, int width, int height, int background
+ * плитка      int tileX, int tileY, int length, int crc32, length байт сжатых Deflate пикселей (little-endian)
+ * конец пачки int -1, int количество плиток в пачке, int флаги, int 0
+ * </pre>
+ * После каждой пачки вызывается FileChannel.force, а при восстановлении применяются только пачки,
+ * дописанные до конца, поэтому обрыв записи посреди пачки теряет лишь ее. Последняя запись плитки
+ * заменяет предыдущие; когда устаревших записей становится больше живых, файл переписывается заново.
+ * Новый документ попадает в файл за несколько пачек. Флаг COMPLETE ставится на пачку, после которой в файле
+ * есть все плитки документа, отличные от фона; полнота файла определяется по последней целой пачке, и файл,
+ * где она без флага, восстанавливается с пометкой, что в нем может не хватать частей документа.
+ * Класс не потокобезопасен.
+ */
+public class RecoveryFile implements Closeable {
+    private static final byte[] MAGIC = "PAINTREC".getBytes(StandardCharsets.US_ASCII);
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = MAGIC.length + 4 * Integer.BYTES;
+    private static final int RECORD_HEADER_SIZE = 4 * Integer.BYTES;
+    private static final int BATCH_END = -1;
+    /**
+     * Флаг конца пачки: в файле есть все плитки документа
+     */
+    private static final int COMPLETE = 1;
+    private static final int PIXELS_PER_TILE = TiledDocument.TILE_SIZE * TiledDocument.TILE_SIZE;
+
+    /**
+     * Размер файла, меньше которого он не переписывается, даже если в нем много устаревших записей
+     */
+    private static final long MIN_COMPACT_SIZE = 64L * 1024 * 1024;
+
+    private final Path path;
+    private final Map<Long, long[]> latestRecords = new HashMap<>();
+    private FileChannel channel;
+    private long position;
+    private long liveBytes;
+    private boolean complete;
+
+    /**
+     * Создает пустой файл восстановления для документа, заменяя старый
+     * @param path Путь к файлу
+     * @param width Ширина документа
+     * @param height Высота документа
+     * @param background Цвет фона документа
+     * @throws IOException Если файл не удалось создать
+     */
+    public RecoveryFile(Path path, int width, int height, int background) throws IOException {
+        this.path = path;
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.READ, StandardOpenOption.TRUNCATE_EXISTING);
+        writeHeader(channel, width, height, background);
+        position = HEADER_SIZE;
+        channel.force(true);
+    }
+
+    /**
+     * @return Размер файла в байтах
+     */
+    public long getSize() {
+        return position;
+    }
+
+    /**
+     * Дописывает пачку плиток и дожидается, пока она окажется на диске. Если запись не удалась, недописанная
+     * пачка отрезается, а следующие пачки помечаются неполными, пока не будет дописана полная пачка.
+     * @param tiles Плитки: номер по X, номер по Y и TILE_SIZE * TILE_SIZE пикселей
+     * @param complete Есть ли после этой пачки в файле все плитки документа, отличные от фона
+     * @throws IOException Если запись не удалась
+     */
+    public void appendBatch(List<Tile> tiles, boolean complete) throws IOException {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        ByteBuffer pixels = ByteBuffer.allocate(PIXELS_PER_TILE * Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        byte[] compressed = new byte[PIXELS_PER_TILE * Integer.BYTES + 1024];
+        Map<Long, long[]> written = new HashMap<>();
+        long batchEnd = position;
+        try {
+            for (Tile tile : tiles) {
+                pixels.clear();
+                pixels.asIntBuffer().put(tile.pixels);
+                deflater.reset();
+                deflater.setInput(pixels.array());
+                deflater.finish();
+                int length = 0;
+                while (!deflater.finished()) {
+                    length += deflater.deflate(compressed, length, compressed.length - length);
+                }
+                CRC32 crc = new CRC32();
+                crc.update(compressed, 0, length);
+
+                ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + length);
+                record.putInt(tile.tileX).putInt(tile.tileY).putInt(length).putInt((int) crc.getValue())
+                        .put(compressed, 0, length).flip();
+                long[] latest = new long[]{batchEnd, record.remaining()};
+                batchEnd += writeFully(channel, record, batchEnd);
+                written.put(key(tile.tileX, tile.tileY), latest);
+            }
+            // после полной пачки каждая плитка документа есть в файле в какой-то из своих версий
+            ByteBuffer end = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+            end.putInt(BATCH_END).putInt(tiles.size()).putInt(this.complete || complete ? COMPLETE : 0).putInt(0)
+                    .flip();
+            batchEnd += writeFully(channel, end, batchEnd);
+            channel.force(false);
+        } catch (IOException e) {
+            // плиток этой пачки в файле нет, и пока их не допишет следующая полная пачка, файл неполон
+            this.complete = false;
+            try {
+                channel.truncate(position);
+            } catch (IOException truncateError) {
+                e.addSuppressed(truncateError);
+            }
+            throw e;
+        } finally {
+            deflater.end();
+        }
+        this.complete |= complete;
+        position = batchEnd;
+        for (Map.Entry<Long, long[]> entry : written.entrySet()) {
+            long[] previous = latestRecords.put(entry.getKey(), entry.getValue());
+            if (previous != null) {
+                liveBytes -= previous[1];
+            }
+            liveBytes += entry.getValue()[1];
+        }
+
+        if (position > MIN_COMPACT_SIZE && position - HEADER_SIZE > 2 * liveBytes) {
+            compact();
+        }
+    }
+
+    /**
+     * Закрывает файл, оставляя его на диске
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Закрывает и удаляет файл, например при штатном выходе из приложения
+     */
+    public void delete() throws IOException {
+        channel.close();
+        Files.deleteIfExists(path);
+    }
+
+    /**
+     * Восстанавливает документ из файла. Применяются только пачки, записанные целиком.
+     * @param path Путь к файлу
+     * @return Восстановленный документ или null, если файла нет или в нем нет ни одной целой пачки
+     * @throws IOException Если файл не удалось прочитать
+     */
+    public static Recovery recover(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE) {
+                return null;
+            }
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            readFully(channel, header, 0);
+            header.flip();
+            byte[] magic = new byte[MAGIC.length];
+            header.get(magic);
+            if (!Arrays.equals(magic, MAGIC) || header.getInt() != VERSION) {
+                return null;
+            }
+            TiledDocument document = new TiledDocument(header.getInt(), header.getInt(), header.getInt());
+
+            List<long[]> pending = new ArrayList<>();
+            boolean recovered = false;
+            boolean complete = false;
+            boolean damaged = false;
+            long position = HEADER_SIZE;
+            ByteBuffer recordHeader = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+            while (position + RECORD_HEADER_SIZE <= size) {
+                recordHeader.clear();
+                readFully(channel, recordHeader, position);
+                recordHeader.flip();
+                int tileX = recordHeader.getInt();
+                int tileY = recordHeader.getInt();
+                int length = recordHeader.getInt();
+                int crc = recordHeader.getInt();
+                if (tileX == BATCH_END) {
+                    if (tileY != pending.size()) {
+                        break;
+                    }
+                    for (long[] record : pending) {
+                        damaged |= !applyTile(channel, document, record);
+                    }
+                    // в записи конца пачки на месте длины стоят флаги, полнота файла - по последней пачке
+                    complete = (length & COMPLETE) != 0;
+                    recovered |= !pending.isEmpty();
+                    pending.clear();
+                    position += RECORD_HEADER_SIZE;
+                    continue;
+                }
+                if (length < 0 || position + RECORD_HEADER_SIZE + length > size || tileX < 0
+                        || tileX >= document.getTilesX() || tileY < 0 || tileY >= document.getTilesY()) {
+                    break;
+                }
+                pending.add(new long[]{position + RECORD_HEADER_SIZE, length, tileX, tileY, crc});
+                position += RECORD_HEADER_SIZE + length;
+            }
+            return recovered ? new Recovery(document, complete && !damaged) : null;
+        }
+    }
+
+    /**
+     * Записывает плитку в документ
+     * @return false, если запись плитки повреждена и плитка пропущена
+     */
+    private static boolean applyTile(FileChannel channel, TiledDocument document, long[] record)
+            throws IOException {
+        byte[] compressed = new byte[(int) record[1]];
+        readFully(channel, ByteBuffer.wrap(compressed), record[0]);
+        CRC32 crc = new CRC32();
+        crc.update(compressed);
+        if ((int) crc.getValue() != (int) record[4]) {
+            return false;
+        }
+        byte[] bytes = new byte[PIXELS_PER_TILE * Integer.BYTES];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            int length = 0;
+            while (length < bytes.length && !inflater.finished()) {
+                length += inflater.inflate(bytes, length, bytes.length - length);
+            }
+        } catch (DataFormatException e) {
+            return false;
+        } finally {
+            inflater.end();
+        }
+        IntBuffer pixels = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+        document.tile((int) record[2], (int) record[3]).put(0, pixels, 0, PIXELS_PER_TILE);
+        return true;
+    }
+
+    /**
+     * Переписывает в новый файл только последние записи каждой плитки и заменяет им старый
+     */
+    private void compact() throws IOException {
+        Path temporary = path.resolveSibling(path.getFileName() + ".compact");
+        FileChannel compacted = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.READ, StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            readFully(channel, header, 0);
+            long newPosition = writeFully(compacted, header.flip(), 0);
+            for (long[] record : latestRecords.values()) {
+                ByteBuffer bytes = ByteBuffer.allocate((int) record[1]);
+                readFully(channel, bytes, record[0]);
+                record[0] = newPosition;
+                newPosition += writeFully(compacted, bytes.flip(), newPosition);
+            }
+            ByteBuffer end = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+            end.putInt(BATCH_END).putInt(latestRecords.size()).putInt(complete ? COMPLETE : 0).putInt(0).flip();
+            newPosition += writeFully(compacted, end, newPosition);
+            compacted.force(true);
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            channel.close();
+            channel = compacted;
+            position = newPosition;
+            liveBytes = newPosition - HEADER_SIZE - RECORD_HEADER_SIZE;
+        } catch (IOException e) {
+            compacted.close();
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+    }
+
+    private static void writeHeader(FileChannel channel, int width, int height, int background) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.put(MAGIC).putInt(VERSION).putInt(width).putInt(height).putInt(background).flip();
+        writeFully(channel, header, 0);
+    }
+
+    private static long key(int tileX, int tileY) {
+        return ((long) tileY << 32) | (tileX & 0xFFFFFFFFL);
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of recovery file");
+            }
+            position += read;
+        }
+    }
+
+    private static long writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        long written = 0;
+        while (buffer.hasRemaining()) {
+            written += channel.write(buffer, position + written);
+        }
+        return written;
+    }
+
+    /**
+     * Документ, восстановленный из файла
+     */
+    public static final class Recovery {
+        private final TiledDocument document;
+        private final boolean complete;
+
+        /**
+         * Конструктор с параметрами
+         * @param document Документ
+         * @param complete Были ли в файле все плитки документа
+         */
+        public Recovery(TiledDocument document, boolean complete) {
+            this.document = document;
+            this.complete = complete;
+        }
+
+        public TiledDocument getDocument() {
+            return document;
+        }
+
+        /**
+         * @return false, если автосохранение не успело записать весь документ или запись плитки повреждена:
+         * недостающие плитки залиты фоном
+         */
+        public boolean isComplete() {
+            return complete;
+        }
+    }
+
+    /**
+     * Копия плитки, которую нужно сохранить
+     */
+    public static final class Tile {
+        private final int tileX;
+        private final int tileY;
+        private final int[] pixels;
+
+        /**
+         * Конструктор с параметрами
+         * @param tileX Номер плитки по X
+         * @param tileY Номер плитки по Y
+         * @param pixels TILE_SIZE * TILE_SIZE пикселей плитки
+         */
+        public Tile(int tileX, int tileY, int[] pixels) {
+            this.tileX = tileX;
+            this.tileY = tileY;
+            this.pixels = pixels;
+        }
+    }
+}
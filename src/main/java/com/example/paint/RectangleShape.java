@@ -0,0 +1,78 @@
+package com.example.paint;
+
+import javafx.geometry.Rectangle2D;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
+
+/**
+ * Прямоугольник, заданный начальной точкой и подвижным противоположным углом
+ */
+public class RectangleShape extends DrawableShape {
+    private final double startX;
+    private final double startY;
+    private double endX;
+    private double endY;
+
+    public RectangleShape(double startX, double startY, Color color, String fillType,
+                          double lineWidth, double hatchWidth) {
+        super(color, fillType, lineWidth, hatchWidth);
+        this.startX = startX;
+        this.startY = startY;
+        this.endX = startX;
+        this.endY = startY;
+    }
+
+    public double getMinX() {
+        return Math.min(startX, endX);
+    }
+
+    public double getMinY() {
+        return Math.min(startY, endY);
+    }
+
+    public double getMaxX() {
+        return Math.max(startX, endX);
+    }
+
+    public double getMaxY() {
+        return Math.max(startY, endY);
+    }
+
+    public void setEnd(double endX, double endY) {
+        this.endX = endX;
+        this.endY = endY;
+    }
+
+    @Override
+    public Rectangle2D getBounds() {
+        return paddedBounds(getMinX(), getMinY(), getMaxX(), getMaxY());
+    }
+
+    @Override
+    protected void drawOutline(GraphicsContext graphicsContext) {
+        graphicsContext.strokeRect(getMinX(), getMinY(), getMaxX() - getMinX(), getMaxY() - getMinY());
+    }
+
+    /**
+     * Линии идут от начальной точки к конечной с шагом штриховки
+     */
+    @Override
+    protected void drawHorizontalHatch(GraphicsContext graphicsContext) {
+        if (startY > endY) {
+            for (double y = startY; y > endY; y -= HATCH_STEP) {
+                graphicsContext.strokeLine(startX, y, endX, y);
+            }
+        } else {
+            for (double y = startY; y < endY; y += HATCH_STEP) {
+                graphicsContext.strokeLine(startX, y, endX, y);
+            }
+        }
+    }
+
+    @Override
+    protected void drawVerticalHatch(GraphicsContext graphicsContext) {
+        for (double x = getMinX() + HATCH_STEP / 2; x < getMaxX(); x += HATCH_STEP) {
+            graphicsContext.strokeLine(x, getMinY(), x, getMaxY());
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package com.example.paint;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Масштабирование прямоугольника изображения с произвольным коэффициентом без участия видеокарты.
+ * Фильтр разделимый: сначала каждая нужная строка источника сворачивается по горизонтали, затем результат
+ * сворачивается по вертикали. Для каждого выходного столбца и строки заранее считается таблица весов
+ * (первый пиксель источника и веса ядра), поэтому внутренние циклы только умножают и складывают.
+ * При уменьшении ядро растягивается в 1 / scale раз, чтобы не было муара. Цвета смешиваются
+ * с предумноженной альфой, поэтому у прозрачных краев не появляется темная кайма. Оба прохода
+ * выполняются параллельно по полосам строк.
+ */
+public class Resampler {
+    /**
+     * Ядро интерполяции
+     */
+    public enum Kernel {
+        NEAREST("Ближайший сосед", 0.5),
+        BILINEAR("Билинейный", 1),
+        BICUBIC("Бикубический", 2),
+        LANCZOS("Ланцош", 3);
+
+        private final String title;
+        private final double radius;
+
+        Kernel(String title, double radius) {
+            this.title = title;
+            this.radius = radius;
+        }
+
+        /**
+         * @return Радиус ядра в пикселях источника при увеличении
+         */
+        public double getRadius() {
+            return radius;
+        }
+
+        double weight(double x) {
+            x = Math.abs(x);
+            switch (this) {
+                case NEAREST:
+                    return x <= 0.5 ? 1 : 0;
+                case BILINEAR:
+                    return x < 1 ? 1 - x : 0;
+                case BICUBIC:
+                    // ядро Кейса с a = -0.5 (Catmull-Rom)
+                    if (x < 1) {
+                        return (1.5 * x - 2.5) * x * x + 1;
+                    }
+                    return x < 2 ? ((-0.5 * x + 2.5) * x - 4) * x + 2 : 0;
+                default:
+                    if (x < 1e-8) {
+                        return 1;
+                    }
+                    if (x >= radius) {
+                        return 0;
+                    }
+                    double piX = Math.PI * x;
+                    return radius * Math.sin(piX) * Math.sin(piX / radius) / (piX * piX);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return title;
+        }
+    }
+
+    private final Kernel kernel;
+    private final ForkJoinPool pool;
+
+    /**
+     * Конструктор с параметрами
+     * @param kernel Ядро интерполяции
+     * @param pool Пул потоков для параллельных проходов
+     */
+    public Resampler(Kernel kernel, ForkJoinPool pool) {
+        this.kernel = kernel;
+        this.pool = pool;
+    }
+
+    /**
+     * Масштабирует прямоугольник источника в изображение заданного размера
+     * @param source Пиксели источника 0xAARRGGBB без предумножения, построчно без промежутков
+     * @param sourceWidth Ширина источника
+     * @param sourceHeight Высота источника
+     * @param x Левая граница прямоугольника в источнике, может быть дробной
+     * @param y Верхняя граница прямоугольника в источнике
+     * @param width Ширина прямоугольника
+     * @param height Высота прямоугольника
+     * @param targetWidth Ширина результата
+     * @param targetHeight Высота результата
+     * @return Пиксели результата 0xAARRGGBB без предумножения
+     */
+    public int[] resample(int[] source, int sourceWidth, int sourceHeight, double x, double y, double width,
+                          double height, int targetWidth, int targetHeight) {
+        if (width <= 0 || height <= 0 || targetWidth <= 0 || targetHeight <= 0) {
+            throw new IllegalArgumentException("Empty resample: " + width + "x" + height + " -> "
+                    + targetWidth + "x" + targetHeight);
+        }
+        Weights columns = new Weights(kernel, x, width, targetWidth, sourceWidth);
+        Weights rows = new Weights(kernel, y, height, targetHeight, sourceHeight);
+
+        int firstRow = rows.first[0];
+        int lastRow = firstRow;
+        for (int i = 0; i < targetHeight; i++) {
+            lastRow = Math.max(lastRow, rows.first[i] + rows.count[i] - 1);
+        }
+        int rowCount = lastRow - firstRow + 1;
+        float[] horizontal = new float[rowCount * targetWidth * 4];
+        int[] target = new int[targetWidth * targetHeight];
+        int startRow = firstRow;
+
+        ParallelRows.run(pool, 0, rowCount, JobProgress.NONE, (fromRow, toRow) -> {
+            for (int row = fromRow; row < toRow; row++) {
+                resampleRow(source, (startRow + row) * sourceWidth, columns, horizontal, row * targetWidth * 4);
+            }
+        });
+        ParallelRows.run(pool, 0, targetHeight, JobProgress.NONE, (fromRow, toRow) -> {
+            for (int row = fromRow; row < toRow; row++) {
+                resampleColumn(horizontal, targetWidth, rows, row, startRow, target);
+            }
+        });
+        return target;
+    }
+
+    /**
+     * Горизонтальный проход по одной строке источника: результат в предумноженных каналах A, R, G, B
+     */
+    private static void resampleRow(int[] source, int rowOffset, Weights columns, float[] out, int outOffset) {
+        for (int i = 0; i < columns.size; i++) {
+            float alpha = 0;
+            float red = 0;
+            float green = 0;
+            float blue = 0;
+            int weightIndex = i * columns.stride;
+            int sourceIndex = rowOffset + columns.first[i];
+            for (int k = 0; k < columns.count[i]; k++) {
+                int argb = source[sourceIndex + k];
+                float weight = columns.weights[weightIndex + k];
+                float weightedAlpha = weight * (argb >>> 24);
+                alpha += weightedAlpha;
+                red += weightedAlpha * ((argb >> 16) & 0xFF);
+                green += weightedAlpha * ((argb >> 8) & 0xFF);
+                blue += weightedAlpha * (argb & 0xFF);
+            }
+            int o = outOffset + i * 4;
+            out[o] = alpha;
+            out[o + 1] = red;
+            out[o + 2] = green;
+            out[o + 3] = blue;
+        }
+    }
+
+    /**
+     * Вертикальный проход для одной строки результата с возвратом к обычной (не предумноженной) альфе
+     */
+    private static void resampleColumn(float[] horizontal, int targetWidth, Weights rows, int row, int startRow,
+                                       int[] target) {
+        int weightIndex = row * rows.stride;
+        int firstOffset = (rows.first[row] - startRow) * targetWidth * 4;
+        for (int i = 0; i < targetWidth; i++) {
+            float alpha = 0;
+            float red = 0;
+            float green = 0;
+            float blue = 0;
+            int offset = firstOffset + i * 4;
+            for (int k = 0; k < rows.count[row]; k++, offset += targetWidth * 4) {
+                float weight = rows.weights[weightIndex + k];
+                alpha += weight * horizontal[offset];
+                red += weight * horizontal[offset + 1];
+                green += weight * horizontal[offset + 2];
+                blue += weight * horizontal[offset + 3];
+            }
+            int a = clamp(alpha);
+            if (a == 0) {
+                target[row * targetWidth + i] = 0;
+                continue;
+            }
+            target[row * targetWidth + i] = (a << 24) | (clamp(red / alpha) << 16) | (clamp(green / alpha) << 8)
+                    | clamp(blue / alpha);
+        }
+    }
+
+    private static int clamp(float value) {
+        int rounded = Math.round(value);
+        return rounded < 0 ? 0 : Math.min(rounded, 255);
+    }
+
+    /**
+     * Таблица весов для одного направления: для каждого выходного пикселя первый пиксель источника,
+     * количество пикселей и их нормированные веса
+     */
+    private static final class Weights {
+        private final int size;
+        private final int stride;
+        private final int[] first;
+        private final int[] count;
+        private final float[] weights;
+
+        Weights(Kernel kernel, double start, double length, int size, int sourceSize) {
+            this.size = size;
+            double scale = size / length;
+            double filterScale = Math.max(1, 1 / scale);
+            double support = kernel.getRadius() * filterScale;
+            this.stride = (int) Math.ceil(support * 2) + 2;
+            this.first = new int[size];
+            this.count = new int[size];
+            this.weights = new float[size * stride];
+
+            for (int i = 0; i < size; i++) {
+                double center = start + (i + 0.5) / scale;
+                if (kernel == Kernel.NEAREST && filterScale == 1) {
+                    first[i] = Math.min(sourceSize - 1, Math.max(0, (int) Math.floor(center)));
+                    count[i] = 1;
+                    weights[i * stride] = 1;
+                    continue;
+                }
+                int from = Math.max(0, (int) Math.floor(center - support));
+                int to = Math.min(sourceSize - 1, (int) Math.ceil(center + support));
+                to = Math.min(to, from + stride - 1);
+                double sum = 0;
+                for (int j = from; j <= to; j++) {
+                    double weight = kernel.weight((j + 0.5 - center) / filterScale);
+                    weights[i * stride + j - from] = (float) weight;
+                    sum += weight;
+                }
+                if (sum == 0) {
+                    int nearest = Math.min(sourceSize - 1, Math.max(0, (int) Math.floor(center)));
+                    from = nearest;
+                    to = nearest;
+                    weights[i * stride] = 1;
+                    sum = 1;
+                }
+                first[i] = from;
+                count[i] = to - from + 1;
+                for (int k = 0; k < count[i]; k++) {
+                    weights[i * stride + k] /= (float) sum;
+                }
+            }
+        }
+    }
+}
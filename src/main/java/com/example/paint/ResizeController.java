@@ -1,42 +1,105 @@
 package com.example.paint;
 
+import javafx.geometry.Pos;
 import javafx.scene.canvas.Canvas;
 import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.control.ChoiceDialog;
+import javafx.scene.control.ComboBox;
+import javafx.scene.control.Label;
+import javafx.scene.image.PixelFormat;
 import javafx.scene.input.MouseButton;
-import javafx.scene.image.WritableImage;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.VBox;
+
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
 
 /**
- * Контроллер, отвечающий за увеличение размера выделенной области
+ * Контроллер, отвечающий за увеличение размера выделенной области. Пиксели берутся из документа,
+ * а не из снимка холста, и масштабируются {@link Resampler} с выбранным ядром. При уменьшении в 2 раза и больше
+ * источником служит ближайший уровень {@link MipmapPyramid}, так что ядру не приходится сворачивать
+ * все пиксели документа.
  */
 public class ResizeController {
+    /**
+     * Увеличение по умолчанию
+     */
+    public static final double DEFAULT_ZOOM = 1.5;
+    /**
+     * Масштабы, которые предлагаются в диалоге; значения меньше 1 уменьшают область
+     */
+    private static final Double[] ZOOM_CHOICES = {0.25, 0.5, 0.75, 1.5, 2.0, 3.0, 4.0};
+
     double startX, startY, endX, endY;
-    boolean isSelecting, shouldEnlarge;
-    WritableImage originalImage;
+    boolean isSelecting;
+    private Resampler.Kernel kernel = Resampler.Kernel.LANCZOS;
+    private double zoom = DEFAULT_ZOOM;
+
+    public double getZoom() {
+        return zoom;
+    }
+
+    /**
+     * @param zoom Во сколько раз увеличивается центр выделенной области; меньше 1 - уменьшение
+     */
+    public void setZoom(double zoom) {
+        if (!(zoom > 0)) {
+            throw new IllegalArgumentException("Zoom must be positive: " + zoom);
+        }
+        this.zoom = zoom;
+    }
+
+    public Resampler.Kernel getKernel() {
+        return kernel;
+    }
+
+    public void setKernel(Resampler.Kernel kernel) {
+        this.kernel = kernel;
+    }
 
     /**
-     *
-     * @param canvas
-     * @param graphicsContext
+     * Спрашивает ядро интерполяции и масштаб и ждет выделения области, центр которой затем растягивается
+     * на всю область
+     * @param canvas Холст, на котором выделяется область
+     * @param graphicsContext Контекст рисования холста
+     * @param viewport Окно просмотра, из документа которого берутся пиксели
+     * @param jobExecutor Исполнитель фоновых операций, в строку состояния которого выводятся сообщения
      */
-    public void onClickResizeImage(Canvas canvas, GraphicsContext graphicsContext) {
+    public void onClickResizeImage(Canvas canvas, GraphicsContext graphicsContext, Viewport viewport,
+                                   ImageJobExecutor jobExecutor) {
+        ChoiceDialog<Resampler.Kernel> dialog = new ChoiceDialog<>(kernel, Resampler.Kernel.values());
+        dialog.setTitle("Увеличение");
+        dialog.setHeaderText("Интерполяция и масштаб");
+        ComboBox<Double> zoomBox = new ComboBox<>();
+        zoomBox.getItems().addAll(ZOOM_CHOICES);
+        if (!zoomBox.getItems().contains(zoom)) {
+            zoomBox.getItems().add(zoom);
+        }
+        zoomBox.setValue(zoom);
+        HBox zoomRow = new HBox(10, new Label("Масштаб:"), zoomBox);
+        zoomRow.setAlignment(Pos.CENTER_LEFT);
+        dialog.getDialogPane().setContent(new VBox(10, dialog.getDialogPane().getContent(), zoomRow));
+        Optional<Resampler.Kernel> chosen = dialog.showAndWait();
+        if (chosen.isEmpty()) {
+            return;
+        }
+        setKernel(chosen.get());
+        setZoom(zoomBox.getValue());
+
         canvas.setOnMousePressed(event -> {
-            originalImage = null;
             if (event.getButton() == MouseButton.PRIMARY) {
                 startX = event.getX();
                 startY = event.getY();
                 isSelecting = true;
-                shouldEnlarge = false;
             }
         });
 
         canvas.setOnMouseReleased(event -> {
-            if (event.getButton() == MouseButton.PRIMARY) {
+            if (event.getButton() == MouseButton.PRIMARY && isSelecting) {
                 endX = event.getX();
                 endY = event.getY();
                 isSelecting = false;
-                shouldEnlarge = true;
-                originalImage = canvas.snapshot(null, null);
-                redrawCanvas(graphicsContext, canvas);
+                enlarge(graphicsContext, canvas, viewport, jobExecutor);
             }
             canvas.setOnMouseReleased(null);
             canvas.setOnMousePressed(null);
@@ -47,33 +110,57 @@ public class ResizeController {
             if (isSelecting) {
                 endX = event.getX();
                 endY = event.getY();
-                redrawCanvas(graphicsContext, canvas);
             }
         });
     }
 
     /**
-     * @param graphicsContext
-     * @param canvas
+     * Растягивает центр выделенной области в zoom раз на всю область. Из документа читается только
+     * прямоугольник-источник с запасом на радиус ядра, результат пишется в холст и попадает в документ
+     * при следующей фиксации изменений.
+     * @param graphicsContext Контекст рисования холста
+     * @param canvas Холст
+     * @param viewport Окно просмотра
+     * @param jobExecutor Исполнитель фоновых операций
      */
-    private void redrawCanvas(GraphicsContext graphicsContext, Canvas canvas) {
-        if (originalImage != null) {
-            double x = Math.min(startX, endX);
-            double y = Math.min(startY, endY);
-            double width = Math.abs(endX - startX);
-            double height = Math.abs(endY - startY);
-
-            if (shouldEnlarge) {
-                double scale = 1.5;
-                double scaledWidth = width / scale;
-                double scaledHeight = height / scale;
-                double scaledX = x - (scaledWidth - width) / 2;
-                double scaledY = y - (scaledHeight - height) / 2;
+    private void enlarge(GraphicsContext graphicsContext, Canvas canvas, Viewport viewport,
+                         ImageJobExecutor jobExecutor) {
+        if (viewport.getLevel() > 0) {
+            jobExecutor.showMessage("Увеличение работает только в масштабе 1:1");
+            return;
+        }
+        TiledDocument document = viewport.getDocument();
+        int visibleWidth = Math.min((int) canvas.getWidth(), document.getWidth() - viewport.getOriginX());
+        int visibleHeight = Math.min((int) canvas.getHeight(), document.getHeight() - viewport.getOriginY());
+        int x = Math.max(0, (int) Math.round(Math.min(startX, endX)));
+        int y = Math.max(0, (int) Math.round(Math.min(startY, endY)));
+        int width = Math.min(visibleWidth, (int) Math.round(Math.max(startX, endX))) - x;
+        int height = Math.min(visibleHeight, (int) Math.round(Math.max(startY, endY))) - y;
+        if (width <= 0 || height <= 0) {
+            return;
+        }
 
-                graphicsContext.drawImage(originalImage, scaledX, scaledY, scaledWidth, scaledHeight, x, y, width, height);
-            } else {
-                graphicsContext.drawImage(originalImage, 0, 0, canvas.getWidth(), canvas.getHeight());
-            }
+        MipmapPyramid pyramid = viewport.getPyramid();
+        int level = 0;
+        while (level + 1 < pyramid.getLevelCount() && zoom * (1 << (level + 1)) <= 1) {
+            level++;
         }
+        double levelZoom = zoom * (1 << level);
+        double sourceWidth = width / levelZoom;
+        double sourceHeight = height / levelZoom;
+        double sourceX = (viewport.getOriginX() + x + (width - width / zoom) / 2) / (1 << level);
+        double sourceY = (viewport.getOriginY() + y + (height - height / zoom) / 2) / (1 << level);
+        int margin = (int) Math.ceil(kernel.getRadius() * Math.max(1, 1 / levelZoom)) + 1;
+        int left = Math.max(0, (int) Math.floor(sourceX) - margin);
+        int top = Math.max(0, (int) Math.floor(sourceY) - margin);
+        int right = Math.min(pyramid.getLevelWidth(level), (int) Math.ceil(sourceX + sourceWidth) + margin);
+        int bottom = Math.min(pyramid.getLevelHeight(level), (int) Math.ceil(sourceY + sourceHeight) + margin);
+
+        int[] source = new int[(right - left) * (bottom - top)];
+        pyramid.readRegionAndWait(level, left, top, right - left, bottom - top, source, 0, right - left);
+        int[] enlarged = new Resampler(kernel, ForkJoinPool.commonPool()).resample(source, right - left,
+                bottom - top, sourceX - left, sourceY - top, sourceWidth, sourceHeight, width, height);
+        graphicsContext.getPixelWriter().setPixels(x, y, width, height, PixelFormat.getIntArgbInstance(),
+                enlarged, 0, width);
     }
 }
@@ -0,0 +1,184 @@
+package com.example.paint;
+
+/**
+ * Скалярная реализация {@link PixelKernels}: по одному пикселю за шаг. Используется, когда модуль
+ * jdk.incubator.vector не подключен, а также для хвостов строк в {@link VectorKernels}, поэтому
+ * вычисления здесь записаны в том же порядке, что и в векторной версии.
+ */
+public class ScalarKernels extends PixelKernels {
+    static final float INV_255 = 1f / 255;
+    /**
+     * 2^23: после сложения с ним целая часть неотрицательного float меньше 2^22 оказывается в младших битах
+     * мантиссы, а дробная округляется до ближайшего (половины - к четному)
+     */
+    static final float ROUNDING_BIAS = 0x1.0p23f;
+    static final int ROUNDING_BIAS_BITS = 0x4B000000;
+
+    @Override
+    public String getName() {
+        return "scalar";
+    }
+
+    @Override
+    public int getLanes() {
+        return 1;
+    }
+
+    @Override
+    public void blendOver(int[] source, int sourceOffset, int[] target, int targetOffset, int length) {
+        for (int i = 0; i < length; i++) {
+            target[targetOffset + i] = blendPixel(source[sourceOffset + i], target[targetOffset + i]);
+        }
+    }
+
+    /**
+     * Биты копятся в локальной переменной и записываются в маску по слову за раз. Сначала пиксель сравнивается
+     * со всеми целевыми цветами на точное равенство: внутри однотонной области на этом все и заканчивается,
+     * поэтому заливка с допуском там стоит столько же, сколько точная.
+     */
+    @Override
+    public void matchColors(int[] pixels, int offset, int length, int[] targetColors,
+                            FloodFill.ColorDistance distance, int limit, long[] mask, int bitOffset) {
+        int i = 0;
+        while (i < length) {
+            int bit = bitOffset + i;
+            int count = Math.min(length - i, 64 - (bit & 63));
+            long bits = 0;
+            for (int j = 0; j < count; j++) {
+                if (matchesAny(pixels[offset + i + j], targetColors, distance, limit)) {
+                    bits |= 1L << j;
+                }
+            }
+            mask[bit >>> 6] |= bits << bit;
+            i += count;
+        }
+    }
+
+    @Override
+    public void bilateralRow(int[] source, int[] output, int width, int y, int fromX, int toX,
+                             int halfDiameter, float[] spaceWeights, float[] colorWeights) {
+        for (int x = fromX; x < toX; x++) {
+            output[y * width + x] = bilateralPixel(source, width, x, y, halfDiameter, spaceWeights, colorWeights);
+        }
+    }
+
+    /**
+     * Наложение одного пикселя source поверх dest без предумножения альфы
+     */
+    static int blendPixel(int source, int dest) {
+        float sourceAlpha = (source >>> 24) * INV_255;
+        float destAlpha = (dest >>> 24) * INV_255 * (1 - sourceAlpha);
+        float alpha = sourceAlpha + destAlpha;
+        if (!(alpha > 0)) {
+            return 0;
+        }
+        int a = Math.min(round(alpha * 255), 255);
+        int r = blendChannel((source >> 16) & 0xFF, (dest >> 16) & 0xFF, sourceAlpha, destAlpha, alpha);
+        int g = blendChannel((source >> 8) & 0xFF, (dest >> 8) & 0xFF, sourceAlpha, destAlpha, alpha);
+        int b = blendChannel(source & 0xFF, dest & 0xFF, sourceAlpha, destAlpha, alpha);
+        return a << 24 | r << 16 | g << 8 | b;
+    }
+
+    private static int blendChannel(int source, int dest, float sourceAlpha, float destAlpha, float alpha) {
+        return Math.min(round((source * sourceAlpha + dest * destAlpha) / alpha), 255);
+    }
+
+    /**
+     * Округляет неотрицательное число меньше 2^22 до ближайшего целого. Векторная версия округляет так же
+     * через reinterpret, потому что преобразование float в int есть не во всех векторных наборах команд.
+     */
+    static int round(float value) {
+        return Float.floatToRawIntBits(value + ROUNDING_BIAS) - ROUNDING_BIAS_BITS;
+    }
+
+    /**
+     * Совпадает ли цвет хотя бы с одним из целевых с заданным допуском
+     */
+    static boolean matchesAny(int color, int[] targetColors, FloodFill.ColorDistance distance, int limit) {
+        for (int target : targetColors) {
+            if (color == target) {
+                return true;
+            }
+        }
+        if (distance == FloodFill.ColorDistance.EXACT) {
+            return false;
+        }
+        for (int target : targetColors) {
+            if (distance == FloodFill.ColorDistance.PER_CHANNEL ? channelsWithin(color, target, limit)
+                    : FloodFill.perceptualDistanceSquared(color, target) <= limit) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Отличается ли каждый канал не больше чем на limit. Все четыре канала проверяются одним сравнением,
+     * как в VectorKernels.matchChannels.
+     */
+    static boolean channelsWithin(int color, int targetColor, int limit) {
+        int bias = 0x01000100 + limit * 0x00010001;
+        int aboveHigh = (0x7FFF - 256 - 2 * limit) * 0x00010001;
+        int even = (color & 0x00FF00FF) + bias - (targetColor & 0x00FF00FF);
+        int odd = ((color >>> 8) & 0x00FF00FF) + bias - ((targetColor >>> 8) & 0x00FF00FF);
+        return ((even + 0x7F007F00) & ~(even + aboveHigh) & (odd + 0x7F007F00) & ~(odd + aboveHigh)
+                & 0x80008000) == 0x80008000;
+    }
+
+    /**
+     * Совпадает ли цвет с целевым с заданным допуском
+     */
+    static boolean matches(int color, int targetColor, FloodFill.ColorDistance distance, int limit) {
+        switch (distance) {
+            case PER_CHANNEL:
+                return FloodFill.channelDistance(color, targetColor) <= limit;
+            case PERCEPTUAL:
+                return FloodFill.perceptualDistanceSquared(color, targetColor) <= limit;
+            default:
+                return color == targetColor;
+        }
+    }
+
+    /**
+     * Билатеральный фильтр одного пикселя, окно целиком внутри изображения
+     */
+    static int bilateralPixel(int[] source, int width, int x, int y, int halfDiameter,
+                              float[] spaceWeights, float[] colorWeights) {
+        float weightSum = 0;
+        float redSum = 0;
+        float greenSum = 0;
+        float blueSum = 0;
+
+        int center = source[y * width + x];
+        int centerRed = (center >> 16) & 0xFF;
+        int centerGreen = (center >> 8) & 0xFF;
+        int centerBlue = center & 0xFF;
+
+        int k = 0;
+        for (int i = -halfDiameter; i <= halfDiameter; i++) {
+            int rowOffset = (y + i) * width + x;
+            for (int j = -halfDiameter; j <= halfDiameter; j++, k++) {
+                int current = source[rowOffset + j];
+                int red = (current >> 16) & 0xFF;
+                int green = (current >> 8) & 0xFF;
+                int blue = current & 0xFF;
+
+                int dr = centerRed - red;
+                int dg = centerGreen - green;
+                int db = centerBlue - blue;
+
+                float weight = spaceWeights[k] * colorWeights[dr * dr + dg * dg + db * db];
+                weightSum += weight;
+
+                redSum += weight * red;
+                greenSum += weight * green;
+                blueSum += weight * blue;
+            }
+        }
+
+        int red = Math.min(round(redSum / weightSum), 255);
+        int green = Math.min(round(greenSum / weightSum), 255);
+        int blue = Math.min(round(blueSum / weightSum), 255);
+        return 0xFF000000 | (red << 16) | (green << 8) | blue;
+    }
+}
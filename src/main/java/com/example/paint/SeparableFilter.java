@@ -0,0 +1,108 @@
+package com.example.paint;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Основа разделимых линейных фильтров. Изображение обрабатывается полосами по CHUNK_ROWS строк: строки полосы
+ * вместе с getHalo() строками над и под ней фильтруются по горизонтали в буфер float, затем столбцы буфера
+ * фильтруются по вертикали, и в target записываются только строки самой полосы. Промежуточный результат
+ * не округляется до 8 бит, поэтому однотонное изображение остается однотонным, а памяти сверх target
+ * нужно столько, сколько занимает одна полоса на поток.
+ * Столбцы обрабатываются блоками по COLUMN_BLOCK, чтобы читать и писать буфер строками.
+ * Каналы фильтруются в предумноженной альфе, поэтому у прозрачных краев не появляется темная кайма.
+ * Буферы выделяются один раз на полосу ParallelRows, внутренние циклы ничего не выделяют.
+ */
+public abstract class SeparableFilter implements ImageFilter {
+    /**
+     * Сколько столбцов вертикальный проход обрабатывает за раз
+     */
+    private static final int COLUMN_BLOCK = 16;
+
+    /**
+     * Высота полосы без учета запаса; запас строк пересчитывается для каждой полосы заново,
+     * поэтому полоса не ниже удвоенного запаса
+     */
+    private static final int CHUNK_ROWS = 64;
+
+    @Override
+    public void apply(int[] source, int[] target, int width, int height, ForkJoinPool pool, JobProgress progress) {
+        int halo = getHalo();
+        int chunkRows = Math.max(CHUNK_ROWS, 2 * halo);
+        ParallelRows.run(pool, 0, height, height, chunkRows, progress, (from, to) -> {
+            int bufferRows = Math.min(chunkRows, to - from) + 2 * halo;
+            float[] buffer = new float[Math.min(bufferRows, height) * width * 4];
+            float[] line = new float[width * 4];
+            float[][] columns = new float[COLUMN_BLOCK][Math.min(bufferRows, height) * 4];
+            float[] scratch = new float[Math.max(width, Math.min(bufferRows, height)) * 4];
+            for (int chunkFrom = from; chunkFrom < to; chunkFrom += chunkRows) {
+                int chunkTo = Math.min(chunkFrom + chunkRows, to);
+                int top = Math.max(0, chunkFrom - halo);
+                int rows = Math.min(height, chunkTo + halo) - top;
+                for (int y = 0; y < rows; y++) {
+                    int sourceOffset = (top + y) * width;
+                    for (int x = 0; x < width; x++) {
+                        unpack(source[sourceOffset + x], line, x * 4);
+                    }
+                    filterLine(line, width, scratch);
+                    System.arraycopy(line, 0, buffer, y * width * 4, width * 4);
+                }
+                for (int blockX = 0; blockX < width; blockX += COLUMN_BLOCK) {
+                    int blockColumns = Math.min(COLUMN_BLOCK, width - blockX);
+                    for (int y = 0; y < rows; y++) {
+                        int offset = (y * width + blockX) * 4;
+                        for (int c = 0; c < blockColumns; c++) {
+                            System.arraycopy(buffer, offset + c * 4, columns[c], y * 4, 4);
+                        }
+                    }
+                    for (int c = 0; c < blockColumns; c++) {
+                        filterLine(columns[c], rows, scratch);
+                    }
+                    for (int y = chunkFrom; y < chunkTo; y++) {
+                        for (int c = 0; c < blockColumns; c++) {
+                            target[y * width + blockX + c] = pack(columns[c], (y - top) * 4);
+                        }
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Фильтрует линию на месте
+     * @param line Каналы A, R, G, B предумноженные, по четыре значения на пиксель
+     * @param length Количество пикселей в линии
+     * @param scratch Рабочий буфер не короче line
+     */
+    protected abstract void filterLine(float[] line, int length, float[] scratch);
+
+    /**
+     * Раскладывает пиксель без предумножения в предумноженные каналы
+     */
+    private static void unpack(int argb, float[] line, int offset) {
+        float alpha = argb >>> 24;
+        float scale = alpha / 255f;
+        line[offset] = alpha;
+        line[offset + 1] = ((argb >> 16) & 0xFF) * scale;
+        line[offset + 2] = ((argb >> 8) & 0xFF) * scale;
+        line[offset + 3] = (argb & 0xFF) * scale;
+    }
+
+    /**
+     * Собирает пиксель без предумножения из предумноженных каналов
+     */
+    private static int pack(float[] line, int offset) {
+        float alpha = line[offset];
+        int a = clamp(alpha);
+        if (a == 0) {
+            return 0;
+        }
+        float scale = 255f / alpha;
+        return a << 24 | clamp(line[offset + 1] * scale) << 16 | clamp(line[offset + 2] * scale) << 8
+                | clamp(line[offset + 3] * scale);
+    }
+
+    private static int clamp(float value) {
+        int rounded = (int) (value + 0.5f);
+        return rounded < 0 ? 0 : Math.min(rounded, 255);
+    }
+}
@@ -0,0 +1,137 @@
+package com.example.paint;
+
+import javafx.geometry.Rectangle2D;
+import javafx.scene.canvas.GraphicsContext;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Сцена предпросмотра фигур, которые рисуются мышью. Каждое изменение отмечает затронутый прямоугольник
+ * как грязный, и при перерисовке очищается и заново растеризуется только объединение грязных прямоугольников.
+ * Границы фигур хранятся в дереве квадрантов, поэтому перерисовка находит фигуры в грязной области,
+ * не перебирая всю сцену. Готовая фигура убирается из сцены и растеризуется в документ.
+ */
+public class ShapeScene {
+    private final Map<DrawableShape, Long> drawOrder = new IdentityHashMap<>();
+    private final QuadTree<DrawableShape> index = new QuadTree<>();
+    private long nextOrder;
+    private double dirtyMinX = Double.POSITIVE_INFINITY;
+    private double dirtyMinY = Double.POSITIVE_INFINITY;
+    private double dirtyMaxX = Double.NEGATIVE_INFINITY;
+    private double dirtyMaxY = Double.NEGATIVE_INFINITY;
+
+    /**
+     * Изменение фигуры, после которого ее границы могут стать другими
+     */
+    public interface ShapeChange {
+        void apply();
+    }
+
+    /**
+     * Добавляет фигуру в сцену
+     * @param shape Фигура
+     */
+    public void add(DrawableShape shape) {
+        drawOrder.put(shape, nextOrder++);
+        reindex(shape);
+        markDirty(shape.getBounds());
+    }
+
+    /**
+     * Удаляет фигуру из сцены
+     * @param shape Фигура
+     */
+    public void remove(DrawableShape shape) {
+        if (drawOrder.remove(shape) != null) {
+            index.remove(shape);
+            markDirty(shape.getBounds());
+        }
+    }
+
+    /**
+     * Изменяет фигуру, отмечая грязными ее старые и новые границы
+     * @param shape Фигура, принадлежащая сцене
+     * @param change Изменение фигуры
+     */
+    public void update(DrawableShape shape, ShapeChange change) {
+        markDirty(shape.getBounds());
+        change.apply();
+        if (drawOrder.containsKey(shape)) {
+            reindex(shape);
+        }
+        markDirty(shape.getBounds());
+    }
+
+    /**
+     * Находит фигуры, границы которых пересекают область, в порядке отрисовки
+     */
+    private List<DrawableShape> query(Rectangle2D area) {
+        List<DrawableShape> result = new ArrayList<>();
+        index.query(area.getMinX(), area.getMinY(), area.getMaxX(), area.getMaxY(), result::add);
+        result.sort(Comparator.comparingLong(drawOrder::get));
+        return result;
+    }
+
+    /**
+     * Добавляет прямоугольник в грязную область
+     */
+    private void markDirty(Rectangle2D bounds) {
+        dirtyMinX = Math.min(dirtyMinX, bounds.getMinX());
+        dirtyMinY = Math.min(dirtyMinY, bounds.getMinY());
+        dirtyMaxX = Math.max(dirtyMaxX, bounds.getMaxX());
+        dirtyMaxY = Math.max(dirtyMaxY, bounds.getMaxY());
+    }
+
+    /**
+     * @return Грязная область или null, если перерисовывать нечего
+     */
+    private Rectangle2D getDirtyRegion() {
+        if (dirtyMaxX < dirtyMinX || dirtyMaxY < dirtyMinY) {
+            return null;
+        }
+        double minX = Math.floor(dirtyMinX);
+        double minY = Math.floor(dirtyMinY);
+        return new Rectangle2D(minX, minY, Math.ceil(dirtyMaxX) - minX, Math.ceil(dirtyMaxY) - minY);
+    }
+
+    /**
+     * Очищает грязную область и заново рисует в ней пересекающие ее фигуры.
+     * Остальная часть холста не затрагивается.
+     * @param graphicsContext Параметр, отвечающий за отрисовку
+     */
+    public void render(GraphicsContext graphicsContext) {
+        Rectangle2D dirty = getDirtyRegion();
+        if (dirty == null) {
+            return;
+        }
+        graphicsContext.save();
+        graphicsContext.beginPath();
+        graphicsContext.rect(dirty.getMinX(), dirty.getMinY(), dirty.getWidth(), dirty.getHeight());
+        graphicsContext.clip();
+        graphicsContext.clearRect(dirty.getMinX(), dirty.getMinY(), dirty.getWidth(), dirty.getHeight());
+        for (DrawableShape shape : query(dirty)) {
+            shape.draw(graphicsContext);
+        }
+        graphicsContext.restore();
+        clearDirty();
+    }
+
+    private void reindex(DrawableShape shape) {
+        Rectangle2D bounds = shape.getBounds();
+        index.insert(shape, bounds.getMinX(), bounds.getMinY(), bounds.getMaxX(), bounds.getMaxY());
+    }
+
+    /**
+     * Сбрасывает грязную область
+     */
+    private void clearDirty() {
+        dirtyMinX = Double.POSITIVE_INFINITY;
+        dirtyMinY = Double.POSITIVE_INFINITY;
+        dirtyMaxX = Double.NEGATIVE_INFINITY;
+        dirtyMaxY = Double.NEGATIVE_INFINITY;
+    }
+}
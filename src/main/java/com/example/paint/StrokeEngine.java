@@ -0,0 +1,145 @@
+package com.example.paint;
+
+import javafx.animation.AnimationTimer;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.shape.StrokeLineCap;
+import javafx.scene.shape.StrokeLineJoin;
+
+import java.util.Arrays;
+
+/**
+ * Движок штриха карандаша. События мыши только складываются в буфер, а рисование выполняется один раз
+ * за кадр JavaFX (AnimationTimer), так что частые события одного кадра рисуются вместе. На холст выводятся
+ * только новые отрезки: каждый отрезок между соседними точками - кривая Безье, построенная по сплайну
+ * Катмулла-Рома через четыре соседние точки, поэтому стоимость события не зависит от длины штриха,
+ * а сам штрих получается гладким. Отрезку нужна следующая точка, поэтому последний отрезок рисуется
+ * при отпускании кнопки.
+ */
+public class StrokeEngine {
+    /**
+     * Точки ближе этого расстояния к предыдущей отбрасываются
+     */
+    private static final double MIN_DISTANCE = 0.75;
+
+    private final GraphicsContext graphicsContext;
+    private final AnimationTimer timer = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            flush();
+        }
+    };
+    private double[] xs = new double[256];
+    private double[] ys = new double[256];
+    private int count;
+    private int drawnSegments;
+    private boolean active;
+
+    /**
+     * Конструктор с параметрами
+     * @param graphicsContext Контекст, на котором рисуется штрих
+     */
+    public StrokeEngine(GraphicsContext graphicsContext) {
+        this.graphicsContext = graphicsContext;
+    }
+
+    /**
+     * Начинает новый штрих
+     * @param x Координата по X
+     * @param y Координата по Y
+     */
+    public void begin(double x, double y) {
+        count = 0;
+        drawnSegments = 0;
+        active = true;
+        add(x, y);
+        timer.start();
+    }
+
+    /**
+     * Добавляет точку штриха. Рисование откладывается до ближайшего кадра.
+     * @param x Координата по X
+     * @param y Координата по Y
+     */
+    public void addPoint(double x, double y) {
+        if (!active) {
+            return;
+        }
+        double dx = x - xs[count - 1];
+        double dy = y - ys[count - 1];
+        if (dx * dx + dy * dy >= MIN_DISTANCE * MIN_DISTANCE) {
+            add(x, y);
+        }
+    }
+
+    /**
+     * Заканчивает штрих: дорисовывает последний отрезок, а штрих из одной точки рисует точкой
+     * @param x Координата по X
+     * @param y Координата по Y
+     */
+    public void end(double x, double y) {
+        if (!active) {
+            return;
+        }
+        addPoint(x, y);
+        timer.stop();
+        flush();
+        if (count == 1) {
+            drawSegment(xs[0], ys[0], xs[0], ys[0], xs[0], ys[0], xs[0], ys[0]);
+        } else {
+            int last = count - 1;
+            drawSegment(xs[Math.max(0, last - 2)], ys[Math.max(0, last - 2)], xs[last - 1], ys[last - 1],
+                    xs[last], ys[last], xs[last], ys[last]);
+        }
+        active = false;
+    }
+
+    /**
+     * Рисует все отрезки, для которых уже известна следующая точка
+     */
+    private void flush() {
+        // отрезок i соединяет точки i и i + 1 и опирается на точки i - 1 и i + 2
+        while (drawnSegments + 2 < count) {
+            int i = drawnSegments;
+            drawSegment(xs[Math.max(0, i - 1)], ys[Math.max(0, i - 1)], xs[i], ys[i], xs[i + 1], ys[i + 1],
+                    xs[i + 2], ys[i + 2]);
+            drawnSegments++;
+        }
+        // из нарисованных точек нужна только последняя: на нее опирается следующий отрезок
+        if (drawnSegments > 1024) {
+            int keep = count - (drawnSegments - 1);
+            System.arraycopy(xs, drawnSegments - 1, xs, 0, keep);
+            System.arraycopy(ys, drawnSegments - 1, ys, 0, keep);
+            count = keep;
+            drawnSegments = 1;
+        }
+    }
+
+    /**
+     * Рисует участок сплайна Катмулла-Рома между p1 и p2 как кубическую кривую Безье
+     */
+    private void drawSegment(double x0, double y0, double x1, double y1, double x2, double y2, double x3, double y3) {
+        graphicsContext.save();
+        graphicsContext.setLineCap(StrokeLineCap.ROUND);
+        graphicsContext.setLineJoin(StrokeLineJoin.ROUND);
+        graphicsContext.beginPath();
+        graphicsContext.moveTo(x1, y1);
+        if (x1 == x2 && y1 == y2) {
+            graphicsContext.lineTo(x2, y2);
+        } else {
+            graphicsContext.bezierCurveTo(x1 + (x2 - x0) / 6, y1 + (y2 - y0) / 6,
+                    x2 - (x3 - x1) / 6, y2 - (y3 - y1) / 6, x2, y2);
+        }
+        graphicsContext.stroke();
+        graphicsContext.restore();
+    }
+
+    private void add(double x, double y) {
+        if (count == xs.length) {
+            xs = Arrays.copyOf(xs, count * 2);
+            ys = Arrays.copyOf(ys, count * 2);
+        }
+        xs[count] = x;
+        ys[count] = y;
+        count++;
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.paint;
+
+/**
+ * Изменение прямоугольника документа (обычно одной плитки): его положение и пиксели до и после изменения
+ */
+public class TileChange {
+    private final int x;
+    private final int y;
+    private final int width;
+    private final int height;
+    private final int[] before;
+    private final int[] after;
+
+    /**
+     * Конструктор с параметрами
+     * @param x Левая граница в координатах документа
+     * @param y Верхняя граница в координатах документа
+     * @param width Ширина
+     * @param height Высота
+     * @param before Пиксели до изменения, построчно без промежутков
+     * @param after Пиксели после изменения, построчно без промежутков
+     */
+    public TileChange(int x, int y, int width, int height, int[] before, int[] after) {
+        this.x = x;
+        this.y = y;
+        this.width = width;
+        this.height = height;
+        this.before = before;
+        this.after = after;
+    }
+
+    public int getX() {
+        return x;
+    }
+
+    public int getY() {
+        return y;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int[] getBefore() {
+        return before;
+    }
+
+    public int[] getAfter() {
+        return after;
+    }
+}
@@ -0,0 +1,367 @@
+package com.example.paint;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * Документ, пиксели которого хранятся вне кучи Java в плитках (тайлах) фиксированного размера.
+ * Плитка выделяется только при первой записи в нее, до этого все ее пиксели равны цвету фона.
+ * Так можно держать изображения в гигапиксели без огромных массивов int[] в куче.
+ * Если у документа есть источник плиток (например, файл проекта), плитка при первом обращении
+ * загружается из него, так что открытие документа не читает пиксели, которые никто не смотрит.
+ * Пиксели хранятся в формате 0xAARRGGBB. Класс не потокобезопасен.
+ */
+public class TiledDocument implements Closeable {
+    /**
+     * Источник плиток, еще не загруженных в документ
+     */
+    public interface TileSource extends Closeable {
+        /**
+         * @return Есть ли в источнике данные плитки. Плитки без данных целиком залиты фоном.
+         */
+        boolean hasTile(int tileX, int tileY);
+
+        /**
+         * Копирует плитку из источника
+         * @param tileX Номер плитки по X
+         * @param tileY Номер плитки по Y
+         * @param dst Буфер из TILE_SIZE * TILE_SIZE пикселей
+         */
+        void readTile(int tileX, int tileY, IntBuffer dst);
+    }
+
+    /**
+     * Сторона плитки в пикселях
+     */
+    public static final int TILE_SIZE = 256;
+
+    private final int width;
+    private final int height;
+    private final int tilesX;
+    private final int tilesY;
+    private final int background;
+    private final IntBuffer[] tiles;
+    private final int[] tileVersions;
+    private TileSource source;
+    private volatile boolean closed;
+
+    /**
+     * Конструктор с параметрами
+     * @param width Ширина документа
+     * @param height Высота документа
+     * @param background Цвет фона 0xAARRGGBB
+     */
+    public TiledDocument(int width, int height, int background) {
+        this(width, height, background, null);
+    }
+
+    /**
+     * Конструктор с параметрами
+     * @param width Ширина документа
+     * @param height Высота документа
+     * @param background Цвет фона 0xAARRGGBB
+     * @param source Источник плиток или null
+     */
+    public TiledDocument(int width, int height, int background, TileSource source) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Document size must be positive: " + width + "x" + height);
+        }
+        this.width = width;
+        this.height = height;
+        this.background = background;
+        this.tilesX = (width + TILE_SIZE - 1) / TILE_SIZE;
+        this.tilesY = (height + TILE_SIZE - 1) / TILE_SIZE;
+        this.tiles = new IntBuffer[tilesX * tilesY];
+        this.tileVersions = new int[tilesX * tilesY];
+        this.source = source;
+    }
+
+    /**
+     * Создает документ из изображения, копируя его построчно полосами высотой в плитку.
+     * Пиксели изображений TYPE_INT_ARGB и TYPE_INT_RGB берутся прямо из их DataBufferInt, без getRGB.
+     * @param image Изображение
+     * @return Документ размером с изображение
+     */
+    public static TiledDocument fromImage(BufferedImage image) {
+        TiledDocument document = new TiledDocument(image.getWidth(), image.getHeight(), 0);
+        int type = image.getType();
+        if ((type == BufferedImage.TYPE_INT_ARGB || type == BufferedImage.TYPE_INT_RGB)
+                && image.getRaster().getParent() == null) {
+            int[] data = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+            if (data.length == image.getWidth() * image.getHeight()) {
+                if (type == BufferedImage.TYPE_INT_ARGB) {
+                    document.writeRegion(0, 0, image.getWidth(), image.getHeight(), data, 0, image.getWidth());
+                } else {
+                    int[] row = new int[image.getWidth()];
+                    for (int y = 0; y < image.getHeight(); y++) {
+                        for (int x = 0; x < row.length; x++) {
+                            row[x] = 0xFF000000 | data[y * row.length + x];
+                        }
+                        document.writeRegion(0, y, row.length, 1, row, 0, row.length);
+                    }
+                }
+                return document;
+            }
+        }
+        int[] band = new int[image.getWidth() * TILE_SIZE];
+        for (int y = 0; y < image.getHeight(); y += TILE_SIZE) {
+            int rows = Math.min(TILE_SIZE, image.getHeight() - y);
+            image.getRGB(0, y, image.getWidth(), rows, band, 0, image.getWidth());
+            document.writeRegion(0, y, image.getWidth(), rows, band, 0, image.getWidth());
+        }
+        return document;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getTilesX() {
+        return tilesX;
+    }
+
+    public int getTilesY() {
+        return tilesY;
+    }
+
+    public int getBackground() {
+        return background;
+    }
+
+    /**
+     * @return Количество выделенных плиток
+     */
+    public int getAllocatedTileCount() {
+        int count = 0;
+        for (IntBuffer tile : tiles) {
+            if (tile != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Возвращает пиксель документа
+     * @param x Координата по X
+     * @param y Координата по Y
+     * @return Цвет 0xAARRGGBB
+     */
+    public int getPixel(int x, int y) {
+        checkBounds(x, y, 1, 1);
+        IntBuffer tile = loadedTile(x / TILE_SIZE, y / TILE_SIZE);
+        return tile == null ? background : tile.get((y % TILE_SIZE) * TILE_SIZE + x % TILE_SIZE);
+    }
+
+    /**
+     * Изменяет пиксель документа
+     * @param x Координата по X
+     * @param y Координата по Y
+     * @param color Цвет 0xAARRGGBB
+     */
+    public void setPixel(int x, int y, int color) {
+        checkBounds(x, y, 1, 1);
+        tile(x / TILE_SIZE, y / TILE_SIZE).put((y % TILE_SIZE) * TILE_SIZE + x % TILE_SIZE, color);
+        tileVersions[(y / TILE_SIZE) * tilesX + x / TILE_SIZE]++;
+    }
+
+    /**
+     * Копирует прямоугольник документа в массив
+     * @param x Левая граница прямоугольника
+     * @param y Верхняя граница прямоугольника
+     * @param w Ширина прямоугольника
+     * @param h Высота прямоугольника
+     * @param dst Массив назначения
+     * @param offset Индекс в dst, куда попадает левый верхний пиксель
+     * @param stride Длина строки в dst
+     */
+    public void readRegion(int x, int y, int w, int h, int[] dst, int offset, int stride) {
+        checkBounds(x, y, w, h);
+        if (w == 0 || h == 0) {
+            return;
+        }
+        for (int ty = y / TILE_SIZE; ty <= (y + h - 1) / TILE_SIZE; ty++) {
+            int rowFrom = Math.max(y, ty * TILE_SIZE);
+            int rowTo = Math.min(y + h, (ty + 1) * TILE_SIZE);
+            for (int tx = x / TILE_SIZE; tx <= (x + w - 1) / TILE_SIZE; tx++) {
+                int colFrom = Math.max(x, tx * TILE_SIZE);
+                int colTo = Math.min(x + w, (tx + 1) * TILE_SIZE);
+                IntBuffer tile = loadedTile(tx, ty);
+                for (int row = rowFrom; row < rowTo; row++) {
+                    int dstIndex = offset + (row - y) * stride + colFrom - x;
+                    if (tile == null) {
+                        Arrays.fill(dst, dstIndex, dstIndex + colTo - colFrom, background);
+                    } else {
+                        tile.get((row - ty * TILE_SIZE) * TILE_SIZE + colFrom - tx * TILE_SIZE,
+                                dst, dstIndex, colTo - colFrom);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Копирует массив в прямоугольник документа
+     * @param x Левая граница прямоугольника
+     * @param y Верхняя граница прямоугольника
+     * @param w Ширина прямоугольника
+     * @param h Высота прямоугольника
+     * @param src Исходный массив
+     * @param offset Индекс в src левого верхнего пикселя
+     * @param stride Длина строки в src
+     */
+    public void writeRegion(int x, int y, int w, int h, int[] src, int offset, int stride) {
+        checkBounds(x, y, w, h);
+        if (w == 0 || h == 0) {
+            return;
+        }
+        for (int ty = y / TILE_SIZE; ty <= (y + h - 1) / TILE_SIZE; ty++) {
+            int rowFrom = Math.max(y, ty * TILE_SIZE);
+            int rowTo = Math.min(y + h, (ty + 1) * TILE_SIZE);
+            for (int tx = x / TILE_SIZE; tx <= (x + w - 1) / TILE_SIZE; tx++) {
+                int colFrom = Math.max(x, tx * TILE_SIZE);
+                int colTo = Math.min(x + w, (tx + 1) * TILE_SIZE);
+                IntBuffer tile = tile(tx, ty);
+                tileVersions[ty * tilesX + tx]++;
+                for (int row = rowFrom; row < rowTo; row++) {
+                    tile.put((row - ty * TILE_SIZE) * TILE_SIZE + colFrom - tx * TILE_SIZE,
+                            src, offset + (row - y) * stride + colFrom - x, colTo - colFrom);
+                }
+            }
+        }
+    }
+
+    /**
+     * Копирует документ целиком в новое изображение TYPE_INT_ARGB
+     * @return Изображение
+     */
+    public BufferedImage toImage() {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        readRegion(0, 0, width, height, pixels, 0, width);
+        return image;
+    }
+
+    /**
+     * Возвращает номер версии плитки, который увеличивается при каждой записи в нее.
+     * По нему подписчики (например, автосохранение) узнают, какие плитки изменились с прошлого раза.
+     * @param tileX Номер плитки по X
+     * @param tileY Номер плитки по Y
+     * @return Версия плитки, 0 - плитка не менялась с создания документа
+     */
+    public int getTileVersion(int tileX, int tileY) {
+        return tileVersions[tileY * tilesX + tileX];
+    }
+
+    /**
+     * Проверяет, отличается ли плитка от сплошного фона: выделена ли она или есть ли ее данные в источнике
+     * @param tileX Номер плитки по X
+     * @param tileY Номер плитки по Y
+     * @return false, если плитка целиком залита фоном
+     */
+    public boolean hasTileData(int tileX, int tileY) {
+        return tiles[tileY * tilesX + tileX] != null || (source != null && source.hasTile(tileX, tileY));
+    }
+
+    /**
+     * Копирует плитку целиком, не загружая ее в документ, если она еще лежит в источнике
+     * @param tileX Номер плитки по X
+     * @param tileY Номер плитки по Y
+     * @param dst Буфер из TILE_SIZE * TILE_SIZE пикселей
+     */
+    public void readTile(int tileX, int tileY, IntBuffer dst) {
+        IntBuffer tile = tiles[tileY * tilesX + tileX];
+        if (tile != null) {
+            dst.put(0, tile, 0, TILE_SIZE * TILE_SIZE);
+        } else if (source != null && source.hasTile(tileX, tileY)) {
+            source.readTile(tileX, tileY, dst);
+        } else {
+            for (int i = 0; i < TILE_SIZE * TILE_SIZE; i++) {
+                dst.put(i, background);
+            }
+        }
+    }
+
+    /**
+     * Закрывает источник плиток. Незагруженные плитки после этого читаются как фон.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        if (source != null) {
+            try {
+                source.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            source = null;
+        }
+    }
+
+    /**
+     * @return Был ли документ закрыт. Проверяется из фоновых потоков, которые читают плитки через readTile.
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Возвращает плитку, выделяя ее при необходимости
+     * @param tileX Номер плитки по X
+     * @param tileY Номер плитки по Y
+     * @return Буфер из TILE_SIZE * TILE_SIZE пикселей
+     */
+    public IntBuffer tile(int tileX, int tileY) {
+        int index = tileY * tilesX + tileX;
+        IntBuffer tile = tiles[index];
+        if (tile == null) {
+            tile = ByteBuffer.allocateDirect(TILE_SIZE * TILE_SIZE * Integer.BYTES)
+                    .order(ByteOrder.nativeOrder()).asIntBuffer();
+            if (source != null && source.hasTile(tileX, tileY)) {
+                source.readTile(tileX, tileY, tile);
+            } else if (background != 0) {
+                for (int i = 0; i < TILE_SIZE * TILE_SIZE; i++) {
+                    tile.put(i, background);
+                }
+            }
+            tiles[index] = tile;
+        }
+        return tile;
+    }
+
+    /**
+     * @return Плитка или null, если она еще не выделена или не загружена из источника
+     */
+    public IntBuffer peekTile(int tileX, int tileY) {
+        return tiles[tileY * tilesX + tileX];
+    }
+
+    /**
+     * Возвращает выделенную плитку, загружая ее из источника при необходимости
+     * @return Плитка или null, если она целиком залита фоном
+     */
+    private IntBuffer loadedTile(int tileX, int tileY) {
+        IntBuffer tile = tiles[tileY * tilesX + tileX];
+        if (tile == null && source != null && source.hasTile(tileX, tileY)) {
+            tile = tile(tileX, tileY);
+        }
+        return tile;
+    }
+
+    private void checkBounds(int x, int y, int w, int h) {
+        if (x < 0 || y < 0 || w < 0 || h < 0 || x + w > width || y + h > height) {
+            throw new IndexOutOfBoundsException("Region " + x + "," + y + " " + w + "x" + h
+                    + " is outside document " + width + "x" + height);
+        }
+    }
+}
@@ -0,0 +1,436 @@
+package com.example.paint;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * История отмены и повтора действий. Шаг истории хранит не снимок холста, а только измененные плитки документа
+ * в том виде, в каком они были до действия. Последние шаги лежат в памяти как есть, более старые сжимаются.
+ * Если история превышает бюджет памяти, самые старые шаги выгружаются в журнал на диске (если он задан)
+ * и перестают занимать кучу; шаги сверх лимита числа шагов или объема журнала удаляются.
+ */
+public class UndoHistory implements Viewport.DocumentListener {
+    /**
+     * Бюджет памяти по умолчанию, байт
+     */
+    public static final long DEFAULT_MEMORY_BUDGET = 256L * 1024 * 1024;
+
+    /**
+     * Количество шагов по умолчанию
+     */
+    public static final int DEFAULT_MAX_STEPS = 500;
+
+    /**
+     * Объем журнала на диске по умолчанию, байт
+     */
+    public static final long DEFAULT_JOURNAL_BUDGET = 4L * 1024 * 1024 * 1024;
+
+    /**
+     * Сколько последних шагов хранится несжатыми, чтобы их отмена не тратила время на распаковку
+     */
+    private static final int RECENT_STEPS = 8;
+
+    private final Deque<Step> undoSteps = new ArrayDeque<>();
+    private final Deque<Step> redoSteps = new ArrayDeque<>();
+    private final long memoryBudget;
+    private final int maxSteps;
+    private UndoJournal journal;
+    private long journalBudget;
+    private long usedBytes;
+
+    /**
+     * Конструктор по умолчанию
+     */
+    public UndoHistory() {
+        this(DEFAULT_MEMORY_BUDGET, DEFAULT_MAX_STEPS);
+    }
+
+    /**
+     * Конструктор с параметрами
+     * @param memoryBudget Сколько байт может занимать история
+     * @param maxSteps Сколько шагов можно отменить
+     */
+    public UndoHistory(long memoryBudget, int maxSteps) {
+        if (memoryBudget <= 0 || maxSteps <= 0) {
+            throw new IllegalArgumentException("Undo budget must be positive: " + memoryBudget + " bytes, "
+                    + maxSteps + " steps");
+        }
+        this.memoryBudget = memoryBudget;
+        this.maxSteps = maxSteps;
+    }
+
+    /**
+     * Включает выгрузку старых шагов в журнал на диске
+     * @param journal Журнал
+     * @param journalBudget Сколько байт может занимать журнал
+     */
+    public void setJournal(UndoJournal journal, long journalBudget) {
+        clear();
+        this.journal = journal;
+        this.journalBudget = journalBudget;
+    }
+
+    public boolean canUndo() {
+        return !undoSteps.isEmpty();
+    }
+
+    public boolean canRedo() {
+        return !redoSteps.isEmpty();
+    }
+
+    /**
+     * @return Сколько байт кучи сейчас занимает история
+     */
+    public long getUsedBytes() {
+        return usedBytes;
+    }
+
+    /**
+     * Записывает перенесенные в документ изменения как новый шаг. Шаги повтора при этом теряются.
+     * Если последний шаг записан тем же действием, изменения дописываются в него, и, пока история
+     * не укладывается в бюджет памяти, сразу сжимаются или выгружаются в журнал: такой шаг может быть
+     * размером с весь документ, а последний шаг целиком не выгружается.
+     * @param changes Измененные плитки
+     * @param action Действие, к которому относятся изменения, или null
+     */
+    @Override
+    public void changesCommitted(List<TileChange> changes, Object action) {
+        List<Patch> patches = new ArrayList<>(changes.size());
+        for (TileChange change : changes) {
+            patches.add(new Patch(change.getX(), change.getY(), change.getWidth(), change.getHeight(),
+                    change.getBefore()));
+        }
+        clearSteps(redoSteps);
+        Step last = undoSteps.peekFirst();
+        if (action != null && last != null && last.action == action) {
+            usedBytes -= last.sizeInBytes();
+            last.add(patches);
+            if (usedBytes + last.sizeInBytes() > memoryBudget) {
+                shrink(patches);
+            }
+            usedBytes += last.sizeInBytes();
+        } else {
+            push(undoSteps, new Step(patches, action));
+        }
+        evict();
+    }
+
+    /**
+     * История относится к конкретному документу, поэтому при его замене она очищается
+     * @param document Новый документ
+     */
+    @Override
+    public void documentReplaced(TiledDocument document) {
+        clear();
+    }
+
+    /**
+     * Отменяет последний шаг: возвращает в документ прежние плитки и перерисовывает окно просмотра
+     * @param viewport Окно просмотра с документом
+     * @return Был ли отменен шаг
+     */
+    public boolean undo(Viewport viewport) {
+        return move(undoSteps, redoSteps, viewport);
+    }
+
+    /**
+     * Повторяет последний отмененный шаг
+     * @param viewport Окно просмотра с документом
+     * @return Был ли повторен шаг
+     */
+    public boolean redo(Viewport viewport) {
+        return move(redoSteps, undoSteps, viewport);
+    }
+
+    /**
+     * Удаляет всю историю
+     */
+    public void clear() {
+        clearSteps(undoSteps);
+        clearSteps(redoSteps);
+    }
+
+    /**
+     * Применяет шаг из одного стека и кладет в другой стек шаг, который вернет текущие пиксели
+     */
+    private boolean move(Deque<Step> from, Deque<Step> to, Viewport viewport) {
+        Step step = from.pollFirst();
+        if (step == null) {
+            return false;
+        }
+        TiledDocument document = viewport.getDocument();
+        List<Patch> reverse = new ArrayList<>(step.patches.size());
+        for (Patch patch : step.patches) {
+            int[] current = new int[patch.width * patch.height];
+            document.readRegion(patch.x, patch.y, patch.width, patch.height, current, 0, patch.width);
+            document.writeRegion(patch.x, patch.y, patch.width, patch.height, patch.pixels(journal), 0,
+                    patch.width);
+            reverse.add(new Patch(patch.x, patch.y, patch.width, patch.height, current));
+        }
+        discard(step);
+        push(to, new Step(reverse, null));
+        evict();
+        viewport.present();
+        return true;
+    }
+
+    /**
+     * Кладет шаг на вершину стека и сжимает шаг, который только что перестал быть одним из последних
+     */
+    private void push(Deque<Step> steps, Step step) {
+        steps.addFirst(step);
+        usedBytes += step.sizeInBytes();
+        if (steps.size() > RECENT_STEPS) {
+            Iterator<Step> iterator = steps.iterator();
+            for (int i = 0; i < RECENT_STEPS; i++) {
+                iterator.next();
+            }
+            Step old = iterator.next();
+            usedBytes -= old.sizeInBytes();
+            old.compress();
+            usedBytes += old.sizeInBytes();
+        }
+    }
+
+    /**
+     * Приводит историю к бюджету: сначала выгружает в журнал самые старые шаги из памяти,
+     * а если журнала нет или он заполнен, удаляет самые старые шаги. Последний шаг не удаляется никогда.
+     */
+    private void evict() {
+        while (undoSteps.size() > maxSteps) {
+            discard(undoSteps.pollLast());
+        }
+        while (usedBytes > memoryBudget && spillOldest()) {
+            // выгружаем, пока куча не уложится в бюджет
+        }
+        while ((usedBytes > memoryBudget || (journal != null && journal.getUsedBytes() > journalBudget))
+                && undoSteps.size() + redoSteps.size() > 1) {
+            Deque<Step> victim = undoSteps.size() > 1 || redoSteps.isEmpty() ? undoSteps : redoSteps;
+            discard(victim.pollLast());
+        }
+    }
+
+    /**
+     * Выгружает в журнал самый старый шаг, еще лежащий в памяти. Шаги отмены выгружаются раньше шагов повтора.
+     * @return Был ли выгружен шаг
+     */
+    private boolean spillOldest() {
+        if (journal == null) {
+            return false;
+        }
+        Step oldest = oldestInMemory(undoSteps);
+        if (oldest == null) {
+            oldest = oldestInMemory(redoSteps);
+        }
+        if (oldest == null || undoSteps.peekFirst() == oldest || redoSteps.peekFirst() == oldest) {
+            return false;
+        }
+        usedBytes -= oldest.sizeInBytes();
+        try {
+            oldest.spill(journal);
+        } catch (IOException e) {
+            e.printStackTrace();
+            usedBytes += oldest.sizeInBytes();
+            return false;
+        }
+        usedBytes += oldest.sizeInBytes();
+        return true;
+    }
+
+    /**
+     * Сжимает прямоугольники, дописанные в последний шаг, и выгружает их в журнал, если он задан
+     */
+    private void shrink(List<Patch> patches) {
+        for (Patch patch : patches) {
+            if (journal == null) {
+                patch.compress();
+                continue;
+            }
+            try {
+                patch.spill(journal);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private static Step oldestInMemory(Deque<Step> steps) {
+        Iterator<Step> iterator = steps.descendingIterator();
+        while (iterator.hasNext()) {
+            Step step = iterator.next();
+            if (!step.isSpilled()) {
+                return step;
+            }
+        }
+        return null;
+    }
+
+    private void discard(Step step) {
+        usedBytes -= step.sizeInBytes();
+        step.release(journal);
+    }
+
+    private void clearSteps(Deque<Step> steps) {
+        for (Step step : steps) {
+            discard(step);
+        }
+        steps.clear();
+    }
+
+    /**
+     * Шаг истории: набор прямоугольников документа с пикселями, которые нужно вернуть
+     */
+    private static final class Step {
+        private final List<Patch> patches;
+        /**
+         * Действие, записавшее шаг, если оно может дописать в него еще изменения
+         */
+        private final Object action;
+        /**
+         * Ставится только после того, как в журнал записаны все прямоугольники шага: если запись прервалась
+         * ошибкой, шаг остается в памяти наполовину и выгружается заново при следующей попытке
+         */
+        private boolean spilled;
+
+        Step(List<Patch> patches, Object action) {
+            this.patches = patches;
+            this.action = action;
+        }
+
+        void add(List<Patch> more) {
+            patches.addAll(more);
+            spilled = false;
+        }
+
+        void compress() {
+            for (Patch patch : patches) {
+                patch.compress();
+            }
+        }
+
+        void spill(UndoJournal journal) throws IOException {
+            for (Patch patch : patches) {
+                patch.spill(journal);
+            }
+            spilled = true;
+        }
+
+        boolean isSpilled() {
+            return spilled || patches.isEmpty();
+        }
+
+        void release(UndoJournal journal) {
+            for (Patch patch : patches) {
+                patch.release(journal);
+            }
+        }
+
+        long sizeInBytes() {
+            long size = 0;
+            for (Patch patch : patches) {
+                size += patch.sizeInBytes();
+            }
+            return size;
+        }
+    }
+
+    /**
+     * Прямоугольник с пикселями. Пиксели хранятся как есть, сжатыми алгоритмом Deflate
+     * или сжатыми в журнале на диске.
+     */
+    private static final class Patch {
+        /**
+         * Приблизительный размер объектов, окружающих пиксели
+         */
+        private static final int OVERHEAD_BYTES = 64;
+
+        private final int x, y, width, height;
+        private int[] raw;
+        private byte[] compressed;
+        private UndoJournal.Entry spilled;
+
+        Patch(int x, int y, int width, int height, int[] raw) {
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+            this.raw = raw;
+        }
+
+        void compress() {
+            if (raw == null) {
+                return;
+            }
+            ByteBuffer bytes = ByteBuffer.allocate(raw.length * Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            bytes.asIntBuffer().put(raw);
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            deflater.setInput(bytes.array());
+            deflater.finish();
+            byte[] buffer = new byte[Math.max(64, raw.length)];
+            int length = 0;
+            while (!deflater.finished()) {
+                if (length == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+                length += deflater.deflate(buffer, length, buffer.length - length);
+            }
+            deflater.end();
+            compressed = Arrays.copyOf(buffer, length);
+            raw = null;
+        }
+
+        void spill(UndoJournal journal) throws IOException {
+            compress();
+            if (spilled == null) {
+                spilled = journal.append(compressed);
+                compressed = null;
+            }
+        }
+
+        void release(UndoJournal journal) {
+            if (spilled != null && journal != null) {
+                journal.release(spilled);
+                spilled = null;
+            }
+        }
+
+        int[] pixels(UndoJournal journal) {
+            if (raw != null) {
+                return raw;
+            }
+            byte[] bytes = new byte[width * height * Integer.BYTES];
+            Inflater inflater = new Inflater();
+            inflater.setInput(compressed != null ? compressed : journal.read(spilled));
+            try {
+                int length = 0;
+                while (length < bytes.length && !inflater.finished()) {
+                    length += inflater.inflate(bytes, length, bytes.length - length);
+                }
+            } catch (DataFormatException e) {
+                throw new IllegalStateException("Corrupted undo entry", e);
+            } finally {
+                inflater.end();
+            }
+            int[] pixels = new int[width * height];
+            ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().get(pixels);
+            return pixels;
+        }
+
+        long sizeInBytes() {
+            if (raw != null) {
+                return OVERHEAD_BYTES + (long) raw.length * Integer.BYTES;
+            }
+            return OVERHEAD_BYTES + (compressed != null ? compressed.length : 0);
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.example.paint;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Журнал отмены на диске. Записи только дописываются в конец сегментов - файлов фиксированного размера,
+ * отображенных в память через FileChannel.map, поэтому записанные данные не занимают кучу Java,
+ * а при чтении страницы подгружаются операционной системой. Сегмент, в котором не осталось живых записей,
+ * закрывается и удаляется. Класс не потокобезопасен.
+ * <p>
+ * Отображение в память нельзя снять явно: журнал только забывает ссылки на буфер закрытого сегмента
+ * и на сам сегмент в освобожденных записях, а отображение снимает сборщик мусора, когда доберется до буфера.
+ * До этого файл уже удален из каталога, но его место на диске и адресное пространство остаются занятыми.
+ * Чтобы не плодить такие сегменты, текущий сегмент, опустевший целиком, не закрывается, а пишется заново с начала.
+ */
+public class UndoJournal implements Closeable {
+    /**
+     * Размер одного сегмента журнала, байт
+     */
+    public static final int SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    private final Path directory;
+    private final List<Segment> segments = new ArrayList<>();
+    private Segment current;
+    private int nextSegmentId;
+
+    /**
+     * Конструктор с параметрами
+     * @param directory Каталог, в котором создаются файлы сегментов
+     */
+    public UndoJournal(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Создает журнал во временном каталоге
+     * @return Журнал
+     * @throws IOException Если каталог не удалось создать
+     */
+    public static UndoJournal createTemporary() throws IOException {
+        Path directory = Files.createTempDirectory("paint-undo");
+        directory.toFile().deleteOnExit();
+        return new UndoJournal(directory);
+    }
+
+    /**
+     * @return Сколько байт на диске занимают открытые сегменты. Сегменты считаются целиком, по
+     * {@link #SEGMENT_SIZE}, даже заполненные частично или с освобожденными записями. Закрытые сегменты
+     * не считаются, хотя их место освобождается только после того, как сборщик мусора снимет отображение.
+     */
+    public long getUsedBytes() {
+        return (long) segments.size() * SEGMENT_SIZE;
+    }
+
+    /**
+     * Дописывает запись в конец журнала
+     * @param data Данные записи
+     * @return Ссылка на запись
+     * @throws IOException Если не удалось создать новый сегмент
+     */
+    public Entry append(byte[] data) throws IOException {
+        if (data.length > SEGMENT_SIZE) {
+            throw new IllegalArgumentException("Journal entry is larger than a segment: " + data.length + " bytes");
+        }
+        if (current == null || SEGMENT_SIZE - current.writePosition < data.length) {
+            current = openSegment();
+        }
+        Entry entry = new Entry(current, current.writePosition, data.length);
+        current.buffer.put(current.writePosition, data);
+        current.writePosition += data.length;
+        current.liveEntries++;
+        return entry;
+    }
+
+    /**
+     * Читает запись из журнала
+     * @param entry Ссылка на запись
+     * @return Данные записи
+     */
+    public byte[] read(Entry entry) {
+        if (entry.segment == null || entry.segment.buffer == null) {
+            throw new IllegalStateException("Journal entry has already been released");
+        }
+        byte[] data = new byte[entry.length];
+        entry.segment.buffer.get(entry.offset, data);
+        return data;
+    }
+
+    /**
+     * Освобождает запись. Место в сегменте не переиспользуется, но сегмент удаляется,
+     * когда в нем не остается живых записей, а опустевший текущий сегмент пишется заново с начала.
+     * Читать запись после этого нельзя.
+     * @param entry Ссылка на запись
+     */
+    public void release(Entry entry) {
+        Segment segment = entry.segment;
+        if (segment == null) {
+            return;
+        }
+        entry.segment = null;
+        segment.liveEntries--;
+        if (segment.liveEntries > 0) {
+            return;
+        }
+        if (segment == current) {
+            segment.writePosition = 0;
+        } else {
+            closeSegment(segment);
+        }
+    }
+
+    /**
+     * Закрывает и удаляет все сегменты. Ссылки на записи после этого становятся недействительными.
+     */
+    @Override
+    public void close() {
+        for (Segment segment : new ArrayList<>(segments)) {
+            closeSegment(segment);
+        }
+        current = null;
+    }
+
+    private Segment openSegment() throws IOException {
+        Path path = directory.resolve("undo-" + nextSegmentId++ + ".journal");
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+        Segment segment = new Segment(channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, SEGMENT_SIZE));
+        segments.add(segment);
+        return segment;
+    }
+
+    private void closeSegment(Segment segment) {
+        segments.remove(segment);
+        segment.buffer = null;
+        try {
+            segment.channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Ссылка на запись журнала
+     */
+    public static final class Entry {
+        private Segment segment;
+        private final int offset;
+        private final int length;
+
+        private Entry(Segment segment, int offset, int length) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        public int getLength() {
+            return length;
+        }
+    }
+
+    private static final class Segment {
+        private final FileChannel channel;
+        private MappedByteBuffer buffer;
+        private int writePosition;
+        private int liveEntries;
+
+        Segment(FileChannel channel, MappedByteBuffer buffer) {
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+    }
+}
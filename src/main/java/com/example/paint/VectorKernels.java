@@ -0,0 +1,249 @@
+package com.example.paint;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Реализация {@link PixelKernels} на Vector API (jdk.incubator.vector). Ширина векторов берется
+ * предпочтительной для процессора: 8 пикселей на AVX2, 16 на AVX-512. Хвосты строк короче вектора
+ * обрабатываются методами {@link ScalarKernels}. Операции над каждой полосой выполняются в том же порядке,
+ * что и в скалярной версии, поэтому результат совпадает до бита.
+ * Класс загружается только через {@link PixelKernels#get()}, если модуль подключен.
+ */
+public class VectorKernels extends PixelKernels {
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+    /**
+     * Той же ширины, что и INTS: каналы переводятся во float через reinterpret
+     */
+    private static final VectorSpecies<Float> FLOATS = INTS.withLanes(float.class);
+
+    @Override
+    public String getName() {
+        return "vector " + INTS.vectorBitSize() + " bit";
+    }
+
+    @Override
+    public int getLanes() {
+        return INTS.length();
+    }
+
+    @Override
+    public void blendOver(int[] source, int sourceOffset, int[] target, int targetOffset, int length) {
+        int bound = INTS.loopBound(length);
+        int i = 0;
+        for (; i < bound; i += INTS.length()) {
+            IntVector sourcePixels = IntVector.fromArray(INTS, source, sourceOffset + i);
+            IntVector destPixels = IntVector.fromArray(INTS, target, targetOffset + i);
+            FloatVector sourceAlpha = toFloat(sourcePixels, 24).mul(ScalarKernels.INV_255);
+            FloatVector destAlpha = toFloat(destPixels, 24).mul(ScalarKernels.INV_255)
+                    .mul(sourceAlpha.neg().add(1f));
+            FloatVector alpha = sourceAlpha.add(destAlpha);
+            VectorMask<Float> visible = alpha.compare(VectorOperators.GT, 0f);
+
+            IntVector result = toInt(alpha.mul(255f)).lanewise(VectorOperators.LSHL, 24);
+            for (int shift = 16; shift >= 0; shift -= 8) {
+                FloatVector channel = toFloat(sourcePixels, shift).mul(sourceAlpha)
+                        .add(toFloat(destPixels, shift).mul(destAlpha)).div(alpha);
+                result = result.or(toInt(channel).lanewise(VectorOperators.LSHL, shift));
+            }
+            result.blend(0, visible.cast(INTS).not()).intoArray(target, targetOffset + i);
+        }
+        for (; i < length; i++) {
+            target[targetOffset + i] = ScalarKernels.blendPixel(source[sourceOffset + i], target[targetOffset + i]);
+        }
+    }
+
+    /**
+     * У каждого способа сравнения свой векторный цикл: если маску совпадений из разных ветвей сводить
+     * в одну переменную внутри цикла, компилятор перестает держать векторы в регистрах и создает объекты
+     * на каждой итерации. Маски целевых цветов объединяются, и в маску результата пишется одно слово
+     * на вектор пикселей.
+     */
+    @Override
+    public void matchColors(int[] pixels, int offset, int length, int[] targetColors,
+                            FloodFill.ColorDistance distance, int limit, long[] mask, int bitOffset) {
+        int bound = INTS.loopBound(length);
+        switch (distance) {
+            case PER_CHANNEL:
+                matchChannels(pixels, offset, bound, targetColors, limit, mask, bitOffset);
+                break;
+            case PERCEPTUAL:
+                matchPerceptual(pixels, offset, bound, targetColors, limit, mask, bitOffset);
+                break;
+            default:
+                matchExact(pixels, offset, bound, targetColors, mask, bitOffset);
+                break;
+        }
+        for (int i = bound; i < length; i++) {
+            if (ScalarKernels.matchesAny(pixels[offset + i], targetColors, distance, limit)) {
+                int bit = bitOffset + i;
+                mask[bit >>> 6] |= 1L << bit;
+            }
+        }
+    }
+
+    private static void matchExact(int[] pixels, int offset, int bound, int[] targetColors, long[] mask,
+                                   int bitOffset) {
+        for (int i = 0; i < bound; i += INTS.length()) {
+            IntVector colors = IntVector.fromArray(INTS, pixels, offset + i);
+            long matched = 0;
+            for (int target : targetColors) {
+                matched |= colors.compare(VectorOperators.EQ, target).toLong();
+            }
+            setBits(mask, bitOffset + i, matched, INTS.length());
+        }
+    }
+
+    /**
+     * Разница каналов проверяется сразу для всех четырех каналов пикселя: четные и нечетные каналы
+     * раскладываются по 16-битным полям, в каждом поле считается a + 256 + limit - b, и канал подходит,
+     * если это значение лежит в [256, 256 + 2 * limit]. Обе границы проверяются по старшему биту поля
+     * после сложения с константой, поэтому на пиксель приходится одно сравнение вместо четырех.
+     */
+    private static void matchChannels(int[] pixels, int offset, int bound, int[] targetColors, int limit,
+                                      long[] mask, int bitOffset) {
+        int atLeastLow = 0x7F007F00;
+        int aboveHigh = (0x7FFF - 256 - 2 * limit) * 0x00010001;
+        for (int i = 0; i < bound; i += INTS.length()) {
+            IntVector colors = IntVector.fromArray(INTS, pixels, offset + i);
+            IntVector evenChannels = colors.and(0x00FF00FF);
+            IntVector oddChannels = colors.lanewise(VectorOperators.LSHR, 8).and(0x00FF00FF);
+            long matched = 0;
+            for (int target : targetColors) {
+                IntVector even = evenChannels.add(0x01000100 + limit * 0x00010001 - (target & 0x00FF00FF));
+                IntVector odd = oddChannels.add(0x01000100 + limit * 0x00010001 - ((target >>> 8) & 0x00FF00FF));
+                matched |= even.add(atLeastLow).and(even.add(aboveHigh).not())
+                        .and(odd.add(atLeastLow)).and(odd.add(aboveHigh).not())
+                        .and(0x80008000)
+                        .compare(VectorOperators.EQ, 0x80008000).toLong();
+            }
+            setBits(mask, bitOffset + i, matched, INTS.length());
+        }
+    }
+
+    private static void matchPerceptual(int[] pixels, int offset, int bound, int[] targetColors, int limit,
+                                        long[] mask, int bitOffset) {
+        for (int i = 0; i < bound; i += INTS.length()) {
+            IntVector colors = IntVector.fromArray(INTS, pixels, offset + i);
+            long matched = 0;
+            for (int target : targetColors) {
+                matched |= perceptualDistanceSquared(colors, target).compare(VectorOperators.LE, limit).toLong();
+            }
+            setBits(mask, bitOffset + i, matched, INTS.length());
+        }
+    }
+
+    /**
+     * Каждая полоса копит суммы своего пикселя строки, соседи читаются подряд идущими векторами.
+     * Цветовые веса выбираются из таблицы по одному на полосу: таблица занимает сотни килобайт,
+     * и векторная выборка по индексам (gather) оказывается не быстрее обычного чтения.
+     */
+    @Override
+    public void bilateralRow(int[] source, int[] output, int width, int y, int fromX, int toX,
+                             int halfDiameter, float[] spaceWeights, float[] colorWeights) {
+        int lanes = INTS.length();
+        int[] indexes = new int[lanes];
+        float[] gathered = new float[lanes];
+        int x = fromX;
+        for (; x + lanes <= toX; x += lanes) {
+            IntVector center = IntVector.fromArray(INTS, source, y * width + x);
+            IntVector centerRed = channel(center, 16);
+            IntVector centerGreen = channel(center, 8);
+            IntVector centerBlue = channel(center, 0);
+            FloatVector weightSum = FloatVector.zero(FLOATS);
+            FloatVector redSum = weightSum;
+            FloatVector greenSum = weightSum;
+            FloatVector blueSum = weightSum;
+
+            int k = 0;
+            for (int i = -halfDiameter; i <= halfDiameter; i++) {
+                int rowOffset = (y + i) * width + x;
+                for (int j = -halfDiameter; j <= halfDiameter; j++, k++) {
+                    IntVector current = IntVector.fromArray(INTS, source, rowOffset + j);
+                    IntVector red = channel(current, 16);
+                    IntVector green = channel(current, 8);
+                    IntVector blue = channel(current, 0);
+                    IntVector dr = centerRed.sub(red);
+                    IntVector dg = centerGreen.sub(green);
+                    IntVector db = centerBlue.sub(blue);
+                    dr.mul(dr).add(dg.mul(dg)).add(db.mul(db)).intoArray(indexes, 0);
+                    for (int lane = 0; lane < lanes; lane++) {
+                        gathered[lane] = colorWeights[indexes[lane]];
+                    }
+
+                    FloatVector weight = FloatVector.fromArray(FLOATS, gathered, 0).mul(spaceWeights[k]);
+                    weightSum = weightSum.add(weight);
+                    redSum = redSum.add(weight.mul(toFloat(red)));
+                    greenSum = greenSum.add(weight.mul(toFloat(green)));
+                    blueSum = blueSum.add(weight.mul(toFloat(blue)));
+                }
+            }
+
+            toInt(redSum.div(weightSum)).lanewise(VectorOperators.LSHL, 16)
+                    .or(toInt(greenSum.div(weightSum)).lanewise(VectorOperators.LSHL, 8))
+                    .or(toInt(blueSum.div(weightSum)))
+                    .or(0xFF000000)
+                    .intoArray(output, y * width + x);
+        }
+        for (; x < toX; x++) {
+            output[y * width + x] = ScalarKernels.bilateralPixel(source, width, x, y, halfDiameter,
+                    spaceWeights, colorWeights);
+        }
+    }
+
+    /**
+     * Квадрат расстояния "redmean" по полосам, формула как в {@link FloodFill}
+     */
+    private static IntVector perceptualDistanceSquared(IntVector colors, int targetColor) {
+        int targetRed = (targetColor >> 16) & 0xFF;
+        IntVector red = channel(colors, 16);
+        IntVector redMean = red.add(targetRed).lanewise(VectorOperators.ASHR, 1);
+        IntVector da = channel(colors, 24).sub(targetColor >>> 24);
+        IntVector dr = red.sub(targetRed);
+        IntVector dg = channel(colors, 8).sub((targetColor >> 8) & 0xFF);
+        IntVector db = channel(colors, 0).sub(targetColor & 0xFF);
+        return redMean.add(512).mul(dr).mul(dr).lanewise(VectorOperators.ASHR, 8)
+                .add(dg.mul(dg).mul(4))
+                .add(redMean.neg().add(767).mul(db).mul(db).lanewise(VectorOperators.ASHR, 8))
+                .add(da.mul(da).mul(3));
+    }
+
+    /**
+     * Записывает count младших бит bits в маску, начиная с бита bit
+     */
+    private static void setBits(long[] mask, int bit, long bits, int count) {
+        int word = bit >>> 6;
+        int shift = bit & 63;
+        mask[word] |= bits << shift;
+        if (shift + count > 64) {
+            mask[word + 1] |= bits >>> (64 - shift);
+        }
+    }
+
+    private static IntVector channel(IntVector pixels, int shift) {
+        return pixels.lanewise(VectorOperators.LSHR, shift).and(0xFF);
+    }
+
+    /**
+     * Переводит канал в float без векторного преобразования типов: целое до 2^23, записанное в мантиссу
+     * числа 2^23, дает 2^23 + value
+     */
+    private static FloatVector toFloat(IntVector pixels, int shift) {
+        return toFloat(channel(pixels, shift));
+    }
+
+    private static FloatVector toFloat(IntVector channel) {
+        return channel.or(ScalarKernels.ROUNDING_BIAS_BITS).reinterpretAsFloats().sub(ScalarKernels.ROUNDING_BIAS);
+    }
+
+    /**
+     * Округляет каналы так же, как {@link ScalarKernels#round}, и ограничивает их сверху значением 255
+     */
+    private static IntVector toInt(FloatVector channel) {
+        return channel.add(ScalarKernels.ROUNDING_BIAS).reinterpretAsInts().sub(ScalarKernels.ROUNDING_BIAS_BITS)
+                .min(255);
+    }
+}
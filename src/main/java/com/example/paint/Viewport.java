@@ -0,0 +1,318 @@
+package com.example.paint;
+
+import javafx.application.Platform;
+import javafx.scene.SnapshotParameters;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.paint.Color;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Окно просмотра документа. Холст показывает прямоугольник документа, начинающийся в (originX, originY),
+ * а инструменты по-прежнему рисуют прямо на холсте. Метод commit переносит в документ только те плитки,
+ * которые изменились с момента последнего показа или переноса.
+ * <p>
+ * Документ можно показывать уменьшенным в 2^level раз: тогда пиксели берутся из {@link MipmapPyramid},
+ * а холст только показывает документ - изменения на нем в документ не переносятся. Поэтому перед рисованием
+ * контроллер возвращает масштаб 1:1.
+ */
+public final class Viewport {
+    /**
+     * Получатель изменений документа
+     */
+    public interface DocumentListener {
+        /**
+         * Вызывается после того, как изменения холста перенесены в документ
+         * @param changes Измененные плитки
+         * @param action Действие, к которому относятся изменения: изменения одного действия, записанные подряд,
+         *               составляют один шаг. null, если изменения сами по себе шаг.
+         */
+        void changesCommitted(List<TileChange> changes, Object action);
+
+        /**
+         * Вызывается после замены документа целиком
+         * @param document Новый документ
+         */
+        void documentReplaced(TiledDocument document);
+    }
+
+    private final List<DocumentListener> listeners = new ArrayList<>();
+    private final Canvas canvas;
+    private final ExecutorService pyramidBuilder = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "mipmap");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean refreshScheduled = new AtomicBoolean();
+    private TiledDocument document;
+    private MipmapPyramid pyramid;
+    private int level;
+    private int originX;
+    private int originY;
+    private int frameWidth;
+    private int frameHeight;
+    private int[] frame;
+
+    /**
+     * Конструктор с параметрами
+     * @param canvas Холст, на котором показывается документ
+     * @param document Документ
+     */
+    public Viewport(Canvas canvas, TiledDocument document) {
+        this.canvas = canvas;
+        this.document = document;
+        this.pyramid = createPyramid(document);
+        present();
+    }
+
+    public TiledDocument getDocument() {
+        return document;
+    }
+
+    public int getOriginX() {
+        return originX;
+    }
+
+    public int getOriginY() {
+        return originY;
+    }
+
+    /**
+     * @return Уровень уменьшения: 0 - пиксель в пиксель, 1 - вдвое и т.д.
+     */
+    public int getLevel() {
+        return level;
+    }
+
+    public MipmapPyramid getPyramid() {
+        return pyramid;
+    }
+
+    /**
+     * Подписывает получателя на изменения документа
+     * @param listener Получатель
+     */
+    public void addDocumentListener(DocumentListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Заменяет документ и показывает его левый верхний угол. Несохраненные изменения холста теряются,
+     * прежний документ закрывается.
+     * @param document Новый документ
+     */
+    public void setDocument(TiledDocument document) {
+        TiledDocument previous = this.document;
+        this.document = document;
+        pyramid.close();
+        pyramid = createPyramid(document);
+        level = 0;
+        originX = 0;
+        originY = 0;
+        present();
+        for (DocumentListener listener : listeners) {
+            listener.documentReplaced(document);
+        }
+        if (previous != document) {
+            previous.close();
+        }
+    }
+
+    /**
+     * Изменяет уровень уменьшения так, чтобы точка документа под заданной точкой холста осталась на месте.
+     * Перед переходом в уменьшенный вид изменения холста переносятся в документ.
+     * @param level Новый уровень, приводится к диапазону уровней пирамиды
+     * @param anchorX Точка холста по X
+     * @param anchorY Точка холста по Y
+     */
+    public void setLevel(int level, double anchorX, double anchorY) {
+        int newLevel = Math.max(0, Math.min(level, pyramid.getLevelCount() - 1));
+        if (newLevel == this.level) {
+            return;
+        }
+        commit();
+        long documentX = originX + (long) (anchorX * (1L << this.level));
+        long documentY = originY + (long) (anchorY * (1L << this.level));
+        this.level = newLevel;
+        originX = clamp((int) (documentX - (long) (anchorX * (1L << newLevel))), maxOriginX());
+        originY = clamp((int) (documentY - (long) (anchorY * (1L << newLevel))), maxOriginY());
+        present();
+    }
+
+    /**
+     * Сдвигает окно просмотра. Перед сдвигом изменения холста переносятся в документ.
+     * @param dx Сдвиг по X в пикселях холста
+     * @param dy Сдвиг по Y в пикселях холста
+     */
+    public void panBy(int dx, int dy) {
+        int newX = clamp(originX + (dx << level), maxOriginX());
+        int newY = clamp(originY + (dy << level), maxOriginY());
+        if (newX == originX && newY == originY) {
+            return;
+        }
+        commit();
+        originX = newX;
+        originY = newY;
+        present();
+    }
+
+    /**
+     * Изменяет размер холста: изменения переносятся в документ, после чего холст перерисовывается
+     * @param width Новая ширина холста
+     * @param height Новая высота холста
+     */
+    public void resize(double width, double height) {
+        commit();
+        canvas.setWidth(width);
+        canvas.setHeight(height);
+        originX = clamp(originX, maxOriginX());
+        originY = clamp(originY, maxOriginY());
+        present();
+    }
+
+    /**
+     * Рисует на холсте видимую часть документа. Область холста за пределами документа становится прозрачной.
+     * В уменьшенном виде еще не построенные плитки пирамиды временно заливаются фоном, и холст перерисовывается,
+     * когда они будут готовы.
+     */
+    public void present() {
+        frameWidth = (int) canvas.getWidth();
+        frameHeight = (int) canvas.getHeight();
+        frame = new int[frameWidth * frameHeight];
+        int visibleWidth = visibleWidth();
+        int visibleHeight = visibleHeight();
+        if (visibleWidth > 0 && visibleHeight > 0) {
+            pyramid.readRegion(level, originX >> level, originY >> level, visibleWidth, visibleHeight, frame, 0,
+                    frameWidth);
+        }
+        canvas.getGraphicsContext2D().clearRect(0, 0, canvas.getWidth(), canvas.getHeight());
+        canvas.getGraphicsContext2D().getPixelWriter().setPixels(0, 0, frameWidth, frameHeight,
+                PixelFormat.getIntArgbInstance(), frame, 0, frameWidth);
+    }
+
+    /**
+     * Переносит изменения холста в документ. Холст сравнивается с последним показанным кадром
+     * по плиткам документа, и записываются только отличающиеся плитки. В уменьшенном виде ничего не переносится.
+     * @return Количество перенесенных плиток
+     */
+    public int commit() {
+        int visibleWidth = visibleWidth();
+        int visibleHeight = visibleHeight();
+        if (level > 0 || visibleWidth <= 0 || visibleHeight <= 0) {
+            return 0;
+        }
+        int[] current = new int[frameWidth * frameHeight];
+        SnapshotParameters parameters = new SnapshotParameters();
+        parameters.setFill(Color.TRANSPARENT);
+        canvas.snapshot(parameters, null).getPixelReader().getPixels(0, 0, frameWidth, frameHeight,
+                PixelFormat.getIntArgbInstance(), current, 0, frameWidth);
+
+        int tileSize = TiledDocument.TILE_SIZE;
+        List<TileChange> changes = new ArrayList<>();
+        for (int ty = originY / tileSize; ty <= (originY + visibleHeight - 1) / tileSize; ty++) {
+            int top = Math.max(originY, ty * tileSize) - originY;
+            int bottom = Math.min(originY + visibleHeight, (ty + 1) * tileSize) - originY;
+            for (int tx = originX / tileSize; tx <= (originX + visibleWidth - 1) / tileSize; tx++) {
+                int left = Math.max(originX, tx * tileSize) - originX;
+                int right = Math.min(originX + visibleWidth, (tx + 1) * tileSize) - originX;
+                if (regionChanged(current, left, top, right, bottom)) {
+                    document.writeRegion(originX + left, originY + top, right - left, bottom - top,
+                            current, top * frameWidth + left, frameWidth);
+                    changes.add(new TileChange(originX + left, originY + top, right - left, bottom - top,
+                            copyRegion(frame, left, top, right, bottom),
+                            copyRegion(current, left, top, right, bottom)));
+                }
+            }
+        }
+        frame = current;
+        if (!changes.isEmpty()) {
+            for (DocumentListener listener : listeners) {
+                listener.changesCommitted(changes, null);
+            }
+        }
+        return changes.size();
+    }
+
+    /**
+     * Записывает в документ изменения, сделанные не на холсте (например, фильтром), и перерисовывает холст.
+     * Изменения холста нужно перенести в документ заранее.
+     * @param changes Измененные прямоугольники с пикселями после изменения
+     * @param action Действие, которое записывает свои изменения частями, или null, если изменения - один шаг.
+     *               Части одного действия, записанные подряд, подписчики объединяют в один шаг.
+     */
+    public void applyChanges(List<TileChange> changes, Object action) {
+        if (changes.isEmpty()) {
+            return;
+        }
+        for (TileChange change : changes) {
+            document.writeRegion(change.getX(), change.getY(), change.getWidth(), change.getHeight(),
+                    change.getAfter(), 0, change.getWidth());
+        }
+        for (DocumentListener listener : listeners) {
+            listener.changesCommitted(changes, action);
+        }
+        present();
+    }
+
+    private int[] copyRegion(int[] pixels, int left, int top, int right, int bottom) {
+        int width = right - left;
+        int[] region = new int[width * (bottom - top)];
+        for (int row = top; row < bottom; row++) {
+            System.arraycopy(pixels, row * frameWidth + left, region, (row - top) * width, width);
+        }
+        return region;
+    }
+
+    private boolean regionChanged(int[] current, int left, int top, int right, int bottom) {
+        for (int row = top; row < bottom; row++) {
+            int from = row * frameWidth + left;
+            int to = row * frameWidth + right;
+            if (Arrays.mismatch(frame, from, to, current, from, to) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Создает пирамиду документа, которая перерисовывает уменьшенный вид по мере готовности плиток
+     */
+    private MipmapPyramid createPyramid(TiledDocument document) {
+        return new MipmapPyramid(document, MipmapPyramid.DEFAULT_MEMORY_BUDGET, pyramidBuilder, () -> {
+            if (refreshScheduled.compareAndSet(false, true)) {
+                Platform.runLater(() -> {
+                    refreshScheduled.set(false);
+                    if (level > 0) {
+                        present();
+                    }
+                });
+            }
+        });
+    }
+
+    private int visibleWidth() {
+        return Math.min(frameWidth, pyramid.getLevelWidth(level) - (originX >> level));
+    }
+
+    private int visibleHeight() {
+        return Math.min(frameHeight, pyramid.getLevelHeight(level) - (originY >> level));
+    }
+
+    private int maxOriginX() {
+        return (int) Math.min(Integer.MAX_VALUE, document.getWidth() - ((long) canvas.getWidth() << level));
+    }
+
+    private int maxOriginY() {
+        return (int) Math.min(Integer.MAX_VALUE, document.getHeight() - ((long) canvas.getHeight() << level));
+    }
+
+    private static int clamp(int value, int max) {
+        return Math.max(0, Math.min(value, max));
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.paint;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Сверяет параллельную и быструю версии билатерального фильтра с эталонной
+ * {@link BilateralFilter#applyFilterSequential()}
+ */
+class BilateralFilterTest {
+    private static final int WIDTH = 67;
+    private static final int HEIGHT = 45;
+
+    @Test
+    void parallelMatchesReferenceExactly() {
+        BufferedImage input = noisyImage(1);
+        for (int diameter : new int[]{3, 5, 7}) {
+            BilateralFilter filter = new BilateralFilter(input, diameter, 40, 20);
+            int[] expected = pixels(filter.applyFilterSequential());
+            assertArrayEquals(expected, pixels(filter.applyFilter()), "diameter " + diameter);
+            assertArrayEquals(expected, pixels(filter.applyFilterParallel(new ForkJoinPool(3))),
+                    "diameter " + diameter + ", 3 threads");
+        }
+    }
+
+    @Test
+    void fastDiffersFromReferenceByRoundingOnly() {
+        BufferedImage input = noisyImage(2);
+        for (int diameter : new int[]{3, 5, 7, 9}) {
+            BilateralFilter filter = new BilateralFilter(input, diameter, 40, 20);
+            int[] expected = pixels(filter.applyFilterSequential());
+            int[] actual = pixels(filter.applyFilterFast(ForkJoinPool.commonPool(), JobProgress.NONE));
+            for (int i = 0; i < expected.length; i++) {
+                for (int shift = 0; shift < 24; shift += 8) {
+                    int difference = Math.abs(((expected[i] >> shift) & 0xFF) - ((actual[i] >> shift) & 0xFF));
+                    assertTrue(difference <= 1, "diameter " + diameter + ", pixel " + i + ": "
+                            + Integer.toHexString(expected[i]) + " vs " + Integer.toHexString(actual[i]));
+                }
+            }
+        }
+    }
+
+    /**
+     * Плавный градиент с шумом и резкой границей посередине, чтобы работали оба веса фильтра
+     */
+    private static BufferedImage noisyImage(long seed) {
+        Random random = new Random(seed);
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int base = x < WIDTH / 2 ? 40 : 200;
+                int red = clamp(base + y + random.nextInt(31) - 15);
+                int green = clamp(base - y + random.nextInt(31) - 15);
+                int blue = clamp(base + random.nextInt(61) - 30);
+                image.setRGB(x, y, red << 16 | green << 8 | blue);
+            }
+        }
+        return image;
+    }
+
+    private static int clamp(int value) {
+        return Math.max(0, Math.min(255, value));
+    }
+
+    private static int[] pixels(BufferedImage image) {
+        return image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+    }
+}
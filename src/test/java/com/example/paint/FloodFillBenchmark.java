@@ -0,0 +1,48 @@
+package com.example.paint;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Сравнивает время заливки с допуском и с точным сравнением на холсте 1030x872 со сглаженными линиями
+ * и окружностями, как после работы кистью и фигурами. Это не модульный тест: время зависит от машины,
+ * поэтому класс не входит в набор тестов и запускается вручную после mvn test-compile:
+ * <pre>
+ * java --add-modules jdk.incubator.vector -cp target/classes:target/test-classes com.example.paint.FloodFillBenchmark
+ * </pre>
+ * Для каждого способа сравнения берется лучшее время из нескольких повторов после прогрева.
+ */
+public class FloodFillBenchmark {
+    private static final int WIDTH = 1030;
+    private static final int HEIGHT = 872;
+    private static final int WARMUP_ROUNDS = 10;
+    private static final int ROUNDS = 40;
+
+    public static void main(String[] args) {
+        int[] canvas = FloodFillTest.strokedCanvas(WIDTH, HEIGHT);
+        FloodFill.ColorDistance[] distances = FloodFill.ColorDistance.values();
+        long[] best = new long[distances.length];
+        Arrays.fill(best, Long.MAX_VALUE);
+        long filled = 0;
+        for (int round = 0; round < WARMUP_ROUNDS + ROUNDS; round++) {
+            for (int d = 0; d < distances.length; d++) {
+                int[] pixels = canvas.clone();
+                FloodFill floodFill = new FloodFill(pixels, WIDTH, HEIGHT);
+                floodFill.setTolerance(distances[d], 48);
+                long start = System.nanoTime();
+                filled += floodFill.fill(1, 1, 0xFF123456, pixels[0], 0xFFF5F5F5, 0xFFFFFFFF);
+                long time = System.nanoTime() - start;
+                if (round >= WARMUP_ROUNDS) {
+                    best[d] = Math.min(best[d], time);
+                }
+            }
+        }
+        long exact = best[FloodFill.ColorDistance.EXACT.ordinal()];
+        System.out.printf(Locale.ROOT, "%s kernels, %d pixels filled in total%n", PixelKernels.get().getName(),
+                filled);
+        for (int d = 0; d < distances.length; d++) {
+            System.out.printf(Locale.ROOT, "%-12s %8.3f ms  x%.2f%n", distances[d], best[d] / 1e6,
+                    (double) best[d] / exact);
+        }
+    }
+}
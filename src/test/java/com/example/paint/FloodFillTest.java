@@ -0,0 +1,195 @@
+package com.example.paint;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Проверяет, что параллельная заливка закрашивает те же пиксели, что и последовательная, и что заливка
+ * с допуском закрашивает ту же область, что и попиксельное сравнение. Время заливки измеряет
+ * {@link FloodFillBenchmark}.
+ */
+class FloodFillTest {
+    private static final int FILL_COLOR = 0xFF123456;
+
+    @Test
+    void parallelMatchesSequentialForEveryDistance() {
+        int side = 2048;
+        assertTrue((long) side * side >= FloodFill.PARALLEL_THRESHOLD);
+        int[] image = noisyMaze(side, side, 7);
+        for (FloodFill.ColorDistance distance : FloodFill.ColorDistance.values()) {
+            int[] sequential = image.clone();
+            int[] parallel = image.clone();
+            FloodFill sequentialFill = fill(sequential, side, side, distance, false);
+            FloodFill parallelFill = fill(parallel, side, side, distance, true);
+            assertArrayEquals(sequential, parallel, distance.toString());
+            assertEquals(sequentialFill.getFilledBounds(), parallelFill.getFilledBounds(), distance.toString());
+        }
+    }
+
+    @Test
+    void fillStopsAtWalls() {
+        int[] pixels = new int[5 * 3];
+        Arrays.fill(pixels, 0xFFFFFFFF);
+        for (int y = 0; y < 3; y++) {
+            pixels[y * 5 + 2] = 0xFF000000;
+        }
+        FloodFill floodFill = new FloodFill(pixels, 5, 3);
+        assertEquals(6, floodFill.fill(0, 1, FILL_COLOR, 0xFFFFFFFF));
+        assertEquals(new Rectangle(0, 0, 2, 3), floodFill.getFilledBounds());
+        assertEquals(0xFFFFFFFF, pixels[3]);
+        assertEquals(0, floodFill.fill(2, 0, FILL_COLOR, 0xFFFFFFFF));
+    }
+
+    /**
+     * На холсте со сглаженными линиями заливка с допуском закрашивает ровно ту связную область, которую находит
+     * обход в ширину с попиксельным сравнением
+     */
+    @Test
+    void toleranceFillsTheSameRegionAsReference() {
+        int width = 301;
+        int height = 257;
+        int[] canvas = strokedCanvas(width, height);
+        int[] targets = {canvas[0], 0xFFF5F5F5, 0xFFFFFFFF};
+        for (FloodFill.ColorDistance distance : FloodFill.ColorDistance.values()) {
+            int[] pixels = canvas.clone();
+            FloodFill floodFill = new FloodFill(pixels, width, height);
+            floodFill.setTolerance(distance, 48);
+            int filled = floodFill.fill(1, 1, FILL_COLOR, targets);
+            boolean[] expected = referenceRegion(canvas, width, height, 1, 1, distance, 48, targets);
+            int expectedCount = 0;
+            for (int i = 0; i < pixels.length; i++) {
+                assertEquals(expected[i] ? FILL_COLOR : canvas[i], pixels[i], distance + ", pixel " + i);
+                expectedCount += expected[i] ? 1 : 0;
+            }
+            assertEquals(expectedCount, filled, distance.toString());
+        }
+    }
+
+    @Test
+    void toleranceStopsAtTheLimit() {
+        int[] row = {0xFFFFFFFF, 0xFFEBEBEB, 0xFFD7D7D7, 0xFFFFFFFF};
+        int[][] expected = {
+                {FILL_COLOR, 0xFFEBEBEB, 0xFFD7D7D7, 0xFFFFFFFF},
+                {FILL_COLOR, FILL_COLOR, 0xFFD7D7D7, 0xFFFFFFFF},
+                {FILL_COLOR, FILL_COLOR, 0xFFD7D7D7, 0xFFFFFFFF}};
+        for (FloodFill.ColorDistance distance : FloodFill.ColorDistance.values()) {
+            int[] pixels = row.clone();
+            FloodFill floodFill = new FloodFill(pixels, pixels.length, 1);
+            floodFill.setTolerance(distance, 24);
+            floodFill.fill(0, 0, FILL_COLOR, 0xFFFFFFFF);
+            assertArrayEquals(expected[distance.ordinal()], pixels, distance.toString());
+        }
+    }
+
+    private static FloodFill fill(int[] pixels, int width, int height, FloodFill.ColorDistance distance,
+                                  boolean parallel) {
+        FloodFill floodFill = new FloodFill(pixels, width, height);
+        floodFill.setParallel(parallel);
+        floodFill.setTolerance(distance, 24);
+        floodFill.fill(1, 1, FILL_COLOR, pixels[width + 1], 0xFFFFFFFF);
+        return floodFill;
+    }
+
+    /**
+     * Обход в ширину по четырем соседям с попиксельным сравнением цветов
+     */
+    private static boolean[] referenceRegion(int[] pixels, int width, int height, int x, int y,
+                                             FloodFill.ColorDistance distance, int tolerance, int[] targets) {
+        boolean[] region = new boolean[pixels.length];
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        if (!matches(pixels[y * width + x], distance, tolerance, targets)) {
+            return region;
+        }
+        region[y * width + x] = true;
+        queue.add(y * width + x);
+        while (!queue.isEmpty()) {
+            int index = queue.poll();
+            int px = index % width;
+            int py = index / width;
+            int[] neighbours = {px > 0 ? index - 1 : -1, px < width - 1 ? index + 1 : -1,
+                    py > 0 ? index - width : -1, py < height - 1 ? index + width : -1};
+            for (int neighbour : neighbours) {
+                if (neighbour >= 0 && !region[neighbour] && matches(pixels[neighbour], distance, tolerance, targets)) {
+                    region[neighbour] = true;
+                    queue.add(neighbour);
+                }
+            }
+        }
+        return region;
+    }
+
+    private static boolean matches(int color, FloodFill.ColorDistance distance, int tolerance, int[] targets) {
+        for (int target : targets) {
+            boolean match = switch (distance) {
+                case EXACT -> color == target;
+                case PER_CHANNEL -> FloodFill.channelDistance(color, target) <= tolerance;
+                case PERCEPTUAL -> FloodFill.perceptualDistanceSquared(color, target) <= 9 * tolerance * tolerance;
+            };
+            if (match) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Фон WHITESMOKE с черными сглаженными окружностями и линиями толщиной 2
+     */
+    static int[] strokedCanvas(int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(new Color(0xF5F5F5));
+        graphics.fillRect(0, 0, width, height);
+        graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        graphics.setColor(Color.BLACK);
+        graphics.setStroke(new BasicStroke(2));
+        Random random = new Random(1);
+        for (int i = 0; i < 40; i++) {
+            graphics.drawOval(random.nextInt(width), random.nextInt(height), 20 + random.nextInt(100),
+                    20 + random.nextInt(100));
+        }
+        for (int i = 0; i < 20; i++) {
+            graphics.drawLine(random.nextInt(width), random.nextInt(height), random.nextInt(width),
+                    random.nextInt(height));
+        }
+        graphics.dispose();
+        return image.getRGB(0, 0, width, height, null, 0, width);
+    }
+
+    /**
+     * Светлый фон с шумом, разделенный темными стенами с проходами. Каждая вторая полоса фона залита точно
+     * одним цветом, чтобы и точное сравнение находило большую связную область.
+     */
+    static int[] noisyMaze(int width, int height, long seed) {
+        Random random = new Random(seed);
+        int[] pixels = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int pixel;
+                if ((x % 64 == 0 && y % 256 > 16) || (y % 64 == 0 && x % 256 > 16)) {
+                    pixel = 0xFF202020;
+                } else if ((y >> 5) % 2 == 0 || random.nextInt(50) == 0) {
+                    pixel = 0xFFFFFFFF;
+                } else {
+                    int shade = 230 + random.nextInt(26);
+                    pixel = 0xFF000000 | shade << 16 | (shade - random.nextInt(8)) << 8 | shade;
+                }
+                pixels[y * width + x] = pixel;
+            }
+        }
+        return pixels;
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.paint;
+
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Сжимает изображения параллельно и читает результат стандартным декодером ImageIO
+ */
+class ParallelPngEncoderTest {
+    private static final int WIDTH = 301;
+    private static final int HEIGHT = 517;
+
+    @Test
+    void translucentImageRoundTrips() throws IOException {
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB);
+        Random random = new Random(1);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                image.setRGB(x, y, random.nextInt(3) == 0 ? random.nextInt() : 0x80000000 | x << 8 | y & 0xFF);
+            }
+        }
+        for (int level : new int[]{0, 1, 6, 9}) {
+            BufferedImage decoded = roundTrip(image, level);
+            assertTrue(decoded.getColorModel().hasAlpha(), "level " + level);
+            assertSamePixels(image, decoded, "level " + level);
+        }
+    }
+
+    @Test
+    void opaqueImageIsWrittenAsRgb() throws IOException {
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                image.setRGB(x, y, (x / 16 % 2 == y / 16 % 2) ? 0xFFFFFF : 0x336699);
+            }
+        }
+        BufferedImage decoded = roundTrip(image, 6);
+        assertFalse(decoded.getColorModel().hasAlpha());
+        assertSamePixels(image, decoded, "rgb");
+    }
+
+    @Test
+    void subimageRoundTrips() throws IOException {
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB);
+        Random random = new Random(2);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                image.setRGB(x, y, 0xFF000000 | random.nextInt(4) * 0x101010);
+            }
+        }
+        BufferedImage part = image.getSubimage(7, 130, 200, 260);
+        assertSamePixels(part, roundTrip(part, 6), "subimage");
+    }
+
+    private static BufferedImage roundTrip(BufferedImage image, int level) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        new ParallelPngEncoder(level, ForkJoinPool.commonPool()).write(image, output, JobProgress.NONE);
+        BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(output.toByteArray()));
+        assertEquals(image.getWidth(), decoded.getWidth());
+        assertEquals(image.getHeight(), decoded.getHeight());
+        return decoded;
+    }
+
+    private static void assertSamePixels(BufferedImage expected, BufferedImage actual, String message) {
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                assertEquals(expected.getRGB(x, y), actual.getRGB(x, y), message + ", pixel " + x + ", " + y);
+            }
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.paint;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+/**
+ * Проверяет, что {@link VectorKernels} дает тот же результат до бита, что и {@link ScalarKernels}, на длинах
+ * от нуля до нескольких векторов с любым хвостом и при смещениях, не кратных ширине вектора.
+ * Тест запускается с модулем jdk.incubator.vector (см. argLine в pom.xml).
+ */
+class PixelKernelsTest {
+    private final PixelKernels scalar = new ScalarKernels();
+    private final PixelKernels vector = new VectorKernels();
+    private final Random random = new Random(42);
+
+    @Test
+    void blendOverMatchesScalar() {
+        for (int length = 0; length <= 4 * vector.getLanes() + 3; length++) {
+            for (int offset : new int[]{0, 3}) {
+                int[] source = randomPixels(length + offset);
+                int[] target = randomPixels(length + offset);
+                int[] expected = target.clone();
+                int[] actual = target.clone();
+                scalar.blendOver(source, offset, expected, offset, length);
+                vector.blendOver(source, offset, actual, offset, length);
+                assertArrayEquals(expected, actual, "length " + length + ", offset " + offset);
+            }
+        }
+    }
+
+    @Test
+    void matchColorsAgreesWithPerPixelCheck() {
+        int[] limits = {0, 1, 10, 48, 255, 9 * 10 * 10};
+        for (FloodFill.ColorDistance distance : FloodFill.ColorDistance.values()) {
+            for (int limit : limits) {
+                for (int length = 0; length <= 4 * vector.getLanes() + 3; length++) {
+                    for (int bitOffset : new int[]{0, 5, 61}) {
+                        int[] pixels = randomPixels(length + 2);
+                        int[] targetColors = {pixels[random.nextInt(pixels.length)], random.nextInt()};
+                        for (int i = 0; i < pixels.length; i++) {
+                            if (random.nextBoolean()) {
+                                pixels[i] = near(targetColors[random.nextInt(targetColors.length)], limit);
+                            }
+                        }
+                        long[] initial = new long[(bitOffset + length + 63) / 64 + 1];
+                        for (int i = 0; i < initial.length; i++) {
+                            initial[i] = random.nextLong() & random.nextLong();
+                        }
+                        long[] expected = initial.clone();
+                        for (int i = 0; i < length; i++) {
+                            if (ScalarKernels.matches(pixels[2 + i], targetColors[0], distance, limit)
+                                    || ScalarKernels.matches(pixels[2 + i], targetColors[1], distance, limit)) {
+                                expected[(bitOffset + i) >>> 6] |= 1L << (bitOffset + i);
+                            }
+                        }
+                        String message = distance + ", limit " + limit + ", length " + length + ", bit offset "
+                                + bitOffset;
+                        long[] actual = initial.clone();
+                        scalar.matchColors(pixels, 2, length, targetColors, distance, limit, actual, bitOffset);
+                        assertArrayEquals(expected, actual, "scalar " + message);
+                        actual = initial.clone();
+                        vector.matchColors(pixels, 2, length, targetColors, distance, limit, actual, bitOffset);
+                        assertArrayEquals(expected, actual, "vector " + message);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void bilateralRowMatchesScalar() {
+        float[] colorWeights = new float[3 * 255 * 255 + 1];
+        for (int i = 0; i < colorWeights.length; i++) {
+            colorWeights[i] = (float) Math.exp(-i / (2.0 * 40 * 40));
+        }
+        for (int halfDiameter = 1; halfDiameter <= 4; halfDiameter++) {
+            int diameter = 2 * halfDiameter + 1;
+            float[] spaceWeights = new float[diameter * diameter];
+            for (int i = 0; i < diameter; i++) {
+                for (int j = 0; j < diameter; j++) {
+                    int dy = i - halfDiameter;
+                    int dx = j - halfDiameter;
+                    spaceWeights[i * diameter + j] = (float) Math.exp(-(dx * dx + dy * dy) / (2.0 * 20 * 20));
+                }
+            }
+            for (int inner = 1; inner <= 3 * vector.getLanes() + 2; inner++) {
+                int width = inner + 2 * halfDiameter;
+                int height = diameter + 1;
+                int[] source = randomPixels(width * height);
+                int[] expected = new int[source.length];
+                int[] actual = new int[source.length];
+                for (int y = halfDiameter; y < height - halfDiameter; y++) {
+                    scalar.bilateralRow(source, expected, width, y, halfDiameter, width - halfDiameter, halfDiameter,
+                            spaceWeights, colorWeights);
+                    vector.bilateralRow(source, actual, width, y, halfDiameter, width - halfDiameter, halfDiameter,
+                            spaceWeights, colorWeights);
+                }
+                assertArrayEquals(expected, actual, "diameter " + diameter + ", inner width " + inner);
+            }
+        }
+    }
+
+    /**
+     * Цвет, каналы которого отличаются от каналов color на случайную величину около limit, чтобы попадать
+     * по обе стороны границы допуска
+     */
+    private int near(int color, int limit) {
+        int spread = Math.min(limit, 255) + 2;
+        int result = 0;
+        for (int shift = 0; shift < 32; shift += 8) {
+            int channel = (color >>> shift) & 0xFF;
+            channel = Math.max(0, Math.min(255, channel + random.nextInt(2 * spread + 1) - spread));
+            result |= channel << shift;
+        }
+        return result;
+    }
+
+    /**
+     * Случайные пиксели, среди которых часто встречаются полностью прозрачные и непрозрачные
+     */
+    private int[] randomPixels(int length) {
+        int[] pixels = new int[length];
+        for (int i = 0; i < length; i++) {
+            int alpha = switch (random.nextInt(4)) {
+                case 0 -> 0;
+                case 1 -> 0xFF;
+                default -> random.nextInt(256);
+            };
+            pixels[i] = alpha << 24 | random.nextInt(1 << 24);
+        }
+        return pixels;
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.paint;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Записывает документ в файл проекта и открывает его снова
+ */
+class ProjectFileTest {
+    private static final int WIDTH = 700;
+    private static final int HEIGHT = 300;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void documentRoundTrips() throws IOException {
+        Path path = directory.resolve("picture." + ProjectFile.EXTENSION);
+        int[] expected;
+        try (TiledDocument document = new TiledDocument(WIDTH, HEIGHT, 0xFFFFFFFF)) {
+            paint(document, 1, 10, 20, 300, 100);
+            paint(document, 2, 600, 260, 100, 40);
+            expected = pixels(document);
+            ProjectFile.write(document, path);
+        }
+
+        try (TiledDocument opened = ProjectFile.open(path)) {
+            assertEquals(WIDTH, opened.getWidth());
+            assertEquals(HEIGHT, opened.getHeight());
+            assertEquals(0xFFFFFFFF, opened.getBackground());
+            assertEquals(0, opened.getAllocatedTileCount());
+            assertTrue(opened.hasTileData(0, 0));
+            assertFalse(opened.hasTileData(1, 1));
+            assertArrayEquals(expected, pixels(opened));
+        }
+    }
+
+    @Test
+    void openedDocumentCanBeSavedOverItsFile() throws IOException {
+        Path path = directory.resolve("edited." + ProjectFile.EXTENSION);
+        try (TiledDocument document = new TiledDocument(WIDTH, HEIGHT, 0)) {
+            paint(document, 3, 0, 0, WIDTH, HEIGHT);
+            ProjectFile.write(document, path);
+        }
+
+        int[] expected;
+        try (TiledDocument opened = ProjectFile.open(path)) {
+            paint(opened, 4, 250, 50, 20, 200);
+            expected = pixels(opened);
+            ProjectFile.write(opened, path);
+            assertArrayEquals(expected, pixels(opened));
+        }
+        try (TiledDocument reopened = ProjectFile.open(path)) {
+            assertArrayEquals(expected, pixels(reopened));
+        }
+    }
+
+    @Test
+    void tilesFilledWithBackgroundAreNotWritten() throws IOException {
+        Path path = directory.resolve("erased." + ProjectFile.EXTENSION);
+        try (TiledDocument document = new TiledDocument(WIDTH, HEIGHT, 0xFF336699)) {
+            paint(document, 5, 0, 0, WIDTH, HEIGHT);
+            int[] background = new int[TiledDocument.TILE_SIZE * TiledDocument.TILE_SIZE];
+            Arrays.fill(background, 0xFF336699);
+            document.writeRegion(TiledDocument.TILE_SIZE, 0, TiledDocument.TILE_SIZE, TiledDocument.TILE_SIZE,
+                    background, 0, TiledDocument.TILE_SIZE);
+            ProjectFile.write(document, path);
+        }
+        try (TiledDocument opened = ProjectFile.open(path)) {
+            assertTrue(opened.hasTileData(0, 0));
+            assertFalse(opened.hasTileData(1, 0));
+            assertTrue(opened.hasTileData(2, 0));
+            assertEquals(0xFF336699, pixels(opened)[TiledDocument.TILE_SIZE + 10]);
+        }
+    }
+
+    @Test
+    void otherFilesAreRejected() throws IOException {
+        Path path = directory.resolve("not-a-project." + ProjectFile.EXTENSION);
+        Files.write(path, "just some text, long enough to fill the header of a project file"
+                .getBytes(StandardCharsets.US_ASCII));
+        assertThrows(IOException.class, () -> ProjectFile.open(path));
+    }
+
+    private static void paint(TiledDocument document, long seed, int x, int y, int width, int height) {
+        Random random = new Random(seed);
+        int[] pixels = new int[width * height];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = random.nextInt();
+        }
+        document.writeRegion(x, y, width, height, pixels, 0, width);
+    }
+
+    private static int[] pixels(TiledDocument document) {
+        int[] pixels = new int[document.getWidth() * document.getHeight()];
+        document.readRegion(0, 0, document.getWidth(), document.getHeight(), pixels, 0, document.getWidth());
+        return pixels;
+    }
+}
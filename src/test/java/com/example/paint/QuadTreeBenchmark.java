@@ -0,0 +1,133 @@
+package com.example.paint;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Измеряет {@link QuadTree} на сценах из 10 тысяч, 100 тысяч и миллиона фигур: построение, поиск по точке
+ * (выбор фигуры под курсором), поиск по окну размером с холст (отсечение невидимого) и перемещение фигуры.
+ * Для сравнения те же запросы выполняются перебором всех фигур. Это не модульный тест: время зависит
+ * от машины, поэтому класс не входит в набор тестов и запускается вручную после mvn test-compile:
+ * <pre>
+ * java -cp target/classes:target/test-classes com.example.paint.QuadTreeBenchmark
+ * </pre>
+ * Фигуры похожи на технический чертеж: в основном мелкие окружности и прямоугольники, изредка крупные рамки.
+ */
+public class QuadTreeBenchmark {
+    private static final double WORLD = 100_000;
+    private static final double WINDOW = 1_000;
+    private static final int QUERIES = 2_000;
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) {
+        System.out.printf(Locale.ROOT, "%9s %10s %12s %12s %12s %12s %12s%n", "shapes", "build ms",
+                "point ns", "scan ns", "window ns", "scan ns", "move ns");
+        long sink = 0;
+        for (int count : new int[]{10_000, 100_000, 1_000_000}) {
+            Random random = new Random(count);
+            List<Shape> shapes = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                shapes.add(randomShape(random));
+            }
+            double[] points = new double[QUERIES * 2];
+            for (int i = 0; i < points.length; i++) {
+                points[i] = random.nextDouble() * WORLD;
+            }
+
+            long build = Long.MAX_VALUE;
+            long point = Long.MAX_VALUE;
+            long window = Long.MAX_VALUE;
+            long move = Long.MAX_VALUE;
+            long pointScan = Long.MAX_VALUE;
+            long windowScan = Long.MAX_VALUE;
+            for (int round = 0; round < ROUNDS; round++) {
+                long start = System.nanoTime();
+                QuadTree<Shape> tree = new QuadTree<>();
+                for (Shape shape : shapes) {
+                    tree.insert(shape, shape.minX, shape.minY, shape.maxX, shape.maxY);
+                }
+                build = Math.min(build, System.nanoTime() - start);
+
+                start = System.nanoTime();
+                for (int q = 0; q < QUERIES; q++) {
+                    sink += tree.queryPoint(points[2 * q], points[2 * q + 1]).size();
+                }
+                point = Math.min(point, (System.nanoTime() - start) / QUERIES);
+
+                long[] found = new long[1];
+                start = System.nanoTime();
+                for (int q = 0; q < QUERIES; q++) {
+                    double x = points[2 * q];
+                    double y = points[2 * q + 1];
+                    tree.query(x, y, x + WINDOW, y + WINDOW, shape -> found[0]++);
+                }
+                window = Math.min(window, (System.nanoTime() - start) / QUERIES);
+                sink += found[0];
+
+                start = System.nanoTime();
+                for (int q = 0; q < QUERIES; q++) {
+                    Shape shape = shapes.get(random.nextInt(count));
+                    double dx = points[2 * q] / WORLD * 100 - 50;
+                    tree.insert(shape, shape.minX + dx, shape.minY, shape.maxX + dx, shape.maxY);
+                }
+                move = Math.min(move, (System.nanoTime() - start) / QUERIES);
+
+                // перебор медленный, поэтому на него уходит меньше запросов
+                int scans = Math.max(20, QUERIES * 10_000 / count);
+                start = System.nanoTime();
+                for (int q = 0; q < scans; q++) {
+                    sink += scan(shapes, points[2 * q], points[2 * q + 1], points[2 * q], points[2 * q + 1]);
+                }
+                pointScan = Math.min(pointScan, (System.nanoTime() - start) / scans);
+                start = System.nanoTime();
+                for (int q = 0; q < scans; q++) {
+                    double x = points[2 * q];
+                    double y = points[2 * q + 1];
+                    sink += scan(shapes, x, y, x + WINDOW, y + WINDOW);
+                }
+                windowScan = Math.min(windowScan, (System.nanoTime() - start) / scans);
+            }
+            System.out.printf(Locale.ROOT, "%9d %10.1f %12d %12d %12d %12d %12d%n", count, build / 1e6, point,
+                    pointScan, window, windowScan, move);
+        }
+        System.out.println("checksum " + sink);
+    }
+
+    private static int scan(List<Shape> shapes, double minX, double minY, double maxX, double maxY) {
+        int found = 0;
+        for (Shape shape : shapes) {
+            if (shape.minX <= maxX && shape.maxX >= minX && shape.minY <= maxY && shape.maxY >= minY) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    private static Shape randomShape(Random random) {
+        double x = random.nextDouble() * WORLD;
+        double y = random.nextDouble() * WORLD;
+        if (random.nextInt(1000) == 0) {
+            double size = random.nextDouble() * WORLD / 10;
+            return new Shape(x, y, x + size, y + size);
+        }
+        double width = 5 + random.nextDouble() * 60;
+        double height = random.nextBoolean() ? width : 5 + random.nextDouble() * 60;
+        return new Shape(x, y, x + width, y + height);
+    }
+
+    /**
+     * Границы фигуры: окружности или прямоугольника
+     */
+    private static final class Shape {
+        private final double minX, minY, maxX, maxY;
+
+        Shape(double minX, double minY, double maxX, double maxY) {
+            this.minX = minX;
+            this.minY = minY;
+            this.maxX = maxX;
+            this.maxY = maxY;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.example.paint;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Сверяет поиск в {@link QuadTree} с полным перебором после вставок, перемещений и удалений.
+ * Время поиска на 10 тысячах, 100 тысячах и миллионе фигур измеряет {@link QuadTreeBenchmark}.
+ */
+class QuadTreeTest {
+    private static final double WORLD = 100_000;
+
+    @Test
+    void smallSceneMatchesBruteForce() {
+        checkAgainstBruteForce(2_000, 200);
+    }
+
+    @Test
+    void largerSceneMatchesBruteForce() {
+        checkAgainstBruteForce(20_000, 50);
+    }
+
+    @Test
+    void pointQueryFindsContainingBounds() {
+        QuadTree<Box> tree = new QuadTree<>();
+        Box small = new Box(10, 10, 20, 20);
+        Box large = new Box(0, 0, 1000, 1000);
+        Box far = new Box(500, 500, 510, 510);
+        for (Box box : List.of(small, large, far)) {
+            tree.insert(box, box.minX, box.minY, box.maxX, box.maxY);
+        }
+        List<Box> found = tree.queryPoint(15, 15);
+        assertEquals(2, found.size());
+        assertTrue(found.contains(small) && found.contains(large));
+        assertEquals(List.of(large), tree.queryPoint(300, 300));
+        assertTrue(tree.queryPoint(2000, 2000).isEmpty());
+    }
+
+    @Test
+    void removeKeepsOtherItemsOfTheSameNode() {
+        QuadTree<Box> tree = new QuadTree<>();
+        List<Box> boxes = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            Box box = new Box(i, i, i + 1, i + 1);
+            boxes.add(box);
+            tree.insert(box, box.minX, box.minY, box.maxX, box.maxY);
+        }
+        assertTrue(tree.remove(boxes.get(1)));
+        assertFalse(tree.remove(boxes.get(1)));
+        assertTrue(tree.remove(boxes.get(4)));
+        assertTrue(tree.remove(boxes.get(0)));
+        List<Box> found = new ArrayList<>();
+        tree.query(-10, -10, 10, 10, found::add);
+        assertEquals(2, found.size());
+        assertTrue(found.contains(boxes.get(2)) && found.contains(boxes.get(3)));
+        assertEquals(2, tree.size());
+    }
+
+    /**
+     * Заполняет дерево случайными прямоугольниками (мелкими и иногда огромными), перемещает и удаляет
+     * часть из них, после чего каждый запрос должен вернуть ровно то же, что и перебор всех прямоугольников
+     */
+    private static void checkAgainstBruteForce(int count, int queries) {
+        Random random = new Random(count);
+        QuadTree<Box> tree = new QuadTree<>();
+        List<Box> boxes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Box box = randomBox(random);
+            boxes.add(box);
+            tree.insert(box, box.minX, box.minY, box.maxX, box.maxY);
+        }
+
+        Collections.shuffle(boxes, random);
+        int moved = count / 10;
+        for (int i = 0; i < moved; i++) {
+            assertTrue(tree.remove(boxes.get(i)));
+            Box box = randomBox(random);
+            boxes.set(i, box);
+            tree.insert(box, box.minX, box.minY, box.maxX, box.maxY);
+        }
+        int removed = count / 4;
+        for (int i = 0; i < removed; i++) {
+            Box box = boxes.remove(boxes.size() - 1);
+            assertTrue(tree.remove(box));
+        }
+        assertEquals(boxes.size(), tree.size());
+
+        for (int q = 0; q < queries; q++) {
+            double minX = random.nextDouble() * WORLD * 1.2 - WORLD * 0.1;
+            double minY = random.nextDouble() * WORLD * 1.2 - WORLD * 0.1;
+            double side = q % 5 == 0 ? 0 : random.nextDouble() * WORLD / 20;
+            double maxX = minX + side;
+            double maxY = minY + side;
+
+            List<Box> expected = new ArrayList<>();
+            for (Box box : boxes) {
+                if (box.minX <= maxX && box.maxX >= minX && box.minY <= maxY && box.maxY >= minY) {
+                    expected.add(box);
+                }
+            }
+            List<Box> actual = new ArrayList<>();
+            tree.query(minX, minY, maxX, maxY, actual::add);
+            assertEquals(expected.size(), actual.size(), "query " + q + " of " + count);
+            expected.sort(null);
+            actual.sort(null);
+            assertEquals(expected, actual, "query " + q + " of " + count);
+        }
+    }
+
+    private static Box randomBox(Random random) {
+        double x = random.nextDouble() * WORLD;
+        double y = random.nextDouble() * WORLD;
+        double size = random.nextInt(100) == 0 ? random.nextDouble() * WORLD / 4 : random.nextDouble() * 50;
+        return new Box(x, y, x + size, y + size * random.nextDouble());
+    }
+
+    private static final class Box implements Comparable<Box> {
+        private static long nextId;
+        private final long id = nextId++;
+        private final double minX, minY, maxX, maxY;
+
+        Box(double minX, double minY, double maxX, double maxY) {
+            this.minX = minX;
+            this.minY = minY;
+            this.maxX = maxX;
+            this.maxY = maxY;
+        }
+
+        @Override
+        public int compareTo(Box other) {
+            return Long.compare(id, other.id);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.paint;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Записывает пачки плиток в файл восстановления и читает их обратно
+ */
+class RecoveryFileTest {
+    private static final int TILE_PIXELS = TiledDocument.TILE_SIZE * TiledDocument.TILE_SIZE;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void latestBatchesAreRecovered() throws IOException {
+        Path path = directory.resolve("autosave.recovery");
+        int[] first = randomTile(1);
+        int[] second = randomTile(2);
+        int[] replaced = randomTile(3);
+        try (RecoveryFile file = new RecoveryFile(path, 600, 300, 0xFFFFFFFF)) {
+            file.appendBatch(List.of(new RecoveryFile.Tile(0, 0, first), new RecoveryFile.Tile(2, 1, second)),
+                    false);
+            file.appendBatch(List.of(new RecoveryFile.Tile(0, 0, replaced)), true);
+        }
+
+        RecoveryFile.Recovery recovery = RecoveryFile.recover(path);
+        assertTrue(recovery.isComplete());
+        TiledDocument document = recovery.getDocument();
+        assertEquals(600, document.getWidth());
+        assertEquals(300, document.getHeight());
+        assertEquals(0xFFFFFFFF, document.getBackground());
+        assertArrayEquals(replaced, tile(document, 0, 0));
+        assertArrayEquals(second, tile(document, 2, 1));
+        assertFalse(document.hasTileData(1, 0));
+    }
+
+    @Test
+    void fileWithoutCompleteBatchIsFlagged() throws IOException {
+        Path path = directory.resolve("partial.recovery");
+        int[] pixels = randomTile(4);
+        try (RecoveryFile file = new RecoveryFile(path, 512, 512, 0)) {
+            file.appendBatch(List.of(new RecoveryFile.Tile(1, 1, pixels)), false);
+        }
+
+        RecoveryFile.Recovery recovery = RecoveryFile.recover(path);
+        assertFalse(recovery.isComplete());
+        assertArrayEquals(pixels, tile(recovery.getDocument(), 1, 1));
+    }
+
+    @Test
+    void unfinishedBatchIsIgnored() throws IOException {
+        Path path = directory.resolve("torn.recovery");
+        int[] saved = randomTile(5);
+        try (RecoveryFile file = new RecoveryFile(path, 512, 256, 0)) {
+            file.appendBatch(List.of(new RecoveryFile.Tile(0, 0, saved)), true);
+            file.appendBatch(List.of(new RecoveryFile.Tile(0, 0, randomTile(6)),
+                    new RecoveryFile.Tile(1, 0, randomTile(7))), true);
+        }
+        long size = Files.size(path);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.truncate(size - 20);
+        }
+
+        RecoveryFile.Recovery recovery = RecoveryFile.recover(path);
+        assertTrue(recovery.isComplete());
+        assertArrayEquals(saved, tile(recovery.getDocument(), 0, 0));
+        assertFalse(recovery.getDocument().hasTileData(1, 0));
+    }
+
+    @Test
+    void failedBatchLeavesEarlierBatchesIntact() throws IOException {
+        Path path = directory.resolve("failed.recovery");
+        int[] saved = randomTile(8);
+        RecoveryFile file = new RecoveryFile(path, 256, 256, 0);
+        file.appendBatch(List.of(new RecoveryFile.Tile(0, 0, saved)), true);
+        file.close();
+        assertThrows(IOException.class,
+                () -> file.appendBatch(List.of(new RecoveryFile.Tile(0, 0, randomTile(9))), true));
+
+        RecoveryFile.Recovery recovery = RecoveryFile.recover(path);
+        assertTrue(recovery.isComplete());
+        assertArrayEquals(saved, tile(recovery.getDocument(), 0, 0));
+    }
+
+    @Test
+    void fileWithoutBatchesRecoversNothing() throws IOException {
+        Path path = directory.resolve("empty.recovery");
+        new RecoveryFile(path, 100, 100, 0).close();
+        assertNull(RecoveryFile.recover(path));
+        assertNull(RecoveryFile.recover(directory.resolve("missing.recovery")));
+    }
+
+    private static int[] randomTile(long seed) {
+        Random random = new Random(seed);
+        int[] pixels = new int[TILE_PIXELS];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = random.nextInt(8) == 0 ? random.nextInt() : 0xFF336699;
+        }
+        return pixels;
+    }
+
+    private static int[] tile(TiledDocument document, int tileX, int tileY) {
+        int[] pixels = new int[TILE_PIXELS];
+        document.readTile(tileX, tileY, IntBuffer.wrap(pixels));
+        return pixels;
+    }
+}
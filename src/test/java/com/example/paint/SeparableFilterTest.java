@@ -0,0 +1,99 @@
+package com.example.paint;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Проверяет, что обработка полосами с запасом строк не вносит ошибок округления и не видна в результате
+ */
+class SeparableFilterTest {
+    private static final int WIDTH = 301;
+    private static final int HEIGHT = 347;
+
+    @Test
+    void constantImageStaysConstant() {
+        for (SeparableFilter filter : new SeparableFilter[]{new GaussianFilter(3), new BoxBlurFilter(5)}) {
+            int[] source = new int[WIDTH * HEIGHT];
+            Arrays.fill(source, 0x80336699);
+            int[] target = new int[source.length];
+            filter.apply(source, target, WIDTH, HEIGHT, ForkJoinPool.commonPool(), JobProgress.NONE);
+            for (int i = 0; i < target.length; i++) {
+                assertEquals(0x80336699, target[i], filter.getName() + ", pixel " + i);
+            }
+        }
+    }
+
+    @Test
+    void bandsMatchWholeImagePasses() {
+        int[] source = new int[WIDTH * HEIGHT];
+        Random random = new Random(3);
+        for (int i = 0; i < source.length; i++) {
+            source[i] = random.nextInt(4) == 0 ? 0 : random.nextInt();
+        }
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (SeparableFilter filter : new SeparableFilter[]{new GaussianFilter(0.5), new GaussianFilter(4),
+                    new BoxBlurFilter(1), new BoxBlurFilter(40)}) {
+                int[] expected = wholeImage(filter, source);
+                int[] actual = new int[source.length];
+                filter.apply(source, actual, WIDTH, HEIGHT, pool, JobProgress.NONE);
+                for (int i = 0; i < expected.length; i++) {
+                    for (int shift = 0; shift < 32; shift += 8) {
+                        int difference = Math.abs(((expected[i] >> shift) & 0xFF) - ((actual[i] >> shift) & 0xFF));
+                        assertTrue(difference <= 1, filter.getName() + ", pixel " + i + ": "
+                                + Integer.toHexString(expected[i]) + " vs " + Integer.toHexString(actual[i]));
+                    }
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Оба прохода по всему изображению сразу, с промежуточным результатом во float
+     */
+    private static int[] wholeImage(SeparableFilter filter, int[] source) {
+        float[][] rows = new float[HEIGHT][WIDTH * 4];
+        float[] scratch = new float[Math.max(WIDTH, HEIGHT) * 4];
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int argb = source[y * WIDTH + x];
+                float alpha = argb >>> 24;
+                for (int channel = 0; channel < 4; channel++) {
+                    int value = (argb >>> (24 - channel * 8)) & 0xFF;
+                    rows[y][x * 4 + channel] = channel == 0 ? alpha : value * (alpha / 255f);
+                }
+            }
+            filter.filterLine(rows[y], WIDTH, scratch);
+        }
+        int[] result = new int[source.length];
+        float[] column = new float[HEIGHT * 4];
+        for (int x = 0; x < WIDTH; x++) {
+            for (int y = 0; y < HEIGHT; y++) {
+                System.arraycopy(rows[y], x * 4, column, y * 4, 4);
+            }
+            filter.filterLine(column, HEIGHT, scratch);
+            for (int y = 0; y < HEIGHT; y++) {
+                float alpha = column[y * 4];
+                int a = clamp(alpha);
+                if (a != 0) {
+                    float scale = 255f / alpha;
+                    result[y * WIDTH + x] = a << 24 | clamp(column[y * 4 + 1] * scale) << 16
+                            | clamp(column[y * 4 + 2] * scale) << 8 | clamp(column[y * 4 + 3] * scale);
+                }
+            }
+        }
+        return result;
+    }
+
+    private static int clamp(float value) {
+        return Math.max(0, Math.min((int) (value + 0.5f), 255));
+    }
+}